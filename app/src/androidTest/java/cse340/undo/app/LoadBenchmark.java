@@ -0,0 +1,112 @@
+package cse340.undo.app;
+
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+import cse340.undo.document.DrawingDocument;
+import cse340.undo.document.DrawingDocumentWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long a saved drawing takes to load, through the activity's real loadDrawing. For
+ * each stroke count it logs the time until the first strokes are shown and until every stroke is
+ * loaded. Run it on a device with {@code ./gradlew connectedAndroidTest} and read the results with
+ * {@code adb logcat -s LoadBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LoadBenchmark {
+    private static final String LOG_TAG = "LoadBenchmark";
+
+    /** Stroke counts to measure, in order. */
+    private static final int[] STROKE_COUNTS = {10000, 100000};
+
+    /** Points per synthetic stroke. */
+    private static final int POINTS_PER_STROKE = 16;
+
+    /** Longest a load may take before the benchmark gives up. */
+    private static final long TIMEOUT_SECONDS = 120;
+
+    @Rule
+    public final ActivityTestRule<BenchmarkDrawingActivity> rule =
+            new ActivityTestRule<>(BenchmarkDrawingActivity.class);
+
+    /** Same strokes on every run, so runs on different builds are comparable. */
+    private final Random random = new Random(340);
+
+    @Test
+    public void loadsLargeDrawings() throws Throwable {
+        BenchmarkDrawingActivity activity = rule.getActivity();
+        Log.i(LOG_TAG, "strokes, bytes, first strokes ms, all strokes ms");
+        for (int strokes : STROKE_COUNTS) {
+            File file = new File(activity.getCacheDir(), "benchmark.undo");
+            long size = DrawingDocumentWriter.write(document(strokes), file);
+
+            CountDownLatch loaded = new CountDownLatch(1);
+            long[] firstMillis = new long[1];
+            long start = SystemClock.uptimeMillis();
+            rule.runOnUiThread(() -> {
+                try {
+                    activity.loadDrawing(file, loaded::countDown);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                firstMillis[0] = SystemClock.uptimeMillis() - start;
+            });
+            assertTrue("Drawing not loaded", loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            long allMillis = SystemClock.uptimeMillis() - start;
+            file.delete();
+
+            rule.runOnUiThread(() -> assertEquals(strokes, activity.draw.getStrokes().size()));
+            Log.i(LOG_TAG, strokes + ", " + size + ", " + firstMillis[0] + ", " + allMillis);
+        }
+    }
+
+    /**
+     * Makes a document of random strokes, all baked.
+     */
+    private DrawingDocument document(int strokes) {
+        Paint paint = new Paint();
+        paint.setStrokeWidth(10);
+        List<StrokeAction> baked = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes; i++) {
+            baked.add(StrokeAction.withSharedPaint(randomPoints(), paint));
+        }
+        return new DrawingDocument(baked, Collections.<AbstractReversibleAction>emptyList(), 0,
+                paint.getColor(), paint.getStrokeWidth(), paint.getColor(), paint.getStrokeWidth());
+    }
+
+    /**
+     * Makes a random walk starting somewhere in a 2000 pixel square.
+     */
+    private StrokePoints randomPoints() {
+        StrokePoints points = new StrokePoints(POINTS_PER_STROKE);
+        float x = random.nextFloat() * 2000, y = random.nextFloat() * 2000;
+        for (int i = 0; i < POINTS_PER_STROKE; i++) {
+            points.add(x, y);
+            x += random.nextFloat() * 20 - 10;
+            y += random.nextFloat() * 20 - 10;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,114 @@
+package cse340.undo.app;
+
+import android.os.Debug;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how drawing, undo and redo scale with the number of strokes, by pushing synthetic
+ * strokes through the activity's real doAction, undo and redo. For each stroke count it logs the
+ * time per operation and the heap used per stroke, so anything growing faster than linearly
+ * shows up as a rising per-operation cost.
+ *
+ * Each stroke count starts from an empty drawing, cleared the way the activity clears it, and
+ * every stroke drawn is undone and redone. Run it on a device with
+ * {@code ./gradlew connectedAndroidTest} and read the results with {@code adb logcat -s ScalabilityBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScalabilityBenchmark {
+    private static final String LOG_TAG = "ScalabilityBenchmark";
+
+    /** Stroke counts to measure, in order; none more than BenchmarkDrawingActivity.HISTORY_SIZE. */
+    private static final int[] STROKE_COUNTS = {100, 1000, 10000, 100000};
+
+    /** Points per synthetic stroke. */
+    private static final int POINTS_PER_STROKE = 16;
+
+    @Rule
+    public final ActivityTestRule<BenchmarkDrawingActivity> rule =
+            new ActivityTestRule<>(BenchmarkDrawingActivity.class);
+
+    /** Same strokes on every run, so runs on different builds are comparable. */
+    private final Random random = new Random(340);
+
+    @Test
+    public void scalesWithStrokeCount() throws Throwable {
+        Log.i(LOG_TAG, "strokes, add us/op, undo us/op, redo us/op, heap bytes/stroke, native bytes/stroke");
+        for (int strokes : STROKE_COUNTS) {
+            // One stroke count per UI thread message, so the frame in between shows the result.
+            rule.runOnUiThread(() -> run(rule.getActivity(), strokes));
+        }
+    }
+
+    private void run(AbstractReversibleDrawingActivity activity, int strokes) {
+        DrawingView draw = activity.draw;
+        activity.clearDrawing();
+
+        // Build the strokes first so only doAction is timed.
+        StrokeAction[] actions = new StrokeAction[strokes];
+        for (int i = 0; i < strokes; i++) {
+            actions[i] = new StrokeAction(randomPoints(draw.getWidth(), draw.getHeight()), draw.getCurrentPaint());
+        }
+
+        long heapBefore = usedHeap();
+        long nativeBefore = Debug.getNativeHeapAllocatedSize();
+        long start = System.nanoTime();
+        for (StrokeAction action : actions) {
+            activity.doAction(action);
+        }
+        long addNanos = System.nanoTime() - start;
+        long heapPerStroke = (usedHeap() - heapBefore) / strokes;
+        long nativePerStroke = (Debug.getNativeHeapAllocatedSize() - nativeBefore) / strokes;
+        assertEquals(strokes, activity.model.undoSize());
+
+        start = System.nanoTime();
+        for (int i = 0; i < strokes; i++) {
+            activity.undo();
+        }
+        long undoNanos = System.nanoTime() - start;
+        assertEquals(strokes, activity.model.redoSize());
+
+        start = System.nanoTime();
+        for (int i = 0; i < strokes; i++) {
+            activity.redo();
+        }
+        long redoNanos = System.nanoTime() - start;
+        assertEquals(strokes, activity.model.undoSize());
+
+        Log.i(LOG_TAG, strokes + ", " + addNanos / 1000 / strokes + ", " + undoNanos / 1000 / strokes
+                + ", " + redoNanos / 1000 / strokes + ", " + heapPerStroke + ", " + nativePerStroke);
+    }
+
+    /**
+     * Makes a random walk starting somewhere on the canvas.
+     */
+    private StrokePoints randomPoints(int width, int height) {
+        StrokePoints points = new StrokePoints(POINTS_PER_STROKE);
+        float x = random.nextFloat() * Math.max(1, width);
+        float y = random.nextFloat() * Math.max(1, height);
+        for (int i = 0; i < POINTS_PER_STROKE; i++) {
+            points.add(x, y);
+            x += random.nextFloat() * 20 - 10;
+            y += random.nextFloat() * 20 - 10;
+        }
+        return points;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,22 @@
+package cse340.undo.app;
+
+import java.io.File;
+
+/**
+ * Drawing activity for the instrumented benchmarks, in debug builds only. Its history holds as
+ * many strokes as the benchmarks draw, so all of them can be undone and redone, and it has no
+ * autosave, so the benchmark strokes never overwrite the saved drawing.
+ */
+public class BenchmarkDrawingActivity extends ReversibleDrawingActivity {
+    /** Most actions the history holds. */
+    public static final int HISTORY_SIZE = 100000;
+
+    public BenchmarkDrawingActivity() {
+        super(HISTORY_SIZE);
+    }
+
+    @Override
+    protected File getAutosaveDirectory() {
+        return null;
+    }
+}
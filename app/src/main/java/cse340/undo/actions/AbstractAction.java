@@ -13,7 +13,24 @@ import cse340.undo.app.DrawingView;
  * @see AbstractAction#doAction(DrawingView)
  */
 public abstract class AbstractAction {
-    final String LOG_TAG = "ACTION/" + getClass().getCanonicalName();
+    /** Shared by every action, so creating one doesn't build a tag string. */
+    static final String LOG_TAG = "Action";
+
+    /**
+     * Does whatever work this action can do before being applied, such as computing geometry.
+     * Called at most once, before doAction, possibly on a worker thread; so it must not touch
+     * any view. Actions with nothing to prepare need not override this.
+     */
+    public void prepare() {
+    }
+
+    /**
+     * @return True if this action was cancelled while being prepared, so it must be dropped
+     *         rather than done. Actions which can't be cancelled need not override this.
+     */
+    public boolean isCancelled() {
+        return false;
+    }
 
     /**
      * Applies this action to the given DrawingView.
@@ -22,7 +39,10 @@ public abstract class AbstractAction {
      */
     @CallSuper
     public void doAction(DrawingView view) {
-        Log.i(LOG_TAG, "Doing: " + toString());
+        // Describing the action allocates, so only do it when the log is wanted.
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Doing: " + toString());
+        }
     }
 
     /**
@@ -1,5 +1,6 @@
 package cse340.undo.actions;
 
+import android.graphics.RectF;
 import android.support.annotation.CallSuper;
 import android.util.Log;
 
@@ -53,10 +54,23 @@ public abstract class AbstractReversibleAction extends AbstractAction {
             throw new IllegalStateException("Trying to undo action which hasn't been done: " + toString());
         }
 
-        Log.i(LOG_TAG, "Undoing: " + toString());
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Undoing: " + toString());
+        }
         done = false;
     }
 
+    /**
+     * Gets the area of the drawing this action changes, so the history can be searched by area.
+     * Actions which change no area, such as changing the paint, need not override this.
+     *
+     * @param out   Rectangle to receive the area, in document coordinates.
+     * @return True if the action changes an area, false if it changes none.
+     */
+    public boolean getArea(RectF out) {
+        return false;
+    }
+
     /** @inheritDoc */
     @Override
     public abstract String toString();
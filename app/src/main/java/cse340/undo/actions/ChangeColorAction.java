@@ -44,6 +44,22 @@ public class ChangeColorAction extends AbstractReversibleAction {
         view.getCurrentPaint().setColor(prev);
     }
 
+    /**
+     * @return The color that this action changes the current paint to.
+     */
+    @ColorInt
+    public int getColor() {
+        return color;
+    }
+
+    /**
+     * @return The color that this action changed the current paint from, when last done.
+     */
+    @ColorInt
+    public int getPreviousColor() {
+        return prev;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -40,6 +40,20 @@ public class ChangeThicknessAction extends AbstractReversibleAction {
         view.getCurrentPaint().setStrokeWidth(prev);
     }
 
+    /**
+     * @return The thickness that this action changes the current paint to.
+     */
+    public int getThickness() {
+        return thickness;
+    }
+
+    /**
+     * @return The thickness that this action changed the current paint from, when last done.
+     */
+    public float getPreviousThickness() {
+        return prev;
+    }
+
     /** @inheritDoc */
     @NonNull
     @Override
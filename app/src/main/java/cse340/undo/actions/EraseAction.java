@@ -0,0 +1,235 @@
+package cse340.undo.actions;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse340.undo.app.DrawingView;
+
+/**
+ * Reversible action which erases the parts of strokes touched by an eraser path. Each stroke the
+ * eraser crosses is replaced by the pieces left on either side of the crossings; undoing puts the
+ * original stroke objects back where they were.
+ *
+ * The strokes which may be touched are found up front (through the view's stroke index), and
+ * working out the pieces is done in prepare(), off the UI thread when the action goes through the
+ * action pipeline.
+ */
+public class EraseAction extends AbstractReversibleAction {
+    /** Eraser path. */
+    private final StrokePoints eraser;
+
+    /** Distance from the eraser path within which ink is erased. */
+    private final float radius;
+
+    /** Strokes whose bounds overlap the eraser path. */
+    private final List<StrokeAction> candidates;
+
+    /** Strokes actually hit, or null until prepared. */
+    private List<StrokeAction> erased;
+
+    /** Pieces replacing each erased stroke. */
+    private List<List<StrokeAction>> pieces;
+
+    /** Where each erased stroke was drawn, or -1 if it wasn't drawn when done. */
+    private int[] indices;
+
+    /**
+     * Creates an action that erases along a path.
+     *
+     * @param eraser    Eraser path.
+     * @param radius    Distance from the path within which ink is erased.
+     * @param candidates    Strokes which may be touched: at least all those whose bounds overlap
+     *                      the eraser path grown by radius. Not copied.
+     * @throws IllegalArgumentException if eraser or candidates are null, or radius is negative.
+     */
+    public EraseAction(StrokePoints eraser, float radius, List<StrokeAction> candidates) {
+        if (eraser == null || candidates == null || radius < 0) {
+            throw new IllegalArgumentException("Null eraser or candidates, or negative radius");
+        }
+        this.eraser = eraser;
+        this.radius = radius;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Works out which strokes the eraser touches and the pieces each one is split into.
+     */
+    @Override
+    public synchronized void prepare() {
+        if (erased != null) {
+            return;
+        }
+        List<StrokeAction> hit = new ArrayList<>();
+        List<List<StrokeAction>> result = new ArrayList<>();
+        for (StrokeAction stroke : candidates) {
+            List<StrokeAction> remaining = split(stroke);
+            if (remaining != null) {
+                hit.add(stroke);
+                result.add(remaining);
+            }
+        }
+        pieces = result;
+        indices = new int[hit.size()];
+        erased = hit;
+    }
+
+    /**
+     * Replaces each stroke the eraser touches with its remaining pieces.
+     *
+     * @param view  DrawingView showing the strokes.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        prepare();
+        view.replaceStrokes(erased, pieces, indices);
+    }
+
+    /**
+     * Puts the erased strokes back where they were.
+     *
+     * @param view  DrawingView showing the strokes.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.restoreStrokes(erased, pieces, indices);
+    }
+
+    /**
+     * Gets the area covered by the strokes erased from, once prepared.
+     *
+     * @param out   Rectangle to receive the area.
+     * @return True if any stroke was erased from.
+     */
+    @Override
+    public boolean getArea(RectF out) {
+        List<StrokeAction> hit = getErasedStrokes();
+        out.setEmpty();
+        RectF bounds = new RectF();
+        for (StrokeAction stroke : hit) {
+            stroke.getBounds(bounds);
+            out.union(bounds);
+        }
+        return !hit.isEmpty();
+    }
+
+    /**
+     * @return Strokes this action erased from, once prepared; otherwise an empty list.
+     */
+    public List<StrokeAction> getErasedStrokes() {
+        List<StrokeAction> prepared;
+        synchronized (this) {
+            prepared = erased;
+        }
+        return prepared == null ? Collections.<StrokeAction>emptyList() : Collections.unmodifiableList(prepared);
+    }
+
+    /**
+     * Splits a stroke where the eraser touches it. Segments are walked in steps no longer than
+     * half the erase distance, so a fast eraser can't skip over a crossing between two points.
+     *
+     * @return Remaining pieces, possibly none; or null if the eraser doesn't touch the stroke.
+     */
+    private List<StrokeAction> split(StrokeAction stroke) {
+        StrokePoints points = stroke.getPoints();
+        float[] coords = points.getCoords();
+        int size = points.size();
+        if (size == 0) {
+            return null;
+        }
+
+        // The ink reaches half the stroke's width at each point beyond its path.
+        float width = stroke.getPaint().getStrokeWidth();
+
+        List<StrokeAction> pieces = new ArrayList<>();
+        StrokePoints piece = null;
+        boolean touched = false;
+        for (int i = 0; i < size; i++) {
+            float x = coords[i * 2], y = coords[i * 2 + 1], w = points.getWeight(i);
+            float lastX = i == 0 ? x : coords[i * 2 - 2], lastY = i == 0 ? y : coords[i * 2 - 1];
+            float lastW = i == 0 ? w : points.getWeight(i - 1);
+            float step = Math.max(1, (radius + width * Math.min(w, lastW) / 2) / 2);
+            int steps = Math.max(1, (int) Math.ceil(Math.hypot(x - lastX, y - lastY) / step));
+
+            // Points from just after the previous point up to this one; just this one at first.
+            for (int k = 1; k <= steps; k++) {
+                float px = lastX + (x - lastX) * k / steps, py = lastY + (y - lastY) * k / steps;
+                float pw = lastW + (w - lastW) * k / steps;
+                if (isErased(px, py, radius + width * pw / 2)) {
+                    touched = true;
+                    piece = finish(stroke, piece, pieces);
+                } else {
+                    if (piece == null) {
+                        piece = new StrokePoints();
+                    }
+                    piece.add(px, py, pw);
+                }
+            }
+        }
+        if (!touched) {
+            return null;
+        }
+        finish(stroke, piece, pieces);
+        return pieces;
+    }
+
+    /**
+     * Ends a piece, keeping it if it has enough points to be drawn.
+     *
+     * @return null, for the caller to start a new piece.
+     */
+    private static StrokePoints finish(StrokeAction stroke, StrokePoints piece, List<StrokeAction> pieces) {
+        if (piece != null && piece.size() > 1) {
+            // Pieces never change, so they share the original's paint.
+            StrokeAction action = StrokeAction.withSharedPaint(piece, stroke.getPaint());
+            action.prepare();
+            pieces.add(action);
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the point is within the given distance of the eraser path.
+     */
+    private boolean isErased(float x, float y, float reach) {
+        float[] e = eraser.getCoords();
+        int size = eraser.size();
+        float reach2 = reach * reach;
+        if (size == 1) {
+            return distance2(x, y, e[0], e[1]) <= reach2;
+        }
+        for (int i = 1; i < size; i++) {
+            if (segmentDistance2(x, y, e[i * 2 - 2], e[i * 2 - 1], e[i * 2], e[i * 2 + 1]) <= reach2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static float distance2(float x, float y, float px, float py) {
+        float dx = x - px, dy = y - py;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return Squared distance from a point to the segment from (ax, ay) to (bx, by).
+     */
+    private static float segmentDistance2(float x, float y, float ax, float ay, float bx, float by) {
+        float abx = bx - ax, aby = by - ay;
+        float length2 = abx * abx + aby * aby;
+        float t = length2 == 0 ? 0 : ((x - ax) * abx + (y - ay) * aby) / length2;
+        t = Math.max(0, Math.min(1, t));
+        return distance2(x, y, ax + t * abx, ay + t * aby);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Erase " + eraser.size() + " points across " + candidates.size() + " strokes";
+    }
+}
@@ -0,0 +1,216 @@
+package cse340.undo.actions;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.fill.ScanlineFill;
+import cse340.undo.fill.TileDelta;
+
+/**
+ * Reversible action which flood fills the area around a point with a color. The drawing is
+ * rendered from the fills and strokes it had when the action was made, and the area found by a
+ * scanline fill over it, both in prepare(): off the UI thread when the action goes through the
+ * action pipeline, and can be cancelled until then.
+ *
+ * The fill is painted into the view's raster layer, beneath the strokes. Undo only keeps the
+ * compressed tiles the fill painted over, and redo repaints from the spans, so a fill costs memory
+ * in proportion to its area.
+ */
+public class FillAction extends AbstractReversibleAction {
+    /** Largest difference in any color channel for a pixel to be filled along with the seed. */
+    private static final int TOLERANCE = 32;
+
+    /** Fills and strokes of the drawing when the fill was made, until rendered. */
+    @Nullable
+    private Bitmap background;
+    private List<StrokeAction> strokes;
+
+    /** Pixels of the drawing, once rendered, until the area has been found. */
+    private int[] snapshot;
+    private final int width, height;
+
+    /** Point the fill starts from. */
+    private final int x, y;
+
+    @ColorInt
+    private final int color;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    /** Told how far the fill has got, on the thread preparing it. */
+    private volatile ScanlineFill.ProgressListener progressListener;
+
+    /** Area to fill, as spans from ScanlineFill; null until prepared. */
+    private int[] spans;
+
+    /** Pixels painted over, while the fill is done. */
+    private TileDelta delta;
+
+    /**
+     * Creates an action that fills the area around a point. The drawing is rendered from the
+     * document's origin, in full detail, at the given size.
+     *
+     * @param background    Pixels painted by earlier fills, or null if there are none. Not
+     *                      copied, so it must not change; recycled once rendered.
+     * @param strokes   Strokes of the drawing, in drawing order, which must not be transformed
+     *                  (see StrokeAction.snapshot()). Not copied, and dropped once rendered.
+     * @param width     Width of the drawing to fill.
+     * @param height    Height of the drawing to fill.
+     * @param x         Column to fill from.
+     * @param y         Row to fill from.
+     * @param color     Color to fill with.
+     * @throws IllegalArgumentException if strokes is null or the size isn't positive.
+     */
+    public FillAction(@Nullable Bitmap background, List<StrokeAction> strokes, int width, int height,
+                      int x, int y, @ColorInt int color) {
+        if (strokes == null || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Null strokes, or empty " + width + "x" + height + " drawing");
+        }
+        this.background = background;
+        this.strokes = strokes;
+        this.width = width;
+        this.height = height;
+        this.x = x;
+        this.y = y;
+        this.color = color;
+    }
+
+    /**
+     * Finds the area to fill, unless cancelled.
+     */
+    @Override
+    public synchronized void prepare() {
+        if (spans != null || cancelled.get()) {
+            return;
+        }
+        if (snapshot == null) {
+            snapshot = render();
+        }
+        int[] found = new ScanlineFill(snapshot, width, height, TOLERANCE)
+                .fill(x, y, cancelled, progressListener);
+        if (found != null) {
+            spans = found;
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Renders the drawing the fill was made from, dropping what it was rendered from.
+     *
+     * @return Pixels of the drawing, row by row.
+     */
+    private int[] render() {
+        Bitmap rendered = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(rendered);
+        if (background != null) {
+            canvas.drawBitmap(background, 0, 0, null);
+            background.recycle();
+            background = null;
+        }
+        RectF area = new RectF(0, 0, width, height), bounds = new RectF();
+        for (int i = 0; i < strokes.size(); i++) {
+            StrokeAction stroke = strokes.get(i);
+            stroke.getBounds(bounds);
+            if (RectF.intersects(bounds, area)) {
+                stroke.draw(canvas);
+            }
+        }
+        strokes = null;
+        int[] pixels = new int[width * height];
+        rendered.getPixels(pixels, 0, width, 0, 0, width, height);
+        rendered.recycle();
+        return pixels;
+    }
+
+    /**
+     * Stops the fill if it hasn't been done yet. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Sets who is told how far the fill has got. Called on the thread preparing the fill.
+     *
+     * @param listener  Listener, or null for none.
+     */
+    public void setProgressListener(ScanlineFill.ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Paints the area.
+     *
+     * @param view  DrawingView showing the drawing.
+     * @throws IllegalStateException if the fill was cancelled.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        prepare();
+        if (spans == null) {
+            throw new IllegalStateException("Fill was cancelled");
+        }
+        delta = view.paintSpans(spans, color);
+    }
+
+    /**
+     * Puts back what the fill painted over.
+     *
+     * @param view  DrawingView showing the drawing.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.restorePixels(delta);
+        delta = null;
+    }
+
+    /**
+     * Gets the area filled, once prepared.
+     *
+     * @param out   Rectangle to receive the area, covering whole pixels.
+     * @return True if the area has been found.
+     */
+    @Override
+    public boolean getArea(RectF out) {
+        int[] area = spans;
+        if (area == null || area.length == 0) {
+            return false;
+        }
+        // Spans are the row and the first and last column filled in it.
+        out.set(area[1], area[0], area[2] + 1, area[0] + 1);
+        for (int i = 3; i < area.length; i += 3) {
+            out.union(area[i + 1], area[i], area[i + 2] + 1, area[i] + 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return Approximate memory this action holds to be undone and redone, in bytes.
+     */
+    public long getUndoByteSize() {
+        TileDelta current = delta;
+        int[] area = spans;
+        return (current == null ? 0 : current.getByteSize()) + (area == null ? 0 : 4L * area.length);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Fill from (" + x + ", " + y + ") with " + Integer.toHexString(color);
+    }
+}
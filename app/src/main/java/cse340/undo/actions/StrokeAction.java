@@ -1,42 +1,195 @@
 package cse340.undo.actions;
 
 
+import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.support.annotation.NonNull;
-import android.view.View;
-import cse340.undo.app.StrokeView;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import cse340.undo.app.DrawingView;
 
 /**
- * Reversible action which renders a stroke in DrawingView.
+ * Reversible action which renders a stroke in DrawingView. A stroke whose points have weights
+ * varies in width, and is drawn by filling its outline (see StrokeOutline), which is built once
+ * when the stroke is prepared.
+ *
+ * Zoomed out, a stroke can be drawn with less detail: points closer together on screen than a few
+ * pixels are left out, and the simpler path is kept for the next time it is drawn at that level.
  */
 public class StrokeAction extends AbstractReversibleViewAction {
-    /** Path for this stroke. */
-    private final Path path;
+    /** Number of reduced levels of detail; each leaves out points twice as far apart as the last. */
+    private static final int DETAIL_LEVELS = 5;
+
+    /** Zoom scale below which a stroke is drawn with reduced detail. */
+    private static final float DETAIL_SCALE = 0.5f;
+
+    /** Distance on screen below which points are left out at a reduced level of detail, in pixels. */
+    private static final float DETAIL_SPACING = 4;
+
+    /**
+     * Path for this stroke, the points it was built from and the area it covers. Transforming the
+     * stroke replaces the whole geometry rather than changing it, so threads reading a committed
+     * stroke always see a consistent path, points and bounds.
+     */
+    private static final class Geometry {
+        final Path path;
+        final StrokePoints points;
+
+        /** Area covered by the stroke, including its width, or null until computed. */
+        volatile RectF bounds;
+
+        /** Outline of a variable-width stroke, or null until computed. */
+        volatile Path outline;
+
+        /** Path drawn at each reduced level of detail, or null until the first is computed. */
+        volatile AtomicReferenceArray<Path> details;
+
+        Geometry(Path path, StrokePoints points) {
+            this.path = path;
+            this.points = points;
+        }
+    }
+
+    private volatile Geometry geometry;
 
     /** Paint used to draw this stroke. */
     private final Paint paint;
 
-    /** View being used to render this stroke (or null if not rendered). */
-    private View strokeView;
+    /** Paint filling the outline of a variable-width stroke, or null until first needed. */
+    private volatile Paint fillPaint;
+
+    /**
+     * View rendering this stroke (or null if not rendered). Weak, because strokes are kept across
+     * configuration changes and must not keep the old view alive.
+     */
+    private WeakReference<DrawingView> renderedIn;
 
     /**
      * Creates an action that renders a stroke.
      *
-     * @param path    Path for stroke.
+     * @param path    Path for stroke, built from points.
+     * @param points  Points for stroke.
+     * @param paint Paint for stroke.
+     * @throws IllegalArgumentException if stroke, points or paint are null.
+     */
+    public StrokeAction(Path path, StrokePoints points, Paint paint) {
+        this(path, points, paint, true);
+    }
+
+    /**
+     * Creates an action that renders a stroke, building the path from the points.
+     *
+     * @param points  Points for stroke.
      * @param paint Paint for stroke.
-     * @throws IllegalArgumentException if stroke or paint are null.
+     * @throws IllegalArgumentException if points or paint are null.
      */
-    public StrokeAction(Path path, Paint paint) {
-        if (path == null || paint == null) {
-            throw new IllegalStateException("Null stroke or paint");
+    public StrokeAction(StrokePoints points, Paint paint) {
+        this(points == null ? null : points.toPath(), points, paint);
+    }
+
+    private StrokeAction(Geometry geometry, Paint paint, Paint fillPaint) {
+        this.geometry = geometry;
+        this.paint = paint;
+        this.fillPaint = fillPaint;
+    }
+
+    private StrokeAction(Path path, StrokePoints points, Paint paint, boolean copyPaint) {
+        if (path == null || points == null || paint == null) {
+            throw new IllegalStateException("Null stroke, points or paint");
         }
 
-        this.path = path;
+        this.geometry = new Geometry(path, points);
 
         // Copy-construct paint to prevent changes to the original object from affecting this.
-        this.paint = new Paint(paint);
+        this.paint = copyPaint ? new Paint(paint) : paint;
+    }
+
+    /**
+     * Creates an action that renders a stroke using the given paint directly rather than a copy,
+     * so that many strokes may share one Paint. The paint must not be changed afterwards.
+     *
+     * @param points  Points for stroke.
+     * @param paint Paint for stroke, which will be shared.
+     * @return New stroke action.
+     * @throws IllegalArgumentException if points or paint are null.
+     */
+    public static StrokeAction withSharedPaint(StrokePoints points, Paint paint) {
+        return new StrokeAction(points == null ? null : points.toPath(), points, paint, false);
+    }
+
+    /**
+     * Creates an action that renders a stroke using the given paints directly rather than copies,
+     * so that many strokes may share them. The paints must not be changed afterwards.
+     *
+     * @param path      Path for stroke, built from points.
+     * @param points    Points for stroke.
+     * @param paint     Paint for stroke, which will be shared.
+     * @param fillPaint Paint filling the outline if the stroke's width varies, which will be
+     *                  shared; or null to make one from paint when first needed.
+     * @return New stroke action.
+     * @throws IllegalArgumentException if path, points or paint are null.
+     */
+    public static StrokeAction withSharedPaints(Path path, StrokePoints points, Paint paint, Paint fillPaint) {
+        StrokeAction stroke = new StrokeAction(path, points, paint, false);
+        stroke.fillPaint = fillPaint;
+        return stroke;
+    }
+
+    /**
+     * Computes the stroke's bounds, and the outline of a variable-width stroke, so they are ready
+     * before the stroke is committed.
+     */
+    @Override
+    public void prepare() {
+        computeBounds();
+    }
+
+    /**
+     * Draws the stroke: stroking its path, or filling its outline if its width varies.
+     *
+     * @param canvas    Canvas to draw onto.
+     */
+    public void draw(Canvas canvas) {
+        Geometry current = geometry;
+        if (current.points.hasWeights()) {
+            canvas.drawPath(computeOutline(current), getFillPaint());
+        } else {
+            canvas.drawPath(current.path, paint);
+        }
+    }
+
+    /**
+     * Draws the stroke as seen at a zoom scale: in full detail down to half size, and from fewer
+     * points the further out it is zoomed.
+     *
+     * @param canvas    Canvas to draw onto.
+     * @param scale     Zoom scale the canvas draws the stroke at.
+     */
+    public void draw(Canvas canvas, float scale) {
+        int level = 0;
+        for (float levelScale = DETAIL_SCALE; scale < levelScale && level < DETAIL_LEVELS; levelScale /= 2) {
+            level++;
+        }
+        if (level == 0) {
+            draw(canvas);
+            return;
+        }
+        Geometry current = geometry;
+        Paint detailPaint = current.points.hasWeights() ? getFillPaint() : paint;
+        canvas.drawPath(computeDetail(current, level), detailPaint);
+    }
+
+    /**
+     * @return True if the stroke's width varies along it.
+     */
+    public boolean isVariableWidth() {
+        return geometry.points.hasWeights();
     }
 
     /**
@@ -47,8 +200,8 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void doAction(DrawingView view) {
         super.doAction(view);
-        strokeView = new StrokeView(view.getContext(), path, paint);
-        view.addView(strokeView);
+        view.addStroke(this);
+        renderedIn = new WeakReference<>(view);
     }
 
     /**
@@ -59,11 +212,10 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        if (view.indexOfChild(strokeView) < 0) {
-            throw new IllegalStateException("StrokeView not found");
+        if (!view.removeStroke(this)) {
+            throw new IllegalStateException("Stroke not rendered");
         }
-
-        view.removeView(strokeView);
+        renderedIn = null;
     }
 
     /**
@@ -71,13 +223,196 @@ public class StrokeAction extends AbstractReversibleViewAction {
      */
     @Override
     public void invalidate() {
-        strokeView.invalidate();
+        DrawingView view = renderedIn == null ? null : renderedIn.get();
+        if (view != null) {
+            view.invalidate();
+        }
+    }
+
+    /**
+     * Moves the stroke by an affine transform. Only the geometry is transformed; the stroke keeps
+     * its width. The new path and points are built from the old ones, which are left as they were
+     * for any thread still reading them.
+     *
+     * A committed stroke must be transformed through its StrokeLayer, so it can be re-indexed.
+     *
+     * @param matrix    Transform to apply.
+     */
+    public void transform(Matrix matrix) {
+        Geometry old = geometry;
+        int size = old.points.size();
+        float[] coords = Arrays.copyOf(old.points.getCoords(), size * 2);
+        matrix.mapPoints(coords);
+        float[] weights = old.points.hasWeights() ? Arrays.copyOf(old.points.getWeights(), size) : null;
+        Path path = new Path();
+        old.path.transform(matrix, path);
+        geometry = new Geometry(path, new StrokePoints(coords, weights, size));
+    }
+
+    /**
+     * Puts back the geometry of an earlier snapshot of this stroke, exactly as it was and with
+     * anything already computed from it, such as its bounds. Undoing and redoing a transform this
+     * way never maps the points again, so repeating them can't drift.
+     *
+     * A committed stroke must be changed through its StrokeLayer, so it can be re-indexed.
+     *
+     * @param snapshot  Snapshot of this stroke.
+     */
+    public void restoreGeometry(StrokeAction snapshot) {
+        geometry = snapshot.geometry;
+    }
+
+    /**
+     * Copies the stroke as it is now, for drawing or saving it after the original may have been
+     * transformed. The copy shares the original's geometry and paints rather than copying them,
+     * and is not rendered.
+     *
+     * @return Copy of the stroke, which later transforms of this one leave where it is.
+     */
+    public StrokeAction snapshot() {
+        return new StrokeAction(geometry, paint, fillPaint);
+    }
+
+    /**
+     * @return Path rendered by this stroke.
+     */
+    public Path getPath() {
+        return geometry.path;
+    }
+
+    /**
+     * Gets the area covered by this stroke, including its width. Computed on first use unless the
+     * stroke has been prepared.
+     *
+     * @param out   Rectangle to receive the bounds.
+     */
+    public void getBounds(RectF out) {
+        out.set(computeBounds());
+    }
+
+    /**
+     * Gets the area covered by this stroke, as getBounds.
+     *
+     * @param out   Rectangle to receive the area.
+     * @return True.
+     */
+    @Override
+    public boolean getArea(RectF out) {
+        getBounds(out);
+        return true;
+    }
+
+    private RectF computeBounds() {
+        Geometry current = geometry;
+        RectF result = current.bounds;
+        if (result == null) {
+            // Geometry never changes once committed, so racing threads compute the same bounds.
+            result = new RectF();
+            if (current.points.hasWeights()) {
+                computeOutline(current).computeBounds(result, true);
+            } else {
+                current.path.computeBounds(result, true);
+                float halfWidth = paint.getStrokeWidth() / 2;
+                result.inset(-halfWidth, -halfWidth);
+            }
+            current.bounds = result;
+        }
+        return result;
+    }
+
+    private Path computeOutline(Geometry current) {
+        Path result = current.outline;
+        if (result == null) {
+            result = StrokeOutline.build(current.points, paint.getStrokeWidth());
+            current.outline = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the path drawn at a reduced level of detail, building it if needed. Like the outline,
+     * racing threads build the same path, so whichever is kept doesn't matter.
+     *
+     * @param level Level of detail, from 1 to DETAIL_LEVELS.
+     */
+    private Path computeDetail(Geometry current, int level) {
+        AtomicReferenceArray<Path> details = current.details;
+        if (details == null) {
+            details = new AtomicReferenceArray<>(DETAIL_LEVELS);
+            current.details = details;
+        }
+        Path result = details.get(level - 1);
+        if (result == null) {
+            // Level 1 is used from DETAIL_SCALE down to half of it, and so on, so points closer
+            // than this in the document are closer than DETAIL_SPACING on screen.
+            float spacing = DETAIL_SPACING / DETAIL_SCALE * (1 << (level - 1));
+            StrokePoints decimated = current.points.decimate(spacing);
+            if (decimated == current.points) {
+                result = decimated.hasWeights() ? computeOutline(current) : current.path;
+            } else {
+                result = decimated.hasWeights()
+                        ? StrokeOutline.build(decimated, paint.getStrokeWidth()) : decimated.toPath();
+            }
+            details.set(level - 1, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cached outline of a variable-width stroke, and the paths drawn at reduced levels
+     * of detail. They are built again the next time the stroke is drawn.
+     *
+     * @return Approximate number of bytes freed.
+     */
+    public long releaseOutline() {
+        Geometry current = geometry;
+        long bytes = 0;
+        if (current.outline != null) {
+            current.outline = null;
+            // Two outline points per sample, of two floats each.
+            bytes += 16L * current.points.size();
+        }
+        AtomicReferenceArray<Path> details = current.details;
+        if (details != null) {
+            current.details = null;
+            for (int level = 1; level <= DETAIL_LEVELS; level++) {
+                if (details.get(level - 1) != null) {
+                    // Each level keeps at most about half the points of the one before.
+                    bytes += 16L * current.points.size() >> level;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private Paint getFillPaint() {
+        Paint result = fillPaint;
+        if (result == null) {
+            result = new Paint(paint);
+            result.setStyle(Paint.Style.FILL);
+            fillPaint = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return Points this stroke's path was built from.
+     */
+    public StrokePoints getPoints() {
+        return geometry.points;
+    }
+
+    /**
+     * @return Paint this stroke is rendered with. Must not be modified.
+     */
+    public Paint getPaint() {
+        return paint;
     }
 
     @NonNull
     @Override
     public String toString() {
-        return "Drawing path " + path.toString();
+        return "Drawing path " + geometry.path.toString();
     }
 
 }
@@ -0,0 +1,168 @@
+package cse340.undo.actions;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Outlines of variable-width strokes, to be filled rather than stroked. A committed stroke's
+ * outline is a single polygon: one side offset along the left normal of each point, the other
+ * along the right, joined by round caps. It is built once and kept with the stroke, so drawing it
+ * never works out widths again.
+ *
+ * A stroke still being drawn uses a Builder instead, which adds a fixed amount to its path per
+ * sample however long the stroke gets.
+ */
+public final class StrokeOutline {
+    private StrokeOutline() {}
+
+    /**
+     * Works out the two sides of a stroke's outline.
+     *
+     * @param points    Points of the stroke, with at least one point.
+     * @param width     Width of the stroke where the weight is 1.
+     * @return Left side points then right side points, each packed as x, y in point order.
+     */
+    public static float[] sides(StrokePoints points, float width) {
+        int size = points.size();
+        float[] coords = points.getCoords();
+        float[] sides = new float[size * 4];
+        for (int i = 0; i < size; i++) {
+            // Tangent from the previous point to the next, or along the one segment at an end.
+            int before = Math.max(0, i - 1), after = Math.min(size - 1, i + 1);
+            float tx = coords[after * 2] - coords[before * 2];
+            float ty = coords[after * 2 + 1] - coords[before * 2 + 1];
+            float length = (float) Math.hypot(tx, ty);
+            float radius = radius(points, i, width);
+            float nx = 0, ny = 0;
+            if (length > 0) {
+                nx = -ty / length * radius;
+                ny = tx / length * radius;
+            }
+            float x = coords[i * 2], y = coords[i * 2 + 1];
+            sides[i * 2] = x + nx;
+            sides[i * 2 + 1] = y + ny;
+            sides[size * 2 + i * 2] = x - nx;
+            sides[size * 2 + i * 2 + 1] = y - ny;
+        }
+        return sides;
+    }
+
+    /**
+     * @return Half the stroke's width at point i.
+     */
+    public static float radius(StrokePoints points, int i, float width) {
+        return width * points.getWeight(i) / 2;
+    }
+
+    /**
+     * Builds the outline of a stroke.
+     *
+     * @param points    Points of the stroke.
+     * @param width     Width of the stroke where the weight is 1.
+     * @return Newly created path, empty if there are no points.
+     */
+    public static Path build(StrokePoints points, float width) {
+        Path path = new Path();
+        int size = points.size();
+        if (size == 0) {
+            return path;
+        }
+        float[] coords = points.getCoords();
+        if (size == 1) {
+            path.addCircle(coords[0], coords[1], radius(points, 0, width), Path.Direction.CCW);
+            return path;
+        }
+
+        float[] sides = sides(points, width);
+        int right = size * 2;
+        RectF cap = new RectF();
+
+        path.moveTo(sides[0], sides[1]);
+        for (int i = 1; i < size; i++) {
+            path.lineTo(sides[i * 2], sides[i * 2 + 1]);
+        }
+        // Round cap from the left side to the right side around the last point.
+        int last = size - 1;
+        arc(path, cap, coords[last * 2], coords[last * 2 + 1], radius(points, last, width),
+                sides[last * 2], sides[last * 2 + 1]);
+        for (int i = last; i >= 0; i--) {
+            path.lineTo(sides[right + i * 2], sides[right + i * 2 + 1]);
+        }
+        arc(path, cap, coords[0], coords[1], radius(points, 0, width),
+                sides[right], sides[right + 1]);
+        path.close();
+        return path;
+    }
+
+    /**
+     * Adds a half circle around a point, turning counter-clockwise from where the path is.
+     */
+    private static void arc(Path path, RectF oval, float x, float y, float radius, float fromX, float fromY) {
+        oval.set(x - radius, y - radius, x + radius, y + radius);
+        float start = (float) Math.toDegrees(Math.atan2(fromY - y, fromX - x));
+        path.arcTo(oval, start, -180);
+    }
+
+    /**
+     * Outline of a stroke being drawn. Each sample adds the quadrilateral joining it to the
+     * previous sample and a circle rounding off the join, all wound the same way so that filling
+     * the path covers their union.
+     */
+    public static final class Builder {
+        private final Path path = new Path();
+        private float width;
+        private float lastX, lastY, lastRadius;
+        private boolean started;
+
+        /**
+         * @param width Width of the stroke where the weight is 1.
+         */
+        public Builder(float width) {
+            this.width = width;
+        }
+
+        /**
+         * Empties the outline, so the builder can be reused for another stroke.
+         *
+         * @param width Width of the next stroke where the weight is 1.
+         */
+        public void reset(float width) {
+            this.width = width;
+            path.reset();
+            started = false;
+        }
+
+        /**
+         * Extends the outline to a new sample.
+         *
+         * @param weight    Scale of the width at the sample.
+         */
+        public void add(float x, float y, float weight) {
+            float radius = width * weight / 2;
+            if (started) {
+                float dx = x - lastX, dy = y - lastY;
+                float length = (float) Math.hypot(dx, dy);
+                if (length > 0) {
+                    float nx = -dy / length, ny = dx / length;
+                    path.moveTo(lastX + nx * lastRadius, lastY + ny * lastRadius);
+                    path.lineTo(x + nx * radius, y + ny * radius);
+                    path.lineTo(x - nx * radius, y - ny * radius);
+                    path.lineTo(lastX - nx * lastRadius, lastY - ny * lastRadius);
+                    path.close();
+                }
+            }
+            path.addCircle(x, y, radius, Path.Direction.CCW);
+            lastX = x;
+            lastY = y;
+            lastRadius = radius;
+            started = true;
+        }
+
+        /**
+         * @return Outline so far. Changes as samples are added.
+         */
+        public Path getPath() {
+            return path;
+        }
+    }
+}
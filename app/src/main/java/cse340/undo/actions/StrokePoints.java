@@ -0,0 +1,226 @@
+package cse340.undo.actions;
+
+import android.graphics.Path;
+
+import java.util.Arrays;
+
+/**
+ * The touch samples a stroke was drawn from, stored as a packed array of x and y coordinates.
+ * Keeping the samples (rather than only the Path built from them) lets strokes be saved, exported
+ * and rebuilt exactly.
+ *
+ * Each point may also have a weight, which scales the stroke's width there (from pressure and
+ * speed). Weights are only stored once a point has a weight other than 1, so strokes of constant
+ * width cost nothing extra.
+ *
+ * @see StrokePoints#toPath()
+ */
+public class StrokePoints {
+    /** Packed coordinates: x of point i is at 2i, y at 2i + 1. */
+    private float[] coords;
+
+    /** Width scale of each point, or null if every point has weight 1. */
+    private float[] weights;
+
+    /** Number of points stored. */
+    private int size;
+
+    /**
+     * Creates an empty set of points with room for a typical stroke.
+     */
+    public StrokePoints() {
+        this(32);
+    }
+
+    /**
+     * Creates an empty set of points.
+     *
+     * @param capacity  Number of points to reserve room for.
+     */
+    public StrokePoints(int capacity) {
+        coords = new float[Math.max(1, capacity) * 2];
+    }
+
+    /**
+     * Wraps an existing coordinate array, without copying it.
+     *
+     * @param coords    Packed x, y coordinates.
+     * @param size      Number of points in coords.
+     * @throws IllegalArgumentException if coords is too small to hold size points.
+     */
+    public StrokePoints(float[] coords, int size) {
+        if (size < 0 || coords.length < size * 2) {
+            throw new IllegalArgumentException("Illegal size " + size + " for " + coords.length + " coordinates");
+        }
+        this.coords = coords;
+        this.size = size;
+    }
+
+    /**
+     * Wraps existing coordinate and weight arrays, without copying them.
+     *
+     * @param coords    Packed x, y coordinates.
+     * @param weights   Weight of each point, or null if all are 1.
+     * @param size      Number of points in coords.
+     * @throws IllegalArgumentException if coords or weights are too small to hold size points.
+     */
+    public StrokePoints(float[] coords, float[] weights, int size) {
+        this(coords, size);
+        if (weights != null && weights.length < size) {
+            throw new IllegalArgumentException("Illegal size " + size + " for " + weights.length + " weights");
+        }
+        this.weights = weights;
+    }
+
+    /**
+     * Appends a point.
+     */
+    public void add(float x, float y) {
+        add(x, y, 1);
+    }
+
+    /**
+     * Appends a point with a weight.
+     *
+     * @param weight    Scale of the stroke's width at this point.
+     */
+    public void add(float x, float y, float weight) {
+        if (size * 2 == coords.length) {
+            float[] grown = new float[coords.length * 2];
+            System.arraycopy(coords, 0, grown, 0, coords.length);
+            coords = grown;
+        }
+        coords[size * 2] = x;
+        coords[size * 2 + 1] = y;
+
+        if (weights == null && weight != 1) {
+            weights = new float[coords.length / 2];
+            Arrays.fill(weights, 0, size, 1);
+        }
+        if (weights != null) {
+            if (size == weights.length) {
+                weights = Arrays.copyOf(weights, coords.length / 2);
+            }
+            weights[size] = weight;
+        }
+        size++;
+    }
+
+    /**
+     * Removes all points, keeping the allocated storage for coordinates.
+     */
+    public void clear() {
+        size = 0;
+        weights = null;
+    }
+
+    /**
+     * @return Number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    public float getX(int i) {
+        return coords[i * 2];
+    }
+
+    public float getY(int i) {
+        return coords[i * 2 + 1];
+    }
+
+    /**
+     * @return Weight of point i.
+     */
+    public float getWeight(int i) {
+        return weights == null ? 1 : weights[i];
+    }
+
+    /**
+     * @return True if some point has a weight other than 1, so the stroke's width varies.
+     */
+    public boolean hasWeights() {
+        return weights != null;
+    }
+
+    /**
+     * Returns the backing array of weights, which is not copied. Only the first size() entries
+     * are valid.
+     *
+     * @return Weights, or null if every point has weight 1.
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return Memory held by the coordinate and weight arrays, in bytes.
+     */
+    public long getByteSize() {
+        return 4L * coords.length + (weights == null ? 0 : 4L * weights.length);
+    }
+
+    /**
+     * Returns the backing array, which is not copied. Only the first 2 * size() entries are valid.
+     *
+     * @return Packed x, y coordinates.
+     */
+    public float[] getCoords() {
+        return coords;
+    }
+
+    /**
+     * Leaves out every point closer than a distance to the last point kept, for drawing the stroke
+     * with less detail. The first and last points are always kept, with their weights.
+     *
+     * @param spacing   Least distance between points kept.
+     * @return Points kept, or these points themselves if none were left out.
+     */
+    public StrokePoints decimate(float spacing) {
+        if (size <= 2) {
+            return this;
+        }
+        float limit = spacing * spacing;
+        float[] kept = new float[size * 2];
+        float[] keptWeights = weights == null ? null : new float[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            float x = coords[i * 2], y = coords[i * 2 + 1];
+            if (count > 0 && i < size - 1) {
+                float dx = x - kept[count * 2 - 2], dy = y - kept[count * 2 - 1];
+                if (dx * dx + dy * dy < limit) {
+                    continue;
+                }
+            }
+            kept[count * 2] = x;
+            kept[count * 2 + 1] = y;
+            if (keptWeights != null) {
+                keptWeights[count] = weights[i];
+            }
+            count++;
+        }
+        return count == size ? this : new StrokePoints(kept, keptWeights, count);
+    }
+
+    /**
+     * Builds the path for these points, the same way DrawingView builds it while drawing: a move
+     * to the first point followed by a quadratic bezier through each point to the midpoint
+     * between it and the next.
+     *
+     * @return Newly created path.
+     */
+    public Path toPath() {
+        Path path = new Path();
+        if (size == 0) {
+            return path;
+        }
+
+        path.moveTo(coords[0], coords[1]);
+        for (int i = 1; i < size; i++) {
+            float lastX = coords[i * 2 - 2], lastY = coords[i * 2 - 1];
+            float x = coords[i * 2], y = coords[i * 2 + 1];
+            path.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,132 @@
+package cse340.undo.actions;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.app.DrawingView;
+
+/**
+ * Reversible action which moves, scales or rotates a group of strokes. The matrix is applied once,
+ * the first time the action is done. Snapshots of the strokes from before and after keep both
+ * geometries, and undo and redo swap between them, so repeating them never drifts the strokes the
+ * way applying the matrix and its float inverse over and over would.
+ *
+ * The snapshots share the strokes' geometry rather than copying it, but they keep the geometry
+ * from before the transform alive for as long as the action is in the history.
+ */
+public class TransformAction extends AbstractReversibleAction {
+    /** Strokes to transform. */
+    private final List<StrokeAction> strokes;
+
+    /** Transform to apply. */
+    private final Matrix matrix;
+
+    /** Snapshots of the strokes before and after the transform, or null until first done. */
+    private List<StrokeAction> before, after;
+
+    /**
+     * Creates an action that transforms strokes.
+     *
+     * @param strokes   Strokes to transform, which must be rendered when the action is done.
+     * @param matrix    Affine transform to apply. Copied.
+     * @throws IllegalArgumentException if strokes or matrix are null, or matrix can't be inverted.
+     */
+    public TransformAction(List<StrokeAction> strokes, Matrix matrix) {
+        if (strokes == null || matrix == null) {
+            throw new IllegalArgumentException("Null strokes or matrix");
+        }
+        this.strokes = new ArrayList<>(strokes);
+        this.matrix = new Matrix(matrix);
+        if (!matrix.invert(new Matrix())) {
+            throw new IllegalArgumentException("Matrix can't be inverted: " + matrix);
+        }
+    }
+
+    /**
+     * Transforms the strokes the first time; puts back the transformed geometry when redone.
+     *
+     * @param view  DrawingView showing the strokes.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        if (after == null) {
+            before = snapshot(strokes);
+            view.transformStrokes(strokes, matrix);
+            after = snapshot(strokes);
+        } else {
+            view.restoreStrokeGeometry(strokes, after);
+        }
+    }
+
+    /**
+     * Puts back the geometry the strokes had before they were transformed.
+     *
+     * @param view  DrawingView showing the strokes.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.restoreStrokeGeometry(strokes, before);
+    }
+
+    /**
+     * Gets the area covered by the strokes both before and after they are transformed.
+     *
+     * @param out   Rectangle to receive the area.
+     * @return True if there are strokes to transform.
+     */
+    @Override
+    public boolean getArea(RectF out) {
+        out.setEmpty();
+        RectF bounds = new RectF();
+        if (after != null) {
+            union(before, out, bounds);
+            union(after, out, bounds);
+        } else {
+            // Never done yet, so the strokes will go where the matrix puts them.
+            union(strokes, out, bounds);
+            RectF moved = new RectF(out);
+            matrix.mapRect(moved);
+            out.union(moved);
+        }
+        return !strokes.isEmpty();
+    }
+
+    /**
+     * @return Strokes this action transforms. Not a copy.
+     */
+    public List<StrokeAction> getStrokes() {
+        return strokes;
+    }
+
+    private static List<StrokeAction> snapshot(List<StrokeAction> strokes) {
+        List<StrokeAction> snapshots = new ArrayList<>(strokes.size());
+        for (int i = 0; i < strokes.size(); i++) {
+            snapshots.add(strokes.get(i).snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Adds the bounds of strokes to an area.
+     *
+     * @param bounds    Scratch rectangle for each stroke's bounds.
+     */
+    private static void union(List<StrokeAction> strokes, RectF out, RectF bounds) {
+        for (int i = 0; i < strokes.size(); i++) {
+            strokes.get(i).getBounds(bounds);
+            out.union(bounds);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Transform " + strokes.size() + " strokes by " + matrix.toShortString();
+    }
+}
@@ -1,6 +1,7 @@
 package cse340.undo.app;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
@@ -11,8 +12,6 @@ import android.view.MotionEvent;
 import java.util.ArrayList;
 import java.util.List;
 
-import cse340.undo.R;
-
 /* ********************************************************************************************** *
  * ********************************************************************************************** *
  *                      DO NOT EDIT THIS FILE, PLEASE, DO NOT EDIT THIS FILE                      *
@@ -35,6 +34,9 @@ public abstract class AbstractColorPickerView extends AppCompatImageView { //} i
     /** Ratio between radius of the thumb handle and mRadius, the radius of the wheel. */
     protected static final float RADIUS_TO_THUMB_RATIO = 0.085f;
 
+    /** Diameter of the wheel most recently requested from ColorWheelCache, in pixels. */
+    private int mWheelDiameter;
+
     /** Used the state to keep track of the PPS state for ColorPickerView. */
     public enum State { START, INSIDE } // staff note: should be protected
     protected State mState;
@@ -54,6 +56,22 @@ public abstract class AbstractColorPickerView extends AppCompatImageView { //} i
         void onColorSelected(@ColorInt int color);
     }
 
+    /** A List of registered ColorPreviewListeners */
+    @NonNull
+    private List<ColorPreviewListener> mColorPreviewListeners;
+
+    /**
+     * Class which defines a listener to be called while a color is being chosen, before it is
+     * selected. Previews are delivered at most once per frame.
+     */
+    public interface ColorPreviewListener {
+        /** Called with the color currently under the user's finger. */
+        void onColorPreview(@ColorInt int color);
+
+        /** Called when previewing stops, just before the color is selected or the drag cancelled. */
+        void onColorPreviewEnd();
+    }
+
     /**
      * Registers a new listener
      *
@@ -77,6 +95,29 @@ public abstract class AbstractColorPickerView extends AppCompatImageView { //} i
         return mColorChangeListeners.remove(colorChangeListener);
     }
 
+    /**
+     * Registers a new preview listener
+     *
+     * @param colorPreviewListener New listener (should not be null).
+     * @throws IllegalArgumentException if colorPreviewListener is null
+     */
+    public final void addColorPreviewListener(@NonNull ColorPreviewListener colorPreviewListener) {
+        if (colorPreviewListener == null) {
+            throw new IllegalArgumentException("colorPreviewListener should never be null");
+        }
+        mColorPreviewListeners.add(colorPreviewListener);
+    }
+
+    /**
+     * Removes a ColorPreviewListener, if it exists
+     *
+     * @param colorPreviewListener Listener that should be removed (should not be null).
+     * @return True if the listener did exist, and was thus removed. False otherwise.
+     */
+    public final boolean removeColorPreviewListener(ColorPreviewListener colorPreviewListener) {
+        return mColorPreviewListeners.remove(colorPreviewListener);
+    }
+
     /**
      * Calculate the essential geometry given an event.
      *
@@ -124,6 +165,45 @@ public abstract class AbstractColorPickerView extends AppCompatImageView { //} i
         mColorChangeListeners.forEach(l -> l.onColorSelected(color));
     }
 
+    /**
+     * Requests a color wheel rendered at exactly the given diameter, replacing the current one once
+     * it is ready. Cheap to call on every layout: nothing is rendered unless the size changed.
+     *
+     * @param diameter Diameter of the wheel, in pixels.
+     */
+    protected void requestWheel(int diameter) {
+        if (diameter == mWheelDiameter) {
+            return;
+        }
+        mWheelDiameter = diameter;
+        ColorWheelCache.request(diameter, 2 * RADIUS_TO_THUMB_RATIO, this::onWheelReady);
+    }
+
+    private void onWheelReady(@NonNull Bitmap wheel) {
+        // Ignore wheels for a size this view has since been laid out away from.
+        if (wheel.getWidth() == mWheelDiameter) {
+            setImageBitmap(wheel);
+        }
+    }
+
+    /**
+     * Method that will notify all the registered preview listeners of the color being previewed.
+     * Called once per frame while dragging, so it avoids allocating.
+     * @param color The color being previewed
+     */
+    protected void invokeColorPreviewListeners(@ColorInt int color) {
+        for (int i = 0; i < mColorPreviewListeners.size(); i++) {
+            mColorPreviewListeners.get(i).onColorPreview(color);
+        }
+    }
+
+    /**
+     * Method that will notify all the registered preview listeners that previewing has ended
+     */
+    protected void invokeColorPreviewEndListeners() {
+        mColorPreviewListeners.forEach(ColorPreviewListener::onColorPreviewEnd);
+    }
+
     /**
      * Your model should be private to the application, but the application needs a way to set
      * the color of the ColorPickerView, so we provide a setter of the color for the app
@@ -133,8 +213,8 @@ public abstract class AbstractColorPickerView extends AppCompatImageView { //} i
     /** From here on out, this is boilerplate. */
     public AbstractColorPickerView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setImageResource(R.drawable.color_wheel);
         mColorChangeListeners = new ArrayList<>();
+        mColorPreviewListeners = new ArrayList<>();
     }
 
 }
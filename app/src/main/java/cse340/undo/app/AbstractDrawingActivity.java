@@ -1,15 +1,20 @@
 package cse340.undo.app;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.IdRes;
 import android.support.annotation.LayoutRes;
 import android.support.constraint.ConstraintLayout;
 import android.support.constraint.ConstraintSet;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.View;
+import android.view.ViewStub;
+import android.view.ViewTreeObserver;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
 import cse340.undo.R;
 import cse340.undo.actions.AbstractAction;
@@ -31,12 +36,36 @@ public abstract class AbstractDrawingActivity extends AppCompatActivity {
 
     private int fabMargin;
 
+    /** Menus added since constraints were last applied, in the order they were added. */
+    private List<PendingMenu> pendingMenus;
+
+    /** Whether onPostCreate has applied the initial menu constraints. */
+    private boolean menusApplied;
+
+    /**
+     * A menu waiting to be constrained into the layout.
+     */
+    private static final class PendingMenu {
+        final View menu;
+        final int verticalAnchor, horizontalAnchor;
+        final boolean collapsible;
+
+        PendingMenu(View menu, int verticalAnchor, int horizontalAnchor, boolean collapsible) {
+            this.menu = menu;
+            this.verticalAnchor = verticalAnchor;
+            this.horizontalAnchor = horizontalAnchor;
+            this.collapsible = collapsible;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
 
         // Setup content view and action bar.
         setContentView();
+        pendingMenus = new ArrayList<>();
 
         layout = findViewById(R.id.layout);
         menusLastId = new SparseIntArray();
@@ -44,7 +73,36 @@ public abstract class AbstractDrawingActivity extends AppCompatActivity {
 
         // Register onStrokeCompleted listener.
         draw = findViewById(R.id.draw);
-        draw.addListener(this::doAction);
+        draw.addListener(this::onStrokeCompleted);
+
+        logTimeToFirstDraw(createStart);
+    }
+
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+
+        // Subclasses have now added all their menus, so constrain them in one pass.
+        applyMenus();
+        menusApplied = true;
+    }
+
+    /**
+     * Logs the time between onCreate and the first frame being drawn, for measuring cold start.
+     *
+     * @param createStart SystemClock.uptimeMillis() at the start of onCreate.
+     */
+    private void logTimeToFirstDraw(long createStart) {
+        ViewTreeObserver observer = layout.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                layout.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(getClass().getSimpleName(), "Time to first draw: "
+                        + (SystemClock.uptimeMillis() - createStart) + " ms");
+                return true;
+            }
+        });
     }
 
     /**
@@ -54,6 +112,15 @@ public abstract class AbstractDrawingActivity extends AppCompatActivity {
         setContentView(R.layout.drawing_activity);
     }
 
+    /**
+     * Called when the user finishes drawing a stroke. By default the stroke is done immediately.
+     *
+     * @param action    Action drawing the completed stroke.
+     */
+    protected void onStrokeCompleted(AbstractAction action) {
+        doAction(action);
+    }
+
     /**
      * When a stroke is completed, apply it to the current draw view.
      *
@@ -66,18 +133,105 @@ public abstract class AbstractDrawingActivity extends AppCompatActivity {
     }
 
     /**
-     * Adds a menu item to the group of menus on the screen.
+     * Adds a menu item to the group of menus on the screen. Menus added during onCreate are
+     * constrained together in a single pass once onCreate returns; menus added later are
+     * constrained immediately.
      *
      * @param menu  View to add as a menu item.
      * @param verticalAnchor    ConstraintSet constant to anchor the menu vertically.
      * @param horizontalAnchor  ConstraintSet constant to anchor the menu horizontally.
      */
     protected void addMenu(View menu, int verticalAnchor, int horizontalAnchor) {
+        addMenu(menu, verticalAnchor, horizontalAnchor, false);
+    }
+
+    private void addMenu(View menu, int verticalAnchor, int horizontalAnchor, boolean collapsible) {
         layout.addView(menu);
+        pendingMenus.add(new PendingMenu(menu, verticalAnchor, horizontalAnchor, collapsible));
+
+        if (menusApplied) {
+            applyMenus();
+        }
+    }
+
+    /**
+     * Adds a collapsible menu to the screen. Items which are not inflated yet (because they are
+     * inside a ViewStub) are skipped; register them with inflateMenuItems when first opened.
+     *
+     * @param layoutId  ID of the layout which contains the menu.
+     * @param verticalAnchor    ConstraintSet constant to anchor the menu vertically.
+     * @param horizontalAnchor  ConstraintSet constant to anchor the menu horizontally.
+     * @param items List of collapsible item IDs.
+     * @param listener  Listener to be registered for onClick on each item.
+     * @see AbstractDrawingActivity#inflateMenuItems(int, int[], View.OnClickListener)
+     */
+    protected void addCollapsableMenu(@LayoutRes int layoutId,
+                                      int verticalAnchor,
+                                      int horizontalAnchor,
+                                      @IdRes int[] items,
+                                      View.OnClickListener listener) {
+        View menu = getLayoutInflater().inflate(layoutId, layout, false);
+        addMenu(menu, verticalAnchor, horizontalAnchor, true);
+        setItemListeners(items, listener);
+    }
+
+    /**
+     * Inflates the ViewStub holding a menu's items, if it hasn't been inflated already, and
+     * registers the listener on the items.
+     *
+     * @param stubId    ID of the ViewStub containing the items.
+     * @param items List of collapsible item IDs inside the stub.
+     * @param listener  Listener to be registered for onClick on each item.
+     * @return True if the items were inflated by this call, false if they already were.
+     */
+    protected boolean inflateMenuItems(@IdRes int stubId, @IdRes int[] items, View.OnClickListener listener) {
+        ViewStub stub = findViewById(stubId);
+        if (stub == null) {
+            return false;
+        }
+
+        stub.inflate();
+        setItemListeners(items, listener);
+        return true;
+    }
+
+    private void setItemListeners(@IdRes int[] items, View.OnClickListener listener) {
+        for (@IdRes int item : items) {
+            View view = findViewById(item);
+            if (view != null) {
+                view.setOnClickListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Constrains every menu added since the last call using a single ConstraintSet, so that the
+     * layout is cloned and applied once regardless of how many menus there are.
+     */
+    protected void applyMenus() {
+        if (pendingMenus.isEmpty()) {
+            return;
+        }
 
         ConstraintSet cons = new ConstraintSet();
         cons.clone(layout);
 
+        for (PendingMenu pending : pendingMenus) {
+            connectMenu(cons, pending);
+        }
+
+        cons.applyTo(layout);
+        pendingMenus.clear();
+    }
+
+    /**
+     * Adds the constraints for a single menu to the given set.
+     */
+    private void connectMenu(ConstraintSet cons, PendingMenu pending) {
+        View menu = pending.menu;
+        int verticalAnchor = pending.verticalAnchor;
+        int horizontalAnchor = pending.horizontalAnchor;
+
         switch (verticalAnchor) {
             case ConstraintSet.TOP:
             case ConstraintSet.BOTTOM:
@@ -110,41 +264,16 @@ public abstract class AbstractDrawingActivity extends AppCompatActivity {
             default:
                 throw new IllegalStateException("Illegal horizontalAnchor " + horizontalAnchor);
         }
-
-        cons.applyTo(layout);
         menusLastId.put(key, menu.getId());
-    }
-
-    /**
-     * Adds a collapsible menu to the screen.
-     *
-     * @param layoutId  ID of the layout which contains the menu.
-     * @param verticalAnchor    ConstraintSet constant to anchor the menu vertically.
-     * @param horizontalAnchor  ConstraintSet constant to anchor the menu horizontally.
-     * @param items List of collapsible item IDs.
-     * @param listener  Listener to be registered for onClick on each item.
-     */
-    protected void addCollapsableMenu(@LayoutRes int layoutId,
-                                      int verticalAnchor,
-                                      int horizontalAnchor,
-                                      @IdRes int[] items,
-                                      View.OnClickListener listener) {
-        View menu = getLayoutInflater().inflate(layoutId, layout, false);
-        addMenu(menu, verticalAnchor, horizontalAnchor);
 
-        ConstraintSet cons = new ConstraintSet();
-        cons.clone(layout);
-
-        if (verticalAnchor == ConstraintSet.BOTTOM) {
-            cons.connect(menu.getId(), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
-        } else {
-            cons.connect(menu.getId(), ConstraintSet.BOTTOM, ConstraintSet.PARENT_ID, ConstraintSet.BOTTOM);
+        if (pending.collapsible) {
+            // Collapsible menus stretch to the opposite edge so their items have room to expand.
+            if (verticalAnchor == ConstraintSet.BOTTOM) {
+                cons.connect(menu.getId(), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
+            } else {
+                cons.connect(menu.getId(), ConstraintSet.BOTTOM, ConstraintSet.PARENT_ID, ConstraintSet.BOTTOM);
+            }
         }
-
-        cons.applyTo(layout);
-
-        Arrays.stream(items).mapToObj(this::findViewById).forEach(
-                v -> ((View) v).setOnClickListener(listener));
     }
 
     protected static void setViewVisibility(View view, boolean visible) {
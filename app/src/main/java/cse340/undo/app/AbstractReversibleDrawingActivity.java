@@ -1,18 +1,41 @@
 package cse340.undo.app;
 
+import android.graphics.Paint;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.constraint.ConstraintSet;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
 import android.view.ViewGroup;
+import android.widget.SeekBar;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import cse340.undo.R;
 import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.document.Autosave;
+import cse340.undo.document.AutosaveJournal;
+import cse340.undo.document.DrawingDocument;
+import cse340.undo.document.DrawingDocumentReader;
+import cse340.undo.document.DrawingDocumentWriter;
+import cse340.undo.document.SvgExporter;
 import cse340.undo.history.AbstractStackHistory;
 import cse340.undo.history.StackHistory;
+import cse340.undo.replay.ReplayReport;
+import cse340.undo.replay.TouchRecorder;
+import cse340.undo.replay.TouchReplayer;
 
 /**
  * This is an Activity wrapper around DrawingView. Not only does it instantiate a DrawingView and
@@ -30,14 +53,96 @@ import cse340.undo.history.StackHistory;
 public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingActivity {
     protected static final int DEFAULT_HISTORY_SIZE = 10;
 
+    /**
+     * Number of strokes decoded and rendered before loadDrawing returns. The remaining strokes are
+     * loaded in batches of LOAD_BATCH_SIZE, one batch per message on the UI thread.
+     */
+    private static final int LOAD_FIRST_BATCH_SIZE = 500;
+    private static final int LOAD_BATCH_SIZE = 2000;
+
+    /** Thread saving and exporting drawings, so files are never written on the UI thread. */
+    private static final ExecutorService FILE_WRITER = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "DrawingFiles"));
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
     private final String LOG_TAG = getClass().getSimpleName();
 
-    /** History model used to do/undo/redo actions. */
-    protected final AbstractStackHistory model;
+    /**
+     * Tag of the messages logged for every action, undo and redo. They are debug messages, so the
+     * strings describing the history are only built when the tag is set to log them; activity
+     * names can be too long to be a tag.
+     */
+    private static final String HISTORY_LOG_TAG = "DrawingHistory";
+
+    /** History model used to do/undo/redo actions. Kept across configuration changes. */
+    protected AbstractStackHistory model;
+
+    /** Background autosave of the drawing, or null if autosave is disabled. */
+    private Autosave autosave;
+
+    /** True while the autosaved drawing is being restored, so it isn't saved again. */
+    private boolean restoring;
+
+    /**
+     * Actions in the history which the document format can't record. Kept as actions come and go,
+     * so undo and redo know whether the journal can follow them without scanning the history.
+     */
+    private int unrecordableCount;
+
+    /** Prepares completed strokes off the UI thread before doing them. */
+    private ActionPipeline pipeline;
+
+    /** Actions submitted from other threads, applied once per frame. */
+    private ActionSubmissionQueue submissions;
+
+    /** Frees memory held by the drawing when the system runs low. */
+    private MemoryGovernor memory;
+
+    /** Shows the drawing at any step of its history. Kept across configuration changes. */
+    private HistoryTimeline timeline;
+
+    /** Recorder of the current session, or null if not recording. */
+    private TouchRecorder recorder;
+
+    /** Replayer of a recorded session, or null if none is running. */
+    private TouchReplayer replayer;
+
+    /**
+     * Everything making up the drawing, handed from an activity destroyed for a configuration
+     * change to its replacement. Nothing in it refers to the old activity or its views.
+     */
+    private static final class RetainedDrawing {
+        final AbstractStackHistory model;
+        final StrokeLayer strokes;
+        final RasterLayer fills;
+        final Paint paint;
+        final Autosave autosave;
+        final ActionSubmissionQueue submissions;
+        final HistoryTimeline timeline;
+
+        RetainedDrawing(AbstractStackHistory model, StrokeLayer strokes, RasterLayer fills, Paint paint,
+                        Autosave autosave, ActionSubmissionQueue submissions, HistoryTimeline timeline) {
+            this.model = model;
+            this.strokes = strokes;
+            this.fills = fills;
+            this.paint = paint;
+            this.autosave = autosave;
+            this.submissions = submissions;
+            this.timeline = timeline;
+        }
+    }
+
+    /** Drawing retained from the previous instance, until onPostCreate finishes restoring it. */
+    private RetainedDrawing retained;
 
     /** View groups containing undo and redo menu buttons. */
     private ViewGroup undoMenu, redoMenu;
 
+    /** View group containing the history timeline, and its slider. */
+    private ViewGroup timelineMenu;
+    private SeekBar timelineSeek;
+
     /**
      * Class which defines a listener to be called when an action is done.
      */
@@ -52,12 +157,39 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         void onActionUndone(AbstractReversibleAction action);
     }
 
+    /**
+     * Class which defines a listener to be called when a drawing has been saved or exported.
+     */
+    public interface OnFileWrittenListener {
+        /**
+         * @param file  File written.
+         * @param error Why the file could not be written, or null if it was.
+         */
+        void onFileWritten(File file, IOException error);
+    }
+
     /** Data structure for storing listeners for action events **/
     private List<ActionListener> mActionListeners;
 
     /** Data structure for storing listeners for undo events **/
     private List<ActionUndoListener> mActionUndoListeners;
 
+    /**
+     * Actions done or undone since the last frame, in order, waiting to be delivered to listeners.
+     * pendingUndone.get(i) is true if pendingActions.get(i) was undone rather than done.
+     */
+    private final List<AbstractReversibleAction> pendingActions = new ArrayList<>();
+    private final List<Boolean> pendingUndone = new ArrayList<>();
+
+    /** Whether a history change notification is waiting for the next frame. */
+    private boolean historyChangeScheduled;
+
+    /** Delivers all history changes since the last frame as a single batch. */
+    private final Choreographer.FrameCallback historyChangeCallback = frameTimeNanos -> {
+        historyChangeScheduled = false;
+        dispatchHistoryChanged();
+    };
+
     /**
      * Creates a new AbstractReversibleDrawingActivity with the default history limit.
      */
@@ -77,6 +209,26 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        pipeline = new ActionPipeline(this::doAction, this::onActionDropped);
+
+        // After a configuration change, take over the previous drawing as is rather than
+        // redoing its actions.
+        retained = (RetainedDrawing) getLastCustomNonConfigurationInstance();
+        if (retained != null) {
+            model = retained.model;
+            draw.setStrokeLayer(retained.strokes);
+            draw.setRasterLayer(retained.fills);
+            submissions = retained.submissions;
+            timeline = retained.timeline;
+            timeline.setView(draw);
+        } else {
+            submissions = new ActionSubmissionQueue();
+            timeline = new HistoryTimeline(draw, model);
+        }
+        submissions.bind(this::doActions);
+        memory = new MemoryGovernor(draw, model, timeline, this::onHistoryDropped);
+        model.setDiscardListener(this::onDiscarded);
+        countUnrecordable();
 
         // Add undo and redo menu buttons to the ConstraintLayout.
         undoMenu = (ViewGroup) getLayoutInflater().inflate(R.layout.undo_menu, layout, false);
@@ -87,12 +239,185 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         findViewById(R.id.fab_undo).setOnClickListener((v) -> undo());
         findViewById(R.id.fab_redo).setOnClickListener((v) -> redo());
 
+        // Add the history timeline to the bottom of the screen.
+        timelineMenu = (ViewGroup) getLayoutInflater().inflate(R.layout.timeline_menu, layout, false);
+        addMenu(timelineMenu, ConstraintSet.BOTTOM, ConstraintSet.START);
+        timelineSeek = findViewById(R.id.timeline_seek);
+        timelineSeek.setOnSeekBarChangeListener(new TimelineListener());
+
         mActionUndoListeners = new ArrayList<>();
         mActionListeners = new ArrayList<>();
 
+        File autosaveDirectory = getAutosaveDirectory();
+        if (retained != null) {
+            autosave = retained.autosave;
+        } else if (autosaveDirectory != null) {
+            autosave = new Autosave(autosaveDirectory);
+        }
+
         updateMenuButtons();
     }
 
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+
+        // Subclasses have set up their default paint by now, so the restored paint wins.
+        if (retained != null) {
+            draw.setCurrentPaint(retained.paint);
+            retained = null;
+            Log.i(LOG_TAG, "Kept " + draw.getStrokes().size() + " strokes across configuration change");
+        } else if (autosave != null) {
+            restoring = true;
+            autosave.runAfterPendingWrites(this::restoreAutosave);
+        }
+    }
+
+    /**
+     * Keeps the drawing for the activity replacing this one after a configuration change.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // A drawing still being restored is incomplete; the next activity restores it again.
+        if (restoring) {
+            return null;
+        }
+        pipeline.flush();
+        timeline.endPreview();
+        return new RetainedDrawing(model, draw.getStrokeLayer(), draw.getRasterLayer(), draw.getCurrentPaint(),
+                autosave, submissions, timeline);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // Fold the journal into the base file while the drawing isn't being changed. A
+        // configuration change keeps the drawing in memory, so there's no need then.
+        if (!isChangingConfigurations()) {
+            compactAutosave();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        memory.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        memory.onLowMemory();
+    }
+
+    /**
+     * Called when actions were forgotten to free memory. The journal can no longer be replayed
+     * against the history as it now is, so a full snapshot replaces it.
+     */
+    private void onHistoryDropped() {
+        countUnrecordable();
+        timeline.onHistoryDropped();
+        compactAutosave();
+        scheduleHistoryChanged(null, false);
+    }
+
+    /**
+     * Called when the history forgets an action on its own. A stroke forgotten while undone will
+     * never be drawn again, so its path and points are reused once autosave has written it.
+     */
+    private void onDiscarded(AbstractReversibleAction action, boolean undone) {
+        if (!DrawingDocument.canRecord(action)) {
+            unrecordableCount--;
+        }
+        if (!undone || !(action instanceof StrokeAction)) {
+            return;
+        }
+        StrokeAction stroke = (StrokeAction) action;
+        if (autosave != null) {
+            autosave.runAfterPendingWrites(() -> draw.recycleStroke(stroke));
+        } else {
+            draw.recycleStroke(stroke);
+        }
+    }
+
+    /**
+     * Empties the drawing and its history, saving the empty drawing as the autosave.
+     */
+    void clearDrawing() {
+        pipeline.flush();
+        draw.clearStrokes();
+        draw.clearFills();
+        clearHistory();
+        compactAutosave();
+        scheduleHistoryChanged(null, false);
+    }
+
+    /**
+     * Forgets every action in the history, as when an action can't be undone.
+     */
+    void clearHistory() {
+        model.clear();
+        timeline.onCleared();
+        unrecordableCount = 0;
+    }
+
+    /**
+     * Counts the unrecordable actions in the history again, for when actions were forgotten
+     * without passing through the discard listener.
+     */
+    private void countUnrecordable() {
+        unrecordableCount = 0;
+        for (AbstractReversibleAction action : model.getActions()) {
+            if (!DrawingDocument.canRecord(action)) {
+                unrecordableCount++;
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        submissions.bind(null);
+        // The history may go to the next activity, which sets its own listener.
+        model.setDiscardListener(null);
+        // The autosave goes to the next activity, unless it is starting its own restore.
+        if (autosave != null && (restoring || !isChangingConfigurations())) {
+            autosave.close();
+        }
+        if (historyChangeScheduled) {
+            historyChangeScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(historyChangeCallback);
+        }
+        pendingActions.clear();
+        pendingUndone.clear();
+        if (replayer != null) {
+            replayer.cancel();
+            replayer = null;
+        }
+    }
+
+    /**
+     * Prepares the stroke's action on a worker thread, then does it. The stroke stays on screen
+     * meanwhile, so the finger never waits for the preparation.
+     *
+     * @param action    Action drawing the completed stroke.
+     */
+    @Override
+    protected void onStrokeCompleted(AbstractAction action) {
+        pipeline.submit(action);
+    }
+
+    /**
+     * Called instead of doAction for a completed stroke's action which was cancelled, or failed
+     * to be prepared. Stops showing it.
+     *
+     * @param action    Action which won't be done.
+     */
+    protected void onActionDropped(AbstractAction action) {
+        draw.dropPending(action);
+    }
+
     /**
      * Adds the action to the history, if it is reversible, or clears the history otherwise.
      *
@@ -103,72 +428,597 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         if (action == null) {
             return;
         }
+        // Strokes completed earlier come first.
+        pipeline.flush();
 
+        if (action instanceof AbstractReversibleAction) {
+            timeline.beforeAction();
+        }
         super.doAction(action);
 
         if (action instanceof AbstractReversibleAction) {
             // The action that was just done is undoable!
             AbstractReversibleAction ra = (AbstractReversibleAction) action;
 
-            Log.i(LOG_TAG, "Before add: " + model);
+            boolean logged = Log.isLoggable(HISTORY_LOG_TAG, Log.DEBUG);
+            if (logged) {
+                Log.d(HISTORY_LOG_TAG, "Before add: " + model);
+            }
             model.addAction(ra);
-            Log.i(LOG_TAG, "After add: " + model);
+            if (!DrawingDocument.canRecord(ra)) {
+                unrecordableCount++;
+            }
+            if (logged) {
+                Log.d(HISTORY_LOG_TAG, "After add: " + model);
+            }
+            timeline.onActionDone(ra);
 
-            Log.i(LOG_TAG, "calling undo listeners on action");
-            mActionListeners.forEach(l -> l.onAction(ra));
+            if (autosave != null && !restoring) {
+                autosave.onActionDone(ra);
+            }
+            if (recorder != null) {
+                // Strokes are recorded as the touches drawing them; only menu actions are left.
+                if (ra instanceof ChangeColorAction) {
+                    recorder.onColor(((ChangeColorAction) ra).getColor());
+                } else if (ra instanceof ChangeThicknessAction) {
+                    recorder.onThickness(((ChangeThicknessAction) ra).getThickness());
+                }
+            }
+            scheduleHistoryChanged(ra, false);
         } else {
             // The action that was just done is NOT undoable! Must clear history.
 
             Log.i(LOG_TAG, "Undoable action: " + action);
-            model.clear();
+            clearHistory();
+            compactAutosave();
+            scheduleHistoryChanged(null, false);
         }
+    }
 
-        updateMenuButtons();
+    /**
+     * Does a batch of actions submitted through the ActionSubmissionQueue. The history change
+     * notifications for the whole batch are delivered together on the next frame.
+     *
+     * @param batch Actions in the order they were submitted.
+     */
+    private void doActions(List<AbstractAction> batch) {
+        if (Log.isLoggable(HISTORY_LOG_TAG, Log.DEBUG)) {
+            Log.d(HISTORY_LOG_TAG, "Applying " + batch.size() + " submitted action(s)");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            doAction(batch.get(i));
+        }
+    }
+
+    /**
+     * Returns the queue through which any thread can submit actions to this drawing. The queue
+     * outlives configuration changes, so producers may keep it.
+     *
+     * @return Queue of actions done once per frame on the UI thread.
+     */
+    public ActionSubmissionQueue getActionQueue() {
+        return submissions;
     }
 
     /**
      * Redoes the most recently undone action (if any).
      */
     protected void redo() {
-        Log.i(LOG_TAG, "Before redo: " + model);
+        pipeline.flush();
+        boolean logged = Log.isLoggable(HISTORY_LOG_TAG, Log.DEBUG);
+        if (logged) {
+            Log.d(HISTORY_LOG_TAG, "Before redo: " + model);
+        }
         AbstractReversibleAction action = model.redo();
-        Log.i(LOG_TAG, "After redo: " + model);
+        if (logged) {
+            Log.d(HISTORY_LOG_TAG, "After redo: " + model);
+        }
 
         if (action != null) {
             action.doAction(draw);
-            Log.i(LOG_TAG, "calling action listeners on action");
-            mActionListeners.forEach(l -> l.onAction(action));
+            timeline.onRedone(action);
+            if (autosave != null && !restoring) {
+                // A flattened snapshot has no history for the journal's undo and redo to refer to.
+                if (unrecordableCount == 0) {
+                    autosave.onRedo();
+                } else {
+                    autosave.requestCompaction();
+                }
+            }
+            if (recorder != null) {
+                recorder.onRedo();
+            }
+            scheduleHistoryChanged(action, false);
         }
-
-        updateMenuButtons();
     }
 
     /**
      * Undoes the most recently (re)done action (if reversible).
      */
     protected void undo() {
-        Log.i(LOG_TAG, "Before undo" + model);
+        pipeline.flush();
+        boolean logged = Log.isLoggable(HISTORY_LOG_TAG, Log.DEBUG);
+        if (logged) {
+            Log.d(HISTORY_LOG_TAG, "Before undo: " + model);
+        }
         AbstractReversibleAction action = model.undo();
-        Log.i(LOG_TAG, "After undo" + model);
+        if (logged) {
+            Log.d(HISTORY_LOG_TAG, "After undo: " + model);
+        }
 
         if (action != null) {
             action.undoAction(draw);
-            Log.i(LOG_TAG, "calling undo listeners on action");
-            mActionUndoListeners.forEach(l -> l.onActionUndone(action));
+            timeline.onUndone();
+            if (autosave != null && !restoring) {
+                // A flattened snapshot has no history for the journal's undo and redo to refer to.
+                if (unrecordableCount == 0) {
+                    autosave.onUndo();
+                } else {
+                    autosave.requestCompaction();
+                }
+            }
+            if (recorder != null) {
+                recorder.onUndo();
+            }
+            scheduleHistoryChanged(action, true);
         }
+    }
 
+    /**
+     * Queues a history change to be reported on the next frame. However many actions are done or
+     * undone before then, the UI is refreshed once.
+     *
+     * @param action Action that was done or undone, or null if the history was only cleared.
+     * @param undone True if the action was undone, false if it was done.
+     */
+    private void scheduleHistoryChanged(AbstractReversibleAction action, boolean undone) {
+        if (autosave != null && autosave.needsCompaction()) {
+            compactAutosave();
+        }
+
+        if (action != null) {
+            pendingActions.add(action);
+            pendingUndone.add(undone);
+        }
+        if (!historyChangeScheduled) {
+            historyChangeScheduled = true;
+            Choreographer.getInstance().postFrameCallback(historyChangeCallback);
+        }
+    }
+
+    /**
+     * Delivers the queued actions to listeners, in the order they happened, then refreshes the UI.
+     */
+    private void dispatchHistoryChanged() {
+        if (Log.isLoggable(HISTORY_LOG_TAG, Log.DEBUG)) {
+            Log.d(HISTORY_LOG_TAG, "calling listeners on " + pendingActions.size() + " action(s)");
+        }
+        for (int i = 0; i < pendingActions.size(); i++) {
+            AbstractReversibleAction action = pendingActions.get(i);
+            if (pendingUndone.get(i)) {
+                mActionUndoListeners.forEach(l -> l.onActionUndone(action));
+            } else {
+                mActionListeners.forEach(l -> l.onAction(action));
+            }
+        }
+        pendingActions.clear();
+        pendingUndone.clear();
+
+        onHistoryChanged();
+    }
+
+    /**
+     * Called at most once per frame, after listeners have been told about every action done or
+     * undone since the last frame. Subclasses doing their own UI refresh should do it here so
+     * that bursts of actions only cause one refresh.
+     */
+    protected void onHistoryChanged() {
         updateMenuButtons();
     }
 
     protected void updateMenuButtons() {
         setViewVisibility(undoMenu, model.canUndo());
         setViewVisibility(redoMenu, model.canRedo());
+
+        int steps = timeline.getStepCount();
+        timelineSeek.setMax(steps);
+        timelineSeek.setProgress(timeline.getPosition());
+        setViewVisibility(timelineMenu, steps > 0);
+    }
+
+    /**
+     * Shows the drawing at each step the timeline slider is dragged to, then undoes or redoes
+     * actions to get to the step it is let go at.
+     */
+    private final class TimelineListener implements SeekBar.OnSeekBarChangeListener {
+        @Override
+        public void onStartTrackingTouch(SeekBar seekBar) {
+            // Strokes still being prepared belong at the end of the timeline.
+            pipeline.flush();
+        }
+
+        @Override
+        public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+            if (fromUser) {
+                timeline.showStep(progress);
+            }
+        }
+
+        @Override
+        public void onStopTrackingTouch(SeekBar seekBar) {
+            int target = seekBar.getProgress();
+            while (timeline.getPosition() > target && model.canUndo()) {
+                undo();
+            }
+            while (timeline.getPosition() < target && model.canRedo()) {
+                redo();
+            }
+            timeline.endPreview();
+        }
+    }
+
+    /**
+     * Returns the directory autosave keeps its files in. Override to return null to disable
+     * autosave.
+     *
+     * @return Autosave directory, or null to disable autosave.
+     */
+    protected File getAutosaveDirectory() {
+        return new File(getFilesDir(), "autosave");
+    }
+
+    /**
+     * Writes a snapshot of the whole drawing as the autosave base, emptying the journal.
+     */
+    private void compactAutosave() {
+        if (autosave != null && !restoring) {
+            pipeline.flush();
+            autosave.compact(DrawingDocument.capture(draw, model));
+        }
+    }
+
+    /**
+     * Restores the autosaved drawing: the base file, then the journal of changes made after it.
+     */
+    private void restoreAutosave() {
+        if (isDestroyed()) {
+            return;
+        }
+
+        Runnable replayJournal = () -> {
+            try {
+                int changes = AutosaveJournal.replay(autosave.getJournalFile(), autosave.getBaseFile(),
+                        draw.getCurrentPaint(),
+                        new AutosaveJournal.Replay() {
+                            @Override
+                            public void onAction(AbstractReversibleAction action) {
+                                doAction(action);
+                            }
+
+                            @Override
+                            public void onUndo() {
+                                undo();
+                            }
+
+                            @Override
+                            public void onRedo() {
+                                redo();
+                            }
+                        });
+                Log.i(LOG_TAG, "Replayed " + changes + " autosaved change(s)");
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to replay autosave journal", e);
+            }
+
+            // Start from a fresh base so the replayed changes aren't journaled again.
+            restoring = false;
+            compactAutosave();
+        };
+
+        File base = autosave.getBaseFile();
+        if (!base.exists()) {
+            replayJournal.run();
+            return;
+        }
+        try {
+            loadDrawing(base, replayJournal);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to load autosave", e);
+            replayJournal.run();
+        }
+    }
+
+    /**
+     * Saves the drawing, including its history, to a file. The drawing is captured as it is now,
+     * and written on a background thread.
+     *
+     * @param file  File to save to. Replaced if it exists.
+     * @param onWritten Called on the UI thread once the file is written or writing failed, or null.
+     */
+    protected void saveDrawing(File file, OnFileWrittenListener onWritten) {
+        pipeline.flush();
+        DrawingDocument document = DrawingDocument.capture(draw, model);
+        int strokes = draw.getStrokes().size();
+        writeFile(file, "Saved " + strokes + " strokes",
+                () -> DrawingDocumentWriter.write(document, file), onWritten);
+    }
+
+    /**
+     * Exports the strokes currently drawn as an SVG image the size of the canvas. The strokes are
+     * snapshotted as they are now, and written on a background thread.
+     *
+     * @param file  File to export to. Replaced if it exists.
+     * @param onWritten Called on the UI thread once the file is written or writing failed, or null.
+     */
+    protected void exportSvg(File file, OnFileWrittenListener onWritten) {
+        pipeline.flush();
+        List<StrokeAction> drawn = draw.getStrokes();
+        List<StrokeAction> strokes = new ArrayList<>(drawn.size());
+        for (int i = 0; i < drawn.size(); i++) {
+            strokes.add(drawn.get(i).snapshot());
+        }
+        int width = draw.getWidth(), height = draw.getHeight();
+        writeFile(file, "Exported " + strokes.size() + " strokes",
+                () -> SvgExporter.export(strokes, width, height, file), onWritten);
+    }
+
+    /**
+     * Writes a file on FILE_WRITER, logging how long it took and reporting back on the UI thread.
+     *
+     * @param what  Description of what was written, for the log.
+     * @param write Writes the file and returns its size in bytes.
+     */
+    private void writeFile(File file, String what, FileWrite write, OnFileWrittenListener onWritten) {
+        FILE_WRITER.execute(() -> {
+            IOException error = null;
+            try {
+                long start = SystemClock.uptimeMillis();
+                long bytes = write.write();
+                Log.i(LOG_TAG, what + " (" + bytes + " bytes) in "
+                        + (SystemClock.uptimeMillis() - start) + " ms to " + file);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to write " + file, e);
+                error = e;
+            }
+            if (onWritten != null) {
+                IOException result = error;
+                MAIN.post(() -> onWritten.onFileWritten(file, result));
+            }
+        });
+    }
+
+    /**
+     * Writes a file, on FILE_WRITER.
+     */
+    private interface FileWrite {
+        /**
+         * @return Number of bytes written.
+         */
+        long write() throws IOException;
+    }
+
+    /**
+     * Starts recording touches on the canvas and menu actions, replacing any recording in
+     * progress.
+     */
+    protected void startRecording() {
+        recorder = new TouchRecorder();
+        draw.setTouchRecorder(recorder);
+    }
+
+    /**
+     * Stops recording and saves the recording.
+     *
+     * @param file  File to save the recording to. Replaced if it exists.
+     * @throws IOException if the recording could not be saved.
+     * @throws IllegalStateException if not recording.
+     */
+    protected void stopRecording(File file) throws IOException {
+        if (recorder == null) {
+            throw new IllegalStateException("Not recording");
+        }
+        TouchRecorder finished = recorder;
+        recorder = null;
+        draw.setTouchRecorder(null);
+
+        long bytes = finished.writeTo(file);
+        Log.i(LOG_TAG, "Recorded " + finished.size() + " events (" + bytes + " bytes)");
+    }
+
+    /**
+     * Replays a recorded session on top of the current drawing, then logs how long it took and
+     * how much it allocated.
+     *
+     * @param file  Recording saved by stopRecording.
+     * @param speed How many times faster than recorded to replay, or Float.POSITIVE_INFINITY to
+     *              replay as fast as possible.
+     * @param onFinished    Called with the measurements once the replay finishes, or null.
+     * @throws IOException if the recording could not be read.
+     */
+    protected void replay(File file, float speed, TouchReplayer.OnFinishedListener onFinished) throws IOException {
+        if (replayer != null) {
+            replayer.cancel();
+        }
+        replayer = TouchReplayer.load(file);
+        Log.i(LOG_TAG, "Replaying " + replayer.size() + " events at " + speed + "x");
+        long reusedBefore = draw.getReusedObjectCount(), createdBefore = draw.getCreatedObjectCount();
+        replayer.start(new TouchReplayer.Target() {
+            @Override
+            public boolean onTouchEvent(MotionEvent event) {
+                return draw.onTouchEvent(event);
+            }
+
+            @Override
+            public int getStrokeCount() {
+                // Counts completed strokes still being prepared, without waiting for them.
+                return draw.getStrokes().size() + pipeline.getPendingCount();
+            }
+
+            @Override
+            public void onColor(int color) {
+                doAction(new ChangeColorAction(color));
+            }
+
+            @Override
+            public void onThickness(int thickness) {
+                doAction(new ChangeThicknessAction(thickness));
+            }
+
+            @Override
+            public void onUndo() {
+                undo();
+            }
+
+            @Override
+            public void onRedo() {
+                redo();
+            }
+        }, speed, (ReplayReport report) -> {
+            replayer = null;
+            if (report.getNavigationErrors() > 0) {
+                Log.e(LOG_TAG, report.getNavigationErrors() + " replayed pans or zooms changed the strokes");
+            }
+            Log.i(LOG_TAG, "Replay finished: " + report + "; stroke objects reused "
+                    + (draw.getReusedObjectCount() - reusedBefore) + ", created "
+                    + (draw.getCreatedObjectCount() - createdBefore));
+            if (onFinished != null) {
+                onFinished.onFinished(report);
+            }
+        });
+    }
+
+    /**
+     * Replaces the drawing and its history with one loaded from a file. The first strokes are
+     * rendered before this returns; the rest are decoded and rendered over the following UI
+     * thread messages, after which the history is restored.
+     *
+     * @param file  File to load.
+     * @throws IOException if the file could not be opened.
+     */
+    protected void loadDrawing(File file) throws IOException {
+        loadDrawing(file, null);
+    }
+
+    /**
+     * Replaces the drawing and its history with one loaded from a file, as loadDrawing(File), and
+     * runs a task once the whole drawing has been loaded.
+     *
+     * Nothing is journaled while loading, as neither clearing the drawing nor its baked strokes
+     * would be; once loaded, the drawing is written as a fresh autosave base. Restoring the
+     * autosave leaves that to its own task.
+     *
+     * @param file  File to load.
+     * @param onLoaded  Task to run on the UI thread once loading finishes, or null.
+     * @throws IOException if the file could not be opened.
+     */
+    protected void loadDrawing(File file, Runnable onLoaded) throws IOException {
+        DrawingDocumentReader reader = DrawingDocumentReader.open(file, draw.getCurrentPaint());
+
+        pipeline.flush();
+        boolean restore = restoring;
+        restoring = true;
+        draw.clearStrokes();
+        draw.clearFills();
+        clearHistory();
+        Paint paint = draw.getCurrentPaint();
+        paint.setColor(reader.getBaseColor());
+        paint.setStrokeWidth(reader.getBaseThickness());
+
+        long start = SystemClock.uptimeMillis();
+        new DrawingLoader(reader, restore, onLoaded).loadBatch(LOAD_FIRST_BATCH_SIZE);
+        Log.i(LOG_TAG, "First strokes rendered in " + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Loads a document's strokes incrementally, then replays its history.
+     */
+    private final class DrawingLoader implements Runnable {
+        private final DrawingDocumentReader reader;
+        private final Runnable onLoaded;
+        private final long start = SystemClock.uptimeMillis();
+
+        /** True if this is the autosave being restored, which compacts it once the journal is replayed. */
+        private final boolean restore;
+
+        /** Index of the next baked stroke to load. */
+        private int next;
+
+        DrawingLoader(DrawingDocumentReader reader, boolean restore, Runnable onLoaded) {
+            this.reader = reader;
+            this.restore = restore;
+            this.onLoaded = onLoaded;
+        }
+
+        @Override
+        public void run() {
+            loadBatch(LOAD_BATCH_SIZE);
+        }
+
+        /**
+         * Loads up to count baked strokes, then either schedules the next batch or finishes.
+         */
+        void loadBatch(int count) {
+            try {
+                int end = Math.min(reader.getBakedStrokeCount(), next + count);
+                for (; next < end; next++) {
+                    reader.readStroke(next).doAction(draw);
+                }
+                if (next < reader.getBakedStrokeCount()) {
+                    draw.post(this);
+                    return;
+                }
+
+                finish();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to load drawing", e);
+                close();
+            }
+            if (!restore) {
+                // The autosave still describes the drawing before the load.
+                restoring = false;
+                compactAutosave();
+            }
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        }
+
+        /**
+         * Redoes the history as it was saved, undoing the actions which were undone.
+         */
+        private void finish() throws IOException {
+            // Keyframes kept while loading miss the strokes loaded after them.
+            timeline.onCleared();
+            List<AbstractReversibleAction> history = reader.readHistory();
+            for (AbstractReversibleAction action : history) {
+                doAction(action);
+            }
+            for (int i = 0; i < reader.getUndoneCount(); i++) {
+                undo();
+            }
+
+            Paint paint = draw.getCurrentPaint();
+            paint.setColor(reader.getCurrentColor());
+            paint.setStrokeWidth(reader.getCurrentThickness());
+
+            Log.i(LOG_TAG, "Loaded " + reader.getStrokeCount() + " strokes in "
+                    + (SystemClock.uptimeMillis() - start) + " ms");
+            close();
+        }
+
+        private void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close drawing", e);
+            }
+        }
     }
 
     /**
      * Registers a new undo listener for the history
      *
-     * The listener is called *after* an action is undone
+     * The listener is called *after* an action is undone, on the next frame
      */
     public void registerActionUndoListener(ActionUndoListener listener) {
         Log.i(LOG_TAG, "undo action listener registered");
@@ -188,7 +1038,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     /**
      * Registers a new listener for the history
      *
-     * The listener is called *after* an action is done
+     * The listener is called *after* an action is done, on the next frame
      */
     public void registerActionListener(ActionListener listener) {
         Log.i(LOG_TAG, "action listener registered");
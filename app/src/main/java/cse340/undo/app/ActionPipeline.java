@@ -0,0 +1,221 @@
+package cse340.undo.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cse340.undo.actions.AbstractAction;
+
+/**
+ * Does actions in two phases: AbstractAction#prepare() on a worker pool, then doAction on the UI
+ * thread. However long preparation takes, the UI thread only ever pays for the apply phase.
+ * Actions are applied in the order they were submitted, whatever order their preparation
+ * finishes in.
+ *
+ * Anything which must see every submitted action applied (undo, saving, other actions) calls
+ * flush() first; it prepares any action no worker has started on the calling thread. Actions
+ * cancelled while being prepared, or whose preparation throws or is interrupted, are dropped
+ * instead of applied, and the owner told so it can stop showing them.
+ *
+ * Must only be used from the UI thread.
+ */
+final class ActionPipeline {
+    private static final String LOG_TAG = "ActionPipeline";
+
+    /** Applies a prepared action on the UI thread. */
+    interface Applier {
+        void apply(AbstractAction action);
+    }
+
+    /** Told on the UI thread of an action dropped instead of applied. */
+    interface DropListener {
+        void onDropped(AbstractAction action);
+    }
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), r -> {
+                Thread t = new Thread(r, "ActionPipeline");
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    /** An action and how far its preparation has got. */
+    private static final class Job implements Runnable {
+        private static final int NEW = 0, PREPARING = 1, PREPARED = 2, FAILED = 3;
+
+        final AbstractAction action;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private final ActionPipeline pipeline;
+
+        /** Set on the UI thread if it gave up waiting for the action to be prepared. */
+        private boolean failed;
+
+        Job(AbstractAction action, ActionPipeline pipeline) {
+            this.action = action;
+            this.pipeline = pipeline;
+        }
+
+        /** Prepares the action on a worker, unless the UI thread got to it first. */
+        @Override
+        public void run() {
+            if (state.compareAndSet(NEW, PREPARING)) {
+                try {
+                    prepare();
+                } finally {
+                    // Even a failed job must leave the queue, or every action after it waits.
+                    pipeline.scheduleApply();
+                }
+            }
+        }
+
+        /**
+         * @return True if preparation has finished, whether or not it failed.
+         */
+        boolean isPrepared() {
+            return state.get() >= PREPARED;
+        }
+
+        boolean isFailed() {
+            return failed || state.get() == FAILED;
+        }
+
+        /**
+         * Makes sure the action is prepared, doing it here or waiting for the worker doing it. If
+         * interrupted while waiting, the job fails, since the action may be half prepared.
+         */
+        void awaitPrepared() {
+            if (state.compareAndSet(NEW, PREPARING)) {
+                prepare();
+                return;
+            }
+            synchronized (this) {
+                while (state.get() < PREPARED) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failed = true;
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void prepare() {
+            boolean prepared = false;
+            try {
+                action.prepare();
+                prepared = true;
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Dropping " + action + ", which failed to prepare", e);
+            } finally {
+                synchronized (this) {
+                    state.set(prepared ? PREPARED : FAILED);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private final Applier applier;
+    private final DropListener dropListener;
+
+    /** Submitted actions not applied yet, oldest first. */
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+
+    /** Whether an apply has been posted to the UI thread and not run yet. */
+    private final AtomicBoolean applyScheduled = new AtomicBoolean();
+
+    private final Runnable applyPrepared = this::applyPrepared;
+
+    /** True while actions are being applied, so actions applied in turn don't flush. */
+    private boolean applying;
+
+    ActionPipeline(Applier applier, DropListener dropListener) {
+        this.applier = applier;
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Queues an action to be prepared on a worker and then applied.
+     */
+    void submit(AbstractAction action) {
+        Job job = new Job(action, this);
+        pending.add(job);
+        WORKERS.execute(job);
+    }
+
+    /**
+     * @return True if some submitted action hasn't been applied yet.
+     */
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return Number of submitted actions not applied yet.
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Applies every submitted action now, preparing on this thread any not yet prepared. Does
+     * nothing when called while the pipeline is itself applying an action.
+     */
+    void flush() {
+        if (applying) {
+            return;
+        }
+        applying = true;
+        try {
+            while (!pending.isEmpty()) {
+                Job job = pending.poll();
+                job.awaitPrepared();
+                apply(job);
+            }
+        } finally {
+            applying = false;
+        }
+    }
+
+    private void apply(Job job) {
+        if (!job.isFailed() && !job.action.isCancelled()) {
+            applier.apply(job.action);
+        } else {
+            dropListener.onDropped(job.action);
+        }
+    }
+
+    private void scheduleApply() {
+        if (applyScheduled.compareAndSet(false, true)) {
+            MAIN.post(applyPrepared);
+        }
+    }
+
+    /**
+     * Applies the prepared actions at the front of the queue, stopping at the first which isn't.
+     */
+    private void applyPrepared() {
+        applyScheduled.set(false);
+        if (applying) {
+            return;
+        }
+        applying = true;
+        try {
+            while (!pending.isEmpty() && pending.peek().isPrepared()) {
+                apply(pending.poll());
+            }
+        } finally {
+            applying = false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package cse340.undo.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cse340.undo.actions.AbstractAction;
+import cse340.undo.concurrent.MpscQueue;
+
+/**
+ * Lets any thread (imports, replays, scripted generation) submit actions to the drawing. Actions
+ * go into a lock-free queue; once per frame the UI thread drains everything submitted so far and
+ * hands it to the activity as one batch, so a burst of submissions costs a single UI refresh.
+ *
+ * The queue holds no reference to an activity other than the one it is bound to, and is kept
+ * across configuration changes, so producers may hold on to it for as long as they like.
+ */
+public final class ActionSubmissionQueue {
+    /**
+     * Applies a batch of submitted actions on the UI thread.
+     */
+    interface BatchConsumer {
+        /**
+         * @param batch Actions in the order they were submitted. Only valid during the call.
+         */
+        void onBatch(List<AbstractAction> batch);
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final MpscQueue<AbstractAction> queue = new MpscQueue<>();
+
+    /** Whether a drain has been scheduled and not started yet. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /** Reused for every batch. UI thread only. */
+    private final List<AbstractAction> batch = new ArrayList<>();
+
+    /** Receiver of the batches, or null while no activity is bound. UI thread only. */
+    private BatchConsumer consumer;
+
+    private final Choreographer.FrameCallback drainCallback = frameTimeNanos -> drain();
+    private final Runnable scheduleDrain = () -> Choreographer.getInstance().postFrameCallback(drainCallback);
+
+    /**
+     * Submits an action to be done on the next frame. May be called from any thread.
+     *
+     * @param action    Action to do.
+     * @throws IllegalArgumentException if action is null.
+     */
+    public void submit(AbstractAction action) {
+        queue.offer(action);
+        if (drainScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleDrain.run();
+            } else {
+                MAIN.post(scheduleDrain);
+            }
+        }
+    }
+
+    /**
+     * Sets who applies the submitted actions. Actions submitted while nobody is bound wait for the
+     * next consumer. Must be called on the UI thread.
+     *
+     * @param consumer  Receiver of the batches, or null to unbind.
+     */
+    void bind(BatchConsumer consumer) {
+        this.consumer = consumer;
+        if (consumer != null && !queue.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            scheduleDrain.run();
+        }
+    }
+
+    /**
+     * Hands everything submitted so far to the consumer. Runs on the UI thread.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        if (consumer == null) {
+            return;
+        }
+
+        for (AbstractAction action = queue.poll(); action != null; action = queue.poll()) {
+            batch.add(action);
+        }
+        if (!batch.isEmpty()) {
+            try {
+                consumer.onBatch(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // A producer may be between adding its action and linking it in; pick it up next frame.
+        if (!queue.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            scheduleDrain.run();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.graphics.Rect;
 import android.support.annotation.ColorInt;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.graphics.Paint;
 import android.view.View;
@@ -44,8 +45,11 @@ public class ColorPickerView extends AbstractColorPickerView {
     }
 
     private void updateModel(float x, float y) {
-        setColor(getColorFromAngle(getTouchAngle(x, y)));
-        // hint: we give you a very helpful function to call
+        // Same mapping as getColorFromAngle, but reusing mHsv since this runs on every move event.
+        mHsv[0] = ((float) Math.toDegrees(getTouchAngle(x, y)) + 360 + 90) % 360;
+        mHsv[1] = 1f;
+        mHsv[2] = 1f;
+        setColor(Color.HSVToColor(mHsv));
     }
 
 /* ********************************************************************************************** *
@@ -60,6 +64,25 @@ public class ColorPickerView extends AbstractColorPickerView {
 
 
 
+    /** Color selected when the current drag started, restored if the drag is cancelled. */
+    @ColorInt
+    private int mDragStartColor;
+
+    /** Whether a preview is waiting for the next frame. */
+    private boolean mPreviewScheduled;
+
+    /** Delivers at most one preview per frame, no matter how many move events arrived. */
+    private final Choreographer.FrameCallback mPreviewCallback = frameTimeNanos -> {
+        mPreviewScheduled = false;
+        invokeColorPreviewListeners(mCurrentColor);
+    };
+
+    /** Scratch space for HSV conversions, so dragging does not allocate. */
+    private final float[] mHsv = new float[3];
+
+    /** Paint for the thumb handle. */
+    private final Paint mThumbPaint = new Paint();
+
 /* ********************************************************************************************** *
  *                               <End of other fields and constants declarations />
  * ********************************************************************************************** */
@@ -69,35 +92,23 @@ public class ColorPickerView extends AbstractColorPickerView {
         this.mState = State.START;
         this.mCurrentColor = DEFAULT_COLOR;
         setVisibility(View.GONE);
+        mThumbPaint.setStyle(Paint.Style.FILL);
+        mThumbPaint.setColor(WHITE);
         // TODO: Initialize variables as necessary (such as state)
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        Paint paintThumb = new Paint();
-        paintThumb.setStyle(Paint.Style.FILL);
-        paintThumb.setColor(WHITE);
-        if (mState == State.INSIDE) {
-            paintThumb.setAlpha(128);
-        }
+        mThumbPaint.setAlpha(mState == State.INSIDE ? 128 : 255);
 
-        float theta = getAngleFromColor(mCurrentColor);
-        //float y = (float) (mRadius * Math.sin(theta));
-        //float x = (float) (mRadius * Math.cos(theta));
+        Color.colorToHSV(mCurrentColor, mHsv);
+        float theta = (float) Math.toRadians(mHsv[0] - 90);
         double thumbRatio = (mRadius - (mRadius * RADIUS_TO_THUMB_RATIO));
         canvas.drawCircle(
                 (float) (mCenterX + (thumbRatio * Math.cos(theta))),
                 (float) (mCenterY + (thumbRatio * Math.sin(theta))),
-                (mRadius * RADIUS_TO_THUMB_RATIO), paintThumb);
-
-        Paint paintCircle = new Paint();
-        paintCircle.setColor(mCurrentColor);
-    //    canvas.drawCircle(mCenterX, mCenterY,
-    //            mRadius - (2 * RADIUS_TO_THUMB_RATIO * mRadius), paintCircle);
-
-
-
+                (mRadius * RADIUS_TO_THUMB_RATIO), mThumbPaint);
     }
 
     @Override
@@ -106,6 +117,7 @@ public class ColorPickerView extends AbstractColorPickerView {
         mRadius = Math.min(getHeight() / 2, getWidth() / 2);
         mCenterX = getWidth() / 2;
         mCenterY = getHeight() / 2;
+        requestWheel((int) (2 * mRadius));
 
         // TODO: calculate mRadius, mCenterX, and mCenterY based View dimensions
 
@@ -140,22 +152,29 @@ public class ColorPickerView extends AbstractColorPickerView {
             case START:
                 if (event.getAction() == MotionEvent.ACTION_DOWN && geometry == EssentialGeometry.WHEEL) {
                     mState = State.INSIDE;
+                    mDragStartColor = mCurrentColor;
 
                     updateModel(event.getX(), event.getY());
-                    invalidate();
+                    schedulePreview();
                     return true;
                 }
                 break;
             case INSIDE:
                 if (event.getAction() == MotionEvent.ACTION_MOVE && geometry == EssentialGeometry.WHEEL) {
                     updateModel(event.getX(), event.getY());
-                    invalidate();
+                    schedulePreview();
                     return true;
                 } else if (event.getAction() == MotionEvent.ACTION_UP) {
                     mState = State.START;
+                    endPreview();
                     invokeColorChangeListeners(mCurrentColor);
                     invalidate();
                     return true;
+                } else if (event.getAction() == MotionEvent.ACTION_CANCEL) {
+                    mState = State.START;
+                    endPreview();
+                    setColor(mDragStartColor);
+                    return true;
                 }
                 break;
             default:
@@ -165,6 +184,37 @@ public class ColorPickerView extends AbstractColorPickerView {
 
     }
 
+    /**
+     * Makes sure listeners see the current color on the next frame.
+     */
+    private void schedulePreview() {
+        if (!mPreviewScheduled) {
+            mPreviewScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mPreviewCallback);
+        }
+    }
+
+    /**
+     * Drops any pending preview and tells listeners previewing is over.
+     */
+    private void endPreview() {
+        if (mPreviewScheduled) {
+            mPreviewScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mPreviewCallback);
+        }
+        invokeColorPreviewEndListeners();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mState == State.INSIDE) {
+            mState = State.START;
+            endPreview();
+            mCurrentColor = mDragStartColor;
+        }
+    }
+
     /**
      * Converts from a color to angle on the wheel.
      *
@@ -0,0 +1,134 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.SweepGradient;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates the color wheel bitmap shown by AbstractColorPickerView. The wheel is rendered off the
+ * UI thread at exactly the size the view was laid out at, and the result is kept in a process-wide
+ * cache so that recreating the view (for example on a configuration change) does not render it
+ * again unless the size changed.
+ *
+ * All methods must be called from the UI thread. Callbacks are always delivered on the UI thread.
+ *
+ * @see AbstractColorPickerView#requestWheel(int)
+ */
+final class ColorWheelCache {
+    /** Number of hue stops used to build the sweep gradient. */
+    private static final int HUE_STOPS = 13;
+
+    /** Callback invoked once the wheel for the requested size is available. */
+    interface WheelCallback {
+        void onWheelReady(@NonNull Bitmap wheel);
+    }
+
+    /** Single background thread used for rendering; at most one wheel is rendered at a time. */
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ColorWheelRenderer");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    /** Most recently rendered wheel, and the diameter it was rendered at. */
+    private static Bitmap sWheel;
+    private static int sDiameter;
+
+    /** Diameter currently being rendered (0 if none), and the callbacks waiting on it. */
+    private static int sPendingDiameter;
+    private static final List<WheelCallback> sPendingCallbacks = new ArrayList<>();
+
+    private ColorWheelCache() {}
+
+    /**
+     * Requests a wheel of the given diameter. If a matching wheel is cached, the callback is
+     * invoked immediately; otherwise the wheel is rendered in the background.
+     *
+     * @param diameter  Diameter of the wheel, in pixels.
+     * @param ringRatio Width of the colored ring as a fraction of the wheel radius.
+     * @param callback  Callback to receive the wheel.
+     */
+    static void request(int diameter, float ringRatio, @NonNull WheelCallback callback) {
+        if (diameter <= 0) {
+            return;
+        }
+        if (sWheel != null && sDiameter == diameter) {
+            callback.onWheelReady(sWheel);
+            return;
+        }
+
+        if (sPendingDiameter != diameter) {
+            // Any callbacks waiting on a stale size will be satisfied by their own later request.
+            sPendingCallbacks.clear();
+            sPendingDiameter = diameter;
+            RENDERER.execute(() -> {
+                Bitmap wheel = render(diameter, ringRatio);
+                MAIN.post(() -> onRendered(diameter, wheel));
+            });
+        }
+        sPendingCallbacks.add(callback);
+    }
+
+    /**
+     * Stores the newly rendered wheel and notifies anyone waiting on it.
+     */
+    private static void onRendered(int diameter, Bitmap wheel) {
+        if (diameter != sPendingDiameter) {
+            // A different size was requested while this one was rendering.
+            wheel.recycle();
+            return;
+        }
+        sWheel = wheel;
+        sDiameter = diameter;
+        sPendingDiameter = 0;
+
+        List<WheelCallback> callbacks = new ArrayList<>(sPendingCallbacks);
+        sPendingCallbacks.clear();
+        callbacks.forEach(c -> c.onWheelReady(wheel));
+    }
+
+    /**
+     * Renders a hue ring matching AbstractColorPickerView#getColorFromAngle(double). Safe to call
+     * from any thread since it only touches the bitmap it creates.
+     *
+     * @param diameter  Diameter of the wheel, in pixels.
+     * @param ringRatio Width of the colored ring as a fraction of the wheel radius.
+     * @return Newly allocated bitmap containing the wheel.
+     */
+    static Bitmap render(int diameter, float ringRatio) {
+        Bitmap wheel = Bitmap.createBitmap(diameter, diameter, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(wheel);
+
+        float radius = diameter / 2f;
+        float ringWidth = radius * ringRatio;
+
+        // A sweep gradient starts at 3 o'clock and runs clockwise, which is the same direction as
+        // atan2 on screen coordinates, so each stop only needs the wheel's 90 degree hue offset.
+        int[] colors = new int[HUE_STOPS];
+        float[] hsv = { 0f, 1f, 1f };
+        for (int i = 0; i < HUE_STOPS; i++) {
+            hsv[0] = (90f + 360f * i / (HUE_STOPS - 1)) % 360f;
+            colors[i] = Color.HSVToColor(hsv);
+        }
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(ringWidth);
+        paint.setShader(new SweepGradient(radius, radius, colors, null));
+        canvas.drawCircle(radius, radius, radius - ringWidth / 2f, paint);
+
+        return wheel;
+    }
+}
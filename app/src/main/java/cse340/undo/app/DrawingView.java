@@ -2,42 +2,164 @@ package cse340.undo.app;
 
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.widget.FrameLayout;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.AbstractReversibleViewAction;
+import cse340.undo.actions.EraseAction;
+import cse340.undo.actions.FillAction;
 import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokeOutline;
+import cse340.undo.actions.StrokePoints;
+import cse340.undo.actions.TransformAction;
+import cse340.undo.fill.TileDelta;
+import cse340.undo.input.OneEuroFilter;
+import cse340.undo.replay.TouchRecorder;
 
 /***
  * The canvas on which the drawing takes place. Drawings are made up of
  * strokes, which are handled by the StrokeAction class.
  * This canvas doesn't know anything about undo, and you won't need
  * to modify it to add features, or to add support for undo.
+ *
+ * The drawing lives in a document larger than the view: dragging with two fingers pans it and
+ * pinching zooms it. Everything drawn and every tool works in document coordinates; touches are
+ * mapped into the document through the inverse of the viewport.
  */
 public class DrawingView extends FrameLayout {
     public static final String LOG_TAG = "DrawingView";
 
     /** State machine enum and field. */
     private enum DrawingModel {
-        START, DRAWING
+        START, DRAWING, NAVIGATING
     }
 
     /** What state the PPS is in. */
     private DrawingModel state;
 
+    /** What dragging across the canvas does. */
+    public enum Tool {
+        /** Draws a stroke with the current paint. */
+        PEN,
+        /** Erases the parts of strokes within the eraser radius of the drag. */
+        ERASER,
+        /** Fills the area around where the touch starts with the current paint's color. */
+        FILL,
+        /** Selects strokes with a lasso, then moves, scales or rotates the selection. */
+        SELECT
+    }
+
+    /** Current tool. */
+    private Tool tool = Tool.PEN;
+
+    /** Tool used by the drag in progress. */
+    private Tool dragTool = Tool.PEN;
+
+    /** Default distance from the eraser path within which ink is erased, in pixels. */
+    public static final float DEFAULT_ERASER_RADIUS = 20;
+
+    /** Distance from the eraser path within which ink is erased. */
+    private float eraserRadius = DEFAULT_ERASER_RADIUS;
+
+    /** Paint showing the area swept by the eraser while it is dragged. */
+    private final Paint eraserPaint;
+
+    /** Paint showing the lasso while it is dragged. */
+    private final Paint lassoPaint;
+
+    /** Strokes selected with the lasso, or null if none are. */
+    private Selection selection;
+
+    /** Tools whose touch samples are smoothed before they're added to the stroke. */
+    private final Set<Tool> smoothedTools = EnumSet.of(Tool.PEN, Tool.SELECT);
+
+    /** Cutoff frequency of the smoothing when the touch is still, in Hz. */
+    private static final float SMOOTHING_MIN_CUTOFF = 1.5f;
+
+    /** Rise in the smoothing's cutoff frequency per pixel per second, so fast strokes don't lag. */
+    private static final float SMOOTHING_BETA = 0.02f;
+
+    /** Removes jitter from the touch samples of the drag in progress. */
+    private final OneEuroFilter smoothing = new OneEuroFilter(SMOOTHING_MIN_CUTOFF, SMOOTHING_BETA, 1);
+
+    /** Whether the drag in progress is smoothed. */
+    private boolean smoothingDrag;
+
+    /** Whether pen strokes vary in width with pressure and speed. */
+    private boolean variableWidth = true;
+
+    /** Weight of a pen sample at zero pressure and with the touch standing still. */
+    private static final float BASE_WEIGHT = 0.5f;
+
+    /** Speed at which a sample's weight has been halved, in pixels per millisecond. */
+    private static final float HALF_WEIGHT_SPEED = 2;
+
+    /** Least and greatest weight of a pen sample. */
+    private static final float MIN_WEIGHT = 0.25f, MAX_WEIGHT = 1.75f;
+
+    /** How far each sample moves the weight towards its own, so widths change smoothly. */
+    private static final float WEIGHT_SMOOTHING = 0.4f;
+
+    /** Pressure and time of the touch event being handled. */
+    private float touchPressure;
+    private long touchTime;
+
+    /** Time of the last point added to the stroke, and the stroke's weight there. */
+    private long lastPointTime;
+    private float lastWeight;
+
+    /** Builds the outline of variable-width strokes as they are drawn. Reused for each one. */
+    private final StrokeOutline.Builder outlineBuilder = new StrokeOutline.Builder(1);
+
+    /** Outline of a variable-width stroke being drawn, or null if the stroke isn't one. */
+    private StrokeOutline.Builder liveOutline;
+
+    /** Paint filling liveOutline. */
+    private Paint liveFillPaint;
+
+    /** Paths, point buffers and paints reused from stroke to stroke. */
+    private final StrokePool pool = new StrokePool();
+
     /** Drawing fields. */
     private Path currentPath;
+    private StrokePoints currentPoints;
     private Paint currentPaint;
 
+    /** Committed strokes and their rendered cache. May be handed over from a previous view. */
+    private StrokeLayer layer;
+
+    /** Pixels painted by fills, beneath the strokes. May be handed over from a previous view. */
+    private RasterLayer raster;
+
+    /** Redraws this view when the stroke layer changes. */
+    private final Runnable invalidateCallback = this::invalidate;
+
+    /**
+     * Strokes which have been completed but not done yet, because their action is still being
+     * prepared. Rendered on top of the committed strokes until they are done.
+     */
+    private final List<StrokeAction> pendingStrokes = new ArrayList<>();
+
     /** Stroke drawing buffer. Used to render the line while it's being drawn. */
     protected AbstractReversibleViewAction buffer;
 
@@ -55,6 +177,28 @@ public class DrawingView extends FrameLayout {
     /** Used to track last touch point for path drawing. */
     private final PointF lastPoint;
 
+    /** Recorder of the touch events reaching this view, or null if not recording. */
+    private TouchRecorder recorder;
+
+    /** Least and greatest zoom, as the scale from the document to the view. */
+    public static final float MIN_ZOOM = 1 / 64f, MAX_ZOOM = 8;
+
+    /** Transform from the document to the view, its inverse and its scale. */
+    private final Matrix viewport = new Matrix();
+    private final Matrix inverseViewport = new Matrix();
+    private float zoom = 1;
+
+    /** Touch being mapped into the document. */
+    private final float[] touchPoint = new float[2];
+
+    /** Center of and mean distance to the touches navigating, as of the last event. */
+    private float navigationX, navigationY, navigationSpan;
+
+    /** Picture of an earlier step of the history shown in place of the drawing, or null. */
+    private Bitmap timelinePreview;
+    private final Paint timelinePreviewPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF timelinePreviewBounds = new RectF();
+
     /**
      * Creates a new, empty DrawingView with default paint properties.
      */
@@ -62,6 +206,11 @@ public class DrawingView extends FrameLayout {
         super(context, attributeSet);
 
         listeners = new HashSet<>();
+        layer = new StrokeLayer();
+        raster = new RasterLayer();
+
+        // Strokes are drawn by this view itself rather than by child views.
+        setWillNotDraw(false);
 
         lastPoint = new PointF();
 
@@ -71,7 +220,17 @@ public class DrawingView extends FrameLayout {
         currentPaint.setStrokeJoin(Paint.Join.ROUND);
         currentPaint.setStrokeCap(Paint.Cap.ROUND);
 
-        currentPath = new Path();
+        eraserPaint = new Paint(currentPaint);
+        eraserPaint.setColor(0x40808080);
+        eraserPaint.setStrokeWidth(eraserRadius * 2);
+
+        lassoPaint = new Paint(currentPaint);
+        lassoPaint.setColor(Color.DKGRAY);
+        lassoPaint.setStrokeWidth(2);
+        lassoPaint.setPathEffect(new DashPathEffect(new float[] {12, 8}, 0));
+
+        currentPath = pool.obtainPath();
+        currentPoints = pool.obtainPoints();
 
         state = DrawingModel.START;
     }
@@ -86,9 +245,33 @@ public class DrawingView extends FrameLayout {
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        Log.i(LOG_TAG, "Touch at (" + x + ", " + y + ")");
+        if (timelinePreview != null) {
+            // What is shown isn't the drawing, so there is nothing to draw on.
+            return false;
+        }
+        touchPoint[0] = event.getX();
+        touchPoint[1] = event.getY();
+        inverseViewport.mapPoints(touchPoint);
+        float x = touchPoint[0];
+        float y = touchPoint[1];
+        // Called for every touch sample, so only build the message when it will be logged.
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "Touch at (" + x + ", " + y + ")");
+        }
+        touchPressure = event.getPressure();
+        touchTime = event.getEventTime();
+        if (recorder != null) {
+            recorder.onTouchEvent(event);
+        }
+
+        // A second finger going down turns any drag into panning and zooming.
+        if (event.getActionMasked() == MotionEvent.ACTION_POINTER_DOWN && state != DrawingModel.NAVIGATING) {
+            if (state == DrawingModel.DRAWING) {
+                Log.i(LOG_TAG, "onDrawCancel");
+                onDrawCancel();
+            }
+            state = DrawingModel.NAVIGATING;
+        }
 
         // Handle input events.
         switch (state) {
@@ -96,6 +279,8 @@ public class DrawingView extends FrameLayout {
                 return handleStartState(event, x, y);
             case DRAWING:
                 return handleDrawingState(event, x, y);
+            case NAVIGATING:
+                return handleNavigatingState(event);
             default:
                 break;
         }
@@ -145,6 +330,86 @@ public class DrawingView extends FrameLayout {
         return false;
     }
 
+    /**
+     * Private helper method to handle the Navigating state in the PPS, where the touches pan and
+     * zoom the document until the last of them is lifted.
+     * @param event The MotionEvent that triggered onTouchEvent
+     * @return true if the event was consumed, false otherwise
+     */
+    private boolean handleNavigatingState(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                measureTouches(event, -1);
+                return true;
+            case MotionEvent.ACTION_POINTER_UP:
+                // Carry on from where the remaining touches are, so the document doesn't jump.
+                measureTouches(event, event.getActionIndex());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                onNavigate(event);
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                state = DrawingModel.START;
+                // The layer renders its cache for the viewport once it stops moving.
+                invalidate();
+                return true;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Records where the touches are, as the center they are around and their mean distance to it.
+     *
+     * @param skipped   Index of a touch being lifted, to leave out; or -1.
+     */
+    private void measureTouches(MotionEvent event, int skipped) {
+        int count = 0;
+        float sumX = 0, sumY = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipped) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        navigationX = sumX / count;
+        navigationY = sumY / count;
+        float span = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipped) {
+                span += (float) Math.hypot(event.getX(i) - navigationX, event.getY(i) - navigationY);
+            }
+        }
+        navigationSpan = span / count;
+    }
+
+    /**
+     * Pans the document along with the center of the touches, and zooms it about that center by
+     * as much as the touches spread apart or pinch together.
+     */
+    private void onNavigate(MotionEvent event) {
+        float lastX = navigationX, lastY = navigationY, lastSpan = navigationSpan;
+        measureTouches(event, -1);
+        viewport.postTranslate(navigationX - lastX, navigationY - lastY);
+        if (lastSpan > 0 && navigationSpan > 0) {
+            float target = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * navigationSpan / lastSpan));
+            viewport.postScale(target / zoom, target / zoom, navigationX, navigationY);
+        }
+        onViewportChanged();
+    }
+
+    private void onViewportChanged() {
+        viewport.invert(inverseViewport);
+        zoom = viewport.mapRadius(1);
+        invalidate();
+    }
+
     /**
      * Triggered when drawing starts.
      *
@@ -152,13 +417,54 @@ public class DrawingView extends FrameLayout {
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawStart(float x, float y) {
+        dragTool = tool;
+        if (dragTool == Tool.FILL) {
+            // Fills happen where the touch starts; nothing is shown while dragging.
+            lastPoint.x = x;
+            lastPoint.y = y;
+            return;
+        }
+        if (dragTool == Tool.SELECT) {
+            Selection.Part part = selection == null ? Selection.Part.NONE : selection.hit(x, y, zoom);
+            if (part != Selection.Part.NONE) {
+                selection.startDrag(layer, getWidth(), getHeight(), viewport, x, y, part == Selection.Part.HANDLE);
+                invalidate();
+                return;
+            }
+            // Touching outside the selection starts a new lasso.
+            clearSelection();
+        }
+
+        // The first sample passes through the filter unchanged, and starts it off.
+        smoothingDrag = smoothedTools.contains(dragTool);
+        smoothing.reset();
+        smoothing.filter(x, y, touchTime);
+
         // Start a new drawing path.
         currentPath.moveTo(x, y);
+        Paint paint = dragTool == Tool.ERASER ? eraserPaint
+                : dragTool == Tool.SELECT ? lassoPaint : pool.sharedPaint(currentPaint);
+        Paint fillPaint = dragTool == Tool.PEN ? pool.sharedFillPaint(paint) : null;
+        if (dragTool == Tool.PEN && variableWidth) {
+            liveOutline = outlineBuilder;
+            liveOutline.reset(currentPaint.getStrokeWidth());
+            liveFillPaint = fillPaint;
+            lastWeight = weigh(0);
+            currentPoints.add(x, y, lastWeight);
+            liveOutline.add(x, y, lastWeight);
+        } else {
+            liveOutline = null;
+            currentPoints.add(x, y);
+        }
         lastPoint.x = x;
         lastPoint.y = y;
-        Log.i(LOG_TAG, "onDrawStart: starting new stroke @ " + lastPoint);
+        lastPointTime = touchTime;
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "onDrawStart: starting new stroke @ " + lastPoint);
+        }
 
-        buffer = new StrokeAction(currentPath, currentPaint);
+        // The eraser and lasso are never committed, so they can use the view's paints as they are.
+        buffer = StrokeAction.withSharedPaints(currentPath, currentPoints, paint, fillPaint);
         buffer.doAction(this);
     }
 
@@ -169,49 +475,484 @@ public class DrawingView extends FrameLayout {
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawMove(float x, float y) {
-        // Only add a bezier when the distance is larger than a threshold (MIN_MOVE_DIST).
+        if (selection != null && selection.isDragging()) {
+            selection.drag(x, y);
+            invalidate();
+            return;
+        }
+        if (buffer == null) {
+            return;
+        }
+        if (smoothingDrag) {
+            smoothing.filter(x, y, touchTime);
+            x = smoothing.getX();
+            y = smoothing.getY();
+        }
+
+        // Only add a bezier when the distance is larger than a threshold (MIN_MOVE_DIST on screen).
         // If the distance is smaller, wait until a ACTION_MOVE event that creates a large enough distance.
-        if (Math.sqrt(Math.pow(x - lastPoint.x, 2) + Math.pow(y - lastPoint.y, 2)) >= MIN_MOVE_DIST) {
+        if (Math.sqrt(Math.pow(x - lastPoint.x, 2) + Math.pow(y - lastPoint.y, 2)) * zoom >= MIN_MOVE_DIST) {
             // For each ACTION_MOVE event, add a quadratic bezier from the last point (in the drawing path) to current point.
             // Each bezier is a smooth arc to be added in the drawing path.
             currentPath.quadTo(lastPoint.x, lastPoint.y,
                     (x + lastPoint.x) / 2, (y + lastPoint.y) / 2);
+            if (liveOutline != null) {
+                long elapsed = Math.max(1, touchTime - lastPointTime);
+                float speed = (float) Math.hypot(x - lastPoint.x, y - lastPoint.y) / elapsed;
+                lastWeight += (weigh(speed) - lastWeight) * WEIGHT_SMOOTHING;
+                currentPoints.add(x, y, lastWeight);
+                liveOutline.add(x, y, lastWeight);
+            } else {
+                currentPoints.add(x, y);
+            }
             lastPoint.x = x;
             lastPoint.y = y;
+            lastPointTime = touchTime;
 
             // The stroke buffer has access to currentPath, invalidate to trigger redraw.
             buffer.invalidate();
         }
     }
 
+    /**
+     * Works out the weight of a pen sample: heavier the harder the touch presses, and lighter the
+     * faster it moves, as ink would be.
+     *
+     * @param speed Speed of the touch, in pixels per millisecond.
+     * @return Weight of the sample, before smoothing.
+     */
+    private float weigh(float speed) {
+        float weight = (BASE_WEIGHT + touchPressure) / (1 + speed / HALF_WEIGHT_SPEED);
+        return Math.max(MIN_WEIGHT, Math.min(MAX_WEIGHT, weight));
+    }
+
     /**
      * Triggered when drawing ends. Commits the current buffer as a done action by triggering
      * callbacks.
      */
     protected void onDrawEnd() {
-        buffer.undoAction(this);
+        AbstractAction action;
+        if (dragTool == Tool.FILL) {
+            action = fill((int) Math.floor(lastPoint.x), (int) Math.floor(lastPoint.y));
+        } else if (selection != null && selection.isDragging()) {
+            Matrix matrix = selection.endDrag();
+            if (matrix.isIdentity()) {
+                selection.dropPreview();
+                invalidate();
+                return;
+            }
+            // The preview stays up until the transform is done.
+            action = new TransformAction(selection.getStrokes(), matrix);
+        } else if (dragTool == Tool.SELECT) {
+            buffer.undoAction(this);
+            buffer = null;
+            selection = Selection.fromLasso(layer, currentPoints);
+            invalidate();
+            // Nothing keeps the lasso, so its path and points are reused for the next drag.
+            currentPath.reset();
+            currentPoints.clear();
+            return;
+        } else {
+            buffer.undoAction(this);
+
+            // Clear buffer before notifying listeners so the stroke is committed as a regular stroke.
+            AbstractReversibleViewAction stroke = buffer;
+            buffer = null;
+            liveOutline = null;
 
-        Log.i(LOG_TAG, "Stroke completed, triggering " + listeners.size() + " listener" + (listeners.size() == 1 ? "" : "s"));
+            if (dragTool == Tool.ERASER) {
+                action = erase();
+                // The eraser action keeps the points, but the sweep's path was only for showing it.
+                currentPath.reset();
+            } else {
+                if (stroke instanceof StrokeAction) {
+                    // Keep showing the stroke until a listener does its action, which may be a while later.
+                    pendingStrokes.add((StrokeAction) stroke);
+                }
+                action = stroke;
+                // Very important; stroke has a reference to currentPath and currentPoints. If we
+                // don't reinitialize, every stroke will share the same path.
+                currentPath = pool.obtainPath();
+            }
+            currentPoints = pool.obtainPoints();
+        }
+
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Stroke completed, triggering " + listeners.size() + " listener"
+                    + (listeners.size() == 1 ? "" : "s"));
+        }
         for (OnStrokeCompletedListener l : listeners) {
-            l.onStrokeCompleted(buffer);
+            l.onStrokeCompleted(action);
         }
+    }
 
-        // Very important; buffer has a reference to currentPath. If we don't reinitialize, every
-        // buffer will share the same path.
-        currentPath = new Path();
-        buffer = null;
+    /**
+     * Turns a finished eraser drag, in currentPoints, into an action erasing the strokes it touched.
+     *
+     * @return Action erasing along the drag.
+     */
+    private EraseAction erase() {
+        // Only strokes whose bounds overlap a segment of the drag, grown by the radius, can be
+        // touched. Querying segment by segment keeps a long diagonal drag from collecting every
+        // stroke in its bounding box.
+        float[] coords = currentPoints.getCoords();
+        int size = currentPoints.size();
+        RectF segment = new RectF();
+        Map<StrokeAction, Boolean> found = new IdentityHashMap<>();
+        List<StrokeAction> candidates = new ArrayList<>();
+        // A single point is a segment from itself to itself.
+        for (int i = Math.min(1, size - 1); i < size; i++) {
+            int from = Math.max(0, i - 1) * 2, to = i * 2;
+            segment.set(Math.min(coords[from], coords[to]), Math.min(coords[from + 1], coords[to + 1]),
+                    Math.max(coords[from], coords[to]), Math.max(coords[from + 1], coords[to + 1]));
+            segment.inset(-eraserRadius, -eraserRadius);
+            layer.query(segment, found, candidates);
+        }
+        return new EraseAction(currentPoints, eraserRadius, candidates);
+    }
+
+    /**
+     * Makes an action filling the area around a point, from a snapshot of what is drawn now.
+     * Fills are painted into the raster layer, which covers the document from its origin to the
+     * size of the view; a point outside that area fills nothing. Only the painted pixels are copied
+     * here; the action renders the drawing when it is prepared, off the UI thread.
+     *
+     * @param x Column to fill from, in the document.
+     * @param y Row to fill from, in the document.
+     * @return Action filling the area.
+     */
+    private FillAction fill(int x, int y) {
+        int width = Math.max(1, getWidth()), height = Math.max(1, getHeight());
+        List<StrokeAction> committed = layer.getStrokes();
+        List<StrokeAction> strokes = new ArrayList<>(committed.size() + pendingStrokes.size());
+        for (int i = 0; i < committed.size(); i++) {
+            strokes.add(committed.get(i).snapshot());
+        }
+        for (int i = 0; i < pendingStrokes.size(); i++) {
+            strokes.add(pendingStrokes.get(i).snapshot());
+        }
+        return new FillAction(raster.copy(), strokes, width, height, x, y, currentPaint.getColor());
     }
 
     /**
      * Triggered when drawing is cancelled. Trashes the current buffer and ignores callbacks.
      */
     protected void onDrawCancel() {
+        if (selection != null && selection.isDragging()) {
+            selection.dropPreview();
+            invalidate();
+        }
         if (buffer != null) {
             buffer.undoAction(this);
         }
         buffer = null;
+        liveOutline = null;
 
         currentPath.reset();
+        currentPoints.clear();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        layer.setOnInvalidated(invalidateCallback);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        layer.removeOnInvalidated(invalidateCallback);
+    }
+
+    /**
+     * Draws the committed strokes from the layer's cache, then the stroke being drawn on top.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (timelinePreview != null) {
+            timelinePreviewBounds.set(0, 0, getWidth(), getHeight());
+            canvas.drawBitmap(timelinePreview, null, timelinePreviewBounds, timelinePreviewPaint);
+            return;
+        }
+
+        if (selection != null && selection.isPreviewing()) {
+            drawFills(canvas);
+            selection.drawPreview(canvas);
+        } else {
+            drawDrawing(canvas);
+        }
+        canvas.save();
+        canvas.concat(viewport);
+        if (liveOutline != null && buffer != null) {
+            canvas.drawPath(liveOutline.getPath(), liveFillPaint);
+        } else if (buffer instanceof StrokeAction) {
+            StrokeAction stroke = (StrokeAction) buffer;
+            canvas.drawPath(stroke.getPath(), stroke.getPaint());
+        }
+        canvas.restore();
+        if (selection != null) {
+            selection.drawOutline(canvas, viewport);
+        }
+    }
+
+    /**
+     * Draws the fills, the committed strokes in view and the strokes waiting to be committed.
+     */
+    private void drawDrawing(Canvas canvas) {
+        drawFills(canvas);
+        layer.draw(canvas, getWidth(), getHeight(), viewport, state == DrawingModel.NAVIGATING);
+        canvas.save();
+        canvas.concat(viewport);
+        for (int i = 0; i < pendingStrokes.size(); i++) {
+            pendingStrokes.get(i).draw(canvas, zoom);
+        }
+        canvas.restore();
+    }
+
+    /**
+     * Draws the fills and committed strokes as this view shows them, for a picture of the drawing
+     * as it is now. Nothing is rendered again for it, so it's as quick as a frame.
+     *
+     * @param canvas    Canvas the size of this view, or scaled to it.
+     */
+    void drawSnapshot(Canvas canvas) {
+        drawFills(canvas);
+        layer.draw(canvas, getWidth(), getHeight(), viewport, true);
+    }
+
+    /**
+     * Shows a picture, such as an earlier step of the history, stretched over the view in place
+     * of the drawing. Touches are ignored meanwhile.
+     *
+     * @param preview   Picture to show, or null to show the drawing again.
+     */
+    void showTimelinePreview(Bitmap preview) {
+        timelinePreview = preview;
+        invalidate();
+    }
+
+    private void drawFills(Canvas canvas) {
+        canvas.save();
+        canvas.concat(viewport);
+        raster.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * Paints spans of pixels beneath the strokes. Called by FillAction.
+     *
+     * @param spans Spans as (y, left, right) triples, right inclusive.
+     * @param color Color to paint.
+     * @return Delta restoring the pixels painted over.
+     */
+    public TileDelta paintSpans(int[] spans, int color) {
+        raster.ensureSize(getWidth(), getHeight());
+        TileDelta delta = TileDelta.paint(raster, spans, color);
+        invalidate();
+        return delta;
+    }
+
+    /**
+     * Undoes paintSpans. Called by FillAction.
+     *
+     * @param delta Delta paintSpans returned.
+     */
+    public void restorePixels(TileDelta delta) {
+        delta.restore(raster);
+        invalidate();
+    }
+
+    /**
+     * Moves strokes by an affine transform. Called by TransformAction.
+     *
+     * @param strokes   Strokes to transform, all rendered.
+     * @param matrix    Transform to apply.
+     */
+    public void transformStrokes(List<StrokeAction> strokes, Matrix matrix) {
+        layer.transform(strokes, matrix);
+        if (selection != null) {
+            selection.onTransformed();
+        }
+        invalidate();
+    }
+
+    /**
+     * Puts strokes back to the geometry of earlier snapshots. Called by TransformAction.
+     *
+     * @param strokes   Strokes to change, all rendered.
+     * @param snapshots For each stroke, a snapshot of it with the geometry to put back.
+     */
+    public void restoreStrokeGeometry(List<StrokeAction> strokes, List<StrokeAction> snapshots) {
+        layer.restoreGeometry(strokes, snapshots);
+        if (selection != null) {
+            selection.onTransformed();
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes the selection, if any.
+     */
+    public void clearSelection() {
+        if (selection != null) {
+            selection.dropPreview();
+            selection = null;
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the selection if it holds a stroke which is going away.
+     */
+    private void deselect(StrokeAction stroke) {
+        if (selection != null && selection.contains(stroke)) {
+            clearSelection();
+        }
+    }
+
+    /**
+     * Renders a stroke on top of all others. Called by StrokeAction.
+     *
+     * @param stroke    Stroke being rendered.
+     */
+    public void addStroke(StrokeAction stroke) {
+        // The stroke being drawn isn't committed yet, so it isn't part of the drawing.
+        if (stroke == buffer) {
+            invalidate();
+        } else {
+            if (pendingStrokes.remove(stroke)) {
+                invalidate();
+            }
+            layer.add(stroke);
+        }
+    }
+
+    /**
+     * Stops showing a completed stroke whose action won't be done, such as one cancelled or
+     * failed while being prepared.
+     *
+     * @param action    Action of the completed stroke.
+     */
+    public void dropPending(AbstractAction action) {
+        if (pendingStrokes.remove(action)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Stops rendering a stroke. Called by StrokeAction.
+     *
+     * @param stroke    Stroke being removed.
+     * @return True if the stroke was being rendered, false otherwise.
+     */
+    public boolean removeStroke(StrokeAction stroke) {
+        if (stroke == buffer) {
+            invalidate();
+            return true;
+        }
+        deselect(stroke);
+        return layer.remove(stroke) >= 0;
+    }
+
+    /**
+     * Replaces rendered strokes with others, each drawn in the place of the one it replaces.
+     * Called by EraseAction.
+     *
+     * @param strokes   Strokes being replaced.
+     * @param replacements  For each stroke, the strokes to draw in its place, in order. May be empty.
+     * @param indices   Receives the position each stroke was drawn at, or -1 if it wasn't being
+     *                  rendered.
+     */
+    public void replaceStrokes(List<StrokeAction> strokes, List<List<StrokeAction>> replacements,
+                               int[] indices) {
+        for (int i = 0; i < strokes.size(); i++) {
+            deselect(strokes.get(i));
+        }
+        layer.replace(strokes, replacements, indices);
+    }
+
+    /**
+     * Undoes replaceStrokes. Called by EraseAction.
+     *
+     * @param strokes   Original strokes.
+     * @param replacements  Strokes drawn in place of the originals.
+     * @param indices   Positions replaceStrokes returned.
+     */
+    public void restoreStrokes(List<StrokeAction> strokes, List<List<StrokeAction>> replacements,
+                               int[] indices) {
+        layer.restore(strokes, replacements, indices);
+    }
+
+    /**
+     * Removes every stroke, without undoing them.
+     */
+    public void clearStrokes() {
+        clearSelection();
+        layer.clear();
+    }
+
+    /**
+     * Removes every fill, without undoing them.
+     */
+    public void clearFills() {
+        raster.clear();
+        invalidate();
+    }
+
+    /**
+     * @return Committed strokes currently rendered, in the order they are drawn. Not a copy.
+     */
+    public List<StrokeAction> getStrokes() {
+        return layer.getStrokes();
+    }
+
+    /**
+     * @return Layer holding the committed strokes and their rendered cache.
+     */
+    public StrokeLayer getStrokeLayer() {
+        return layer;
+    }
+
+    /**
+     * Shows a layer taken from another DrawingView (such as the one in an activity recreated for a
+     * configuration change) in place of this view's strokes. Nothing is re-rendered unless this
+     * view's size differs.
+     *
+     * @param layer Layer to show.
+     */
+    public void setStrokeLayer(StrokeLayer layer) {
+        if (layer == null) {
+            throw new IllegalArgumentException("Null stroke layer");
+        }
+        clearSelection();
+        this.layer.removeOnInvalidated(invalidateCallback);
+        this.layer = layer;
+        if (isAttachedToWindow()) {
+            layer.setOnInvalidated(invalidateCallback);
+        }
+        invalidate();
+    }
+
+    /**
+     * @return Layer holding the pixels painted by fills.
+     */
+    public RasterLayer getRasterLayer() {
+        return raster;
+    }
+
+    /**
+     * Shows a raster layer taken from another DrawingView in place of this view's fills.
+     *
+     * @param raster    Layer to show.
+     */
+    public void setRasterLayer(RasterLayer raster) {
+        if (raster == null) {
+            throw new IllegalArgumentException("Null raster layer");
+        }
+        this.raster = raster;
+        invalidate();
     }
 
     //region Getters & Setters
@@ -242,5 +983,143 @@ public class DrawingView extends FrameLayout {
     public void setCurrentPaint(Paint paint) {
         currentPaint = paint;
     }
+
+    public Tool getTool() {
+        return tool;
+    }
+
+    /**
+     * Sets what dragging does. Takes effect from the next drag.
+     *
+     * @param tool  Tool to use.
+     * @throws IllegalArgumentException if tool is null.
+     */
+    public void setTool(Tool tool) {
+        if (tool == null) {
+            throw new IllegalArgumentException("Null tool");
+        }
+        this.tool = tool;
+        if (tool != Tool.SELECT) {
+            clearSelection();
+        }
+    }
+
+    /**
+     * @return Current zoom, as the scale from the document to the view.
+     */
+    public float getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Gets the transform from the document to the view.
+     *
+     * @param out   Matrix to receive the transform.
+     */
+    public void getViewport(Matrix out) {
+        out.set(viewport);
+    }
+
+    /**
+     * Pans and zooms back to the document's origin at full size.
+     */
+    public void resetViewport() {
+        viewport.reset();
+        onViewportChanged();
+    }
+
+    public float getEraserRadius() {
+        return eraserRadius;
+    }
+
+    /**
+     * Sets the distance from the eraser path within which ink is erased.
+     *
+     * @param radius    Radius in document pixels.
+     * @throws IllegalArgumentException if radius is not positive.
+     */
+    public void setEraserRadius(float radius) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("Eraser radius must be positive");
+        }
+        eraserRadius = radius;
+        eraserPaint.setStrokeWidth(radius * 2);
+    }
+
+    /**
+     * @return True if pen strokes vary in width with pressure and speed.
+     */
+    public boolean isVariableWidth() {
+        return variableWidth;
+    }
+
+    /**
+     * Sets whether pen strokes vary in width with pressure and speed, from the next stroke on.
+     *
+     * @param variableWidth True for variable width, false for the paint's width throughout.
+     */
+    public void setVariableWidth(boolean variableWidth) {
+        this.variableWidth = variableWidth;
+    }
+
+    /**
+     * Takes back the path and points of a stroke which is gone for good, such as one the history
+     * forgot while it was undone, to be reused by later strokes. They are only reused once any
+     * background rendering that might still draw the stroke has finished.
+     *
+     * @param stroke    Stroke which is not rendered and will never be done again.
+     */
+    public void recycleStroke(StrokeAction stroke) {
+        StrokeLayer.runAfterRendering(() -> {
+            pool.recycle(stroke.getPath());
+            pool.recycle(stroke.getPoints());
+        });
+    }
+
+    /**
+     * @return Number of paths, point buffers and paints reused rather than created for strokes.
+     */
+    public long getReusedObjectCount() {
+        return pool.getReusedCount();
+    }
+
+    /**
+     * @return Number of paths, point buffers and paints created for strokes.
+     */
+    public long getCreatedObjectCount() {
+        return pool.getCreatedCount();
+    }
+
+    /**
+     * @return True if the given tool's touch samples are smoothed.
+     */
+    public boolean isSmoothing(Tool tool) {
+        return smoothedTools.contains(tool);
+    }
+
+    /**
+     * Sets whether a tool's touch samples are smoothed to remove jitter, from its next drag on.
+     * The pen and the lasso are smoothed by default; the eraser isn't, so it erases exactly where
+     * it's dragged.
+     *
+     * @param tool      Tool to change.
+     * @param smoothing True to smooth, false to use the samples as they are.
+     */
+    public void setSmoothing(Tool tool, boolean smoothing) {
+        if (smoothing) {
+            smoothedTools.add(tool);
+        } else {
+            smoothedTools.remove(tool);
+        }
+    }
+
+    /**
+     * Records every touch event reaching this view with the given recorder.
+     *
+     * @param recorder  Recorder, or null to stop recording.
+     */
+    public void setTouchRecorder(TouchRecorder recorder) {
+        this.recorder = recorder;
+    }
     //endregion
 }
\ No newline at end of file
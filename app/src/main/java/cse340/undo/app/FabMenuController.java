@@ -0,0 +1,195 @@
+package cse340.undo.app;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.R;
+
+/**
+ * Controls the collapsible FAB menus of a drawing activity. Every view and tint list is resolved
+ * once, when a menu is registered, so opening, closing and enabling menus never searches the view
+ * tree. At most one menu is open at a time; while it is open every other menu and the always-on
+ * buttons (such as undo and redo) are disabled.
+ */
+class FabMenuController {
+    /**
+     * A single collapsible menu: the FAB which toggles it, the item FABs which fan out while it is
+     * open, and an optional panel which is shown while it is open.
+     */
+    static final class Menu {
+        private final View toggle;
+        private View[] items;
+        private Runnable[] makeClickable;
+        private View panel;
+        private boolean open;
+
+        private Menu(View toggle) {
+            this.toggle = toggle;
+            setItems(new View[0]);
+        }
+
+        private void setItems(View[] items) {
+            this.items = items;
+            makeClickable = new Runnable[items.length];
+            for (int i = 0; i < items.length; i++) {
+                View item = items[i];
+                makeClickable[i] = () -> item.setClickable(true);
+            }
+        }
+
+        /**
+         * @return True if this menu is currently open.
+         */
+        boolean isOpen() {
+            return open;
+        }
+    }
+
+    /** All registered menus, in registration order. */
+    private final List<Menu> menus = new ArrayList<>();
+
+    /** Buttons which are not part of a menu but are disabled while any menu is open. */
+    private final View[] buttons;
+
+    /** Background tints for enabled and disabled FABs. */
+    private final ColorStateList enabledTint, disabledTint;
+
+    /** Size of a mini FAB, used to space out menu items. */
+    private final int miniFabSize;
+
+    /** Menu which is currently open, or null if all are closed. */
+    @Nullable
+    private Menu openMenu;
+
+    /**
+     * Creates a controller with no menus.
+     *
+     * @param context     Context used to resolve the tint colors.
+     * @param miniFabSize Size of a mini FAB, in pixels.
+     * @param buttons     Buttons to disable while any menu is open.
+     */
+    FabMenuController(Context context, int miniFabSize, View... buttons) {
+        this.miniFabSize = miniFabSize;
+        this.buttons = buttons;
+        enabledTint = ColorStateList.valueOf(ContextCompat.getColor(context, R.color.colorAccent));
+        disabledTint = ColorStateList.valueOf(Color.LTGRAY);
+    }
+
+    /**
+     * Registers a menu.
+     *
+     * @param toggle FAB which opens and closes the menu.
+     * @param items  Item FABs of the menu, in the order they fan out.
+     * @return Handle used to refer to the menu.
+     */
+    Menu addMenu(@NonNull View toggle, View... items) {
+        Menu menu = new Menu(toggle);
+        menu.setItems(items);
+        menus.add(menu);
+        return menu;
+    }
+
+    /**
+     * Replaces the items of a menu, for menus whose items are inflated lazily.
+     */
+    void setItems(@NonNull Menu menu, View... items) {
+        menu.setItems(items);
+    }
+
+    /**
+     * Sets a view to be shown while the menu is open, and hidden otherwise.
+     */
+    void setPanel(@NonNull Menu menu, @Nullable View panel) {
+        menu.panel = panel;
+    }
+
+    /**
+     * Opens the menu if it is closed, or closes it if it is open.
+     *
+     * @return True if the menu is now open, false otherwise.
+     */
+    boolean toggle(@NonNull Menu menu) {
+        if (menu.open) {
+            close();
+        } else {
+            open(menu);
+        }
+        return menu.open;
+    }
+
+    /**
+     * Closes whichever menu is open, if any.
+     *
+     * @return True if a menu was closed, false if none was open.
+     */
+    boolean close() {
+        Menu menu = openMenu;
+        if (menu == null) {
+            return false;
+        }
+
+        menu.open = false;
+        openMenu = null;
+
+        for (View item : menu.items) {
+            item.setClickable(false);
+            item.animate().translationY(0).alpha(0);
+        }
+        if (menu.panel != null) {
+            menu.panel.setVisibility(View.GONE);
+        }
+        setOthersEnabled(menu, true);
+        return true;
+    }
+
+    /**
+     * Opens the menu, closing any other open menu first.
+     */
+    private void open(Menu menu) {
+        close();
+        menu.open = true;
+        openMenu = menu;
+
+        setOthersEnabled(menu, false);
+        for (int i = 0; i < menu.items.length; i++) {
+            menu.items[i].animate()
+                    .translationY(-3 * miniFabSize * (i + 1.5f) / 2.5f)
+                    .alpha(1)
+                    .withEndAction(menu.makeClickable[i]);
+        }
+        if (menu.panel != null) {
+            menu.panel.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Enables or disables every menu except the given one, along with the always-on buttons.
+     */
+    private void setOthersEnabled(Menu except, boolean enabled) {
+        for (View button : buttons) {
+            setFabEnabled(button, enabled);
+        }
+        for (Menu menu : menus) {
+            if (menu == except) {
+                continue;
+            }
+            setFabEnabled(menu.toggle, enabled);
+            for (View item : menu.items) {
+                item.setEnabled(enabled);
+            }
+        }
+    }
+
+    private void setFabEnabled(View fab, boolean enabled) {
+        fab.setEnabled(enabled);
+        fab.setBackgroundTintList(enabled ? enabledTint : disabledTint);
+    }
+}
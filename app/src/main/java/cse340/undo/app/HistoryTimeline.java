@@ -0,0 +1,347 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeShapeAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.changeThicknessAction2;
+import cse340.undo.history.AbstractStackHistory;
+import cse340.undo.history.KeyframeIndex;
+
+/**
+ * Shows the drawing at any step of its history, fast enough to follow a slider being dragged.
+ * Step n is the drawing after the first n actions in the history, so step 0 is the drawing before
+ * any of them and the last step is the drawing with every redoable action done again.
+ *
+ * As actions are done, pictures of the drawing are kept as keyframes, at half the view's size.
+ * A step is shown by copying the nearest keyframe at or before it and drawing the strokes done
+ * after it; moving forward from the step shown only draws the strokes in between. Strokes are
+ * drawn as they were when done, since a later transform moves the stroke itself. Where the
+ * keyframes are kept is left to a KeyframeIndex, from the number of points each stroke draws.
+ * Erasing, filling and transforming change what is already drawn, so they can't be drawn over a
+ * keyframe; a keyframe is always kept right after them instead.
+ *
+ * Keyframes are only made from the drawing as it is on screen, when an action is done or redone,
+ * so steps from before the timeline was created can't be shown. Must only be used from the UI
+ * thread.
+ */
+final class HistoryTimeline {
+    private static final String LOG_TAG = "HistoryTimeline";
+
+    /** Scale of keyframes and the preview from the view. */
+    private static final float SCALE = 0.5f;
+
+    /** Replay cost after which another keyframe is kept, in points drawn. */
+    private static final long REPLAY_BUDGET = 4096;
+
+    /** Replay cost of a stroke besides its points, in points. */
+    private static final long STROKE_COST = 16;
+
+    /** Memory keyframes may take, in bytes. */
+    private static final long KEYFRAME_BUDGET = 24L << 20;
+
+    /** Keyframes are opaque, so they take 16 bits per pixel; the drawing is shown on white. */
+    private static final int BACKGROUND = Color.WHITE;
+
+    private static final Paint FRAME_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /** Picture of the drawing at a step, and the viewport it was drawn through. */
+    private static final class Frame {
+        final Bitmap bitmap;
+        final Matrix viewport;
+
+        Frame(Bitmap bitmap, Matrix viewport) {
+            this.bitmap = bitmap;
+            this.viewport = viewport;
+        }
+    }
+
+    private final AbstractStackHistory history;
+    private final KeyframeIndex<Frame> keyframes = new KeyframeIndex<>(REPLAY_BUDGET, KEYFRAME_BUDGET);
+
+    /** Snapshot of the stroke drawn by each recorded step which draws one, by step. */
+    private final LongSparseArray<StrokeAction> strokes = new LongSparseArray<>();
+
+    private DrawingView view;
+
+    /** Picture of the step being shown, or null if none is. */
+    private Bitmap preview;
+    private Canvas previewCanvas;
+    private long previewStep = -1;
+
+    /** Scratch matrices for drawing keyframes and strokes into the preview. */
+    private final Matrix viewport = new Matrix(), frameMatrix = new Matrix();
+
+    /**
+     * @param view      View showing the drawing.
+     * @param history   History of the drawing, which may already hold actions.
+     */
+    HistoryTimeline(DrawingView view, AbstractStackHistory history) {
+        this.view = view;
+        this.history = history;
+        keyframes.setDropListener(frame -> frame.bitmap.recycle());
+        keyframes.reset(history.getCurrentStep());
+    }
+
+    /**
+     * Shows the timeline in another view, such as that of an activity recreated for a
+     * configuration change. The keyframes are kept.
+     */
+    void setView(DrawingView view) {
+        endPreview();
+        this.view = view;
+    }
+
+    /**
+     * Called before an action is done, so the drawing before it can be kept if nothing else
+     * shows it.
+     */
+    void beforeAction() {
+        if (keyframes.floor(history.getCurrentStep()) == null) {
+            capture();
+        }
+    }
+
+    /**
+     * Called after an action has been done and added to the history.
+     */
+    void onActionDone(AbstractReversibleAction action) {
+        endPreview();
+        long step = history.getCurrentStep();
+        keyframes.record(step, replayCost(action), isBarrier(action));
+        recordStroke(step, action);
+        forgetBefore(getFirstStep());
+        captureIfNeeded();
+    }
+
+    /**
+     * Called after an action has been undone.
+     */
+    void onUndone() {
+        endPreview();
+    }
+
+    /**
+     * Called after an action has been redone.
+     */
+    void onRedone(AbstractReversibleAction action) {
+        endPreview();
+        long step = history.getCurrentStep();
+        if (!keyframes.isRecorded(step)) {
+            keyframes.record(step, replayCost(action), isBarrier(action));
+            recordStroke(step, action);
+        }
+        captureIfNeeded();
+    }
+
+    /**
+     * Called after the history was cleared. Only the drawing as it is now can be shown.
+     */
+    void onCleared() {
+        endPreview();
+        keyframes.reset(history.getCurrentStep());
+        strokes.clear();
+    }
+
+    /**
+     * Called after the history forgot actions to free memory.
+     */
+    void onHistoryDropped() {
+        endPreview();
+        forgetBefore(getFirstStep());
+    }
+
+    /**
+     * Drops every keyframe. Later actions make new ones, but earlier steps can't be shown again.
+     *
+     * @return Memory freed, in bytes.
+     */
+    long releaseKeyframes() {
+        endPreview();
+        return keyframes.dropKeyframes();
+    }
+
+    /**
+     * @return Number of steps after the first, which is the number of actions in the history.
+     */
+    int getStepCount() {
+        return history.undoSize() + history.redoSize();
+    }
+
+    /**
+     * @return Step the drawing is at, from 0 to getStepCount().
+     */
+    int getPosition() {
+        return history.undoSize();
+    }
+
+    /**
+     * Shows the drawing at a step in place of the drawing as it is now, until endPreview.
+     *
+     * @param position  Step to show, from 0 to getStepCount().
+     * @return True if the step was shown, false if there is no keyframe to show it from.
+     */
+    boolean showStep(int position) {
+        long target = getFirstStep() + position;
+        if (!keyframes.isRecorded(target)) {
+            return false;
+        }
+        KeyframeIndex.Keyframe<Frame> keyframe = keyframes.floor(target);
+        if (keyframe == null || !keyframes.canReplay(keyframe.step, target)) {
+            return false;
+        }
+        if (preview == null) {
+            preview = createFrameBitmap();
+            if (preview == null) {
+                return false;
+            }
+            previewCanvas = new Canvas(preview);
+        }
+
+        // Going forward from the step shown only needs the strokes in between.
+        if (previewStep < keyframe.step || previewStep > target) {
+            drawFrame(keyframe.frame);
+            previewStep = keyframe.step;
+        }
+        view.getViewport(viewport);
+        viewport.postScale(SCALE, SCALE);
+        previewCanvas.save();
+        previewCanvas.concat(viewport);
+        float zoom = viewport.mapRadius(1);
+        for (long s = previewStep + 1; s <= target; s++) {
+            StrokeAction stroke = strokes.get(s);
+            if (stroke != null) {
+                stroke.draw(previewCanvas, zoom);
+            }
+        }
+        previewCanvas.restore();
+        previewStep = target;
+        view.showTimelinePreview(preview);
+        return true;
+    }
+
+    /**
+     * Shows the drawing as it is now again.
+     */
+    void endPreview() {
+        if (preview != null) {
+            view.showTimelinePreview(null);
+            preview.recycle();
+            preview = null;
+            previewCanvas = null;
+            previewStep = -1;
+        }
+    }
+
+    /**
+     * @return Step before the oldest action in the history.
+     */
+    private long getFirstStep() {
+        return history.getFirstStep() - 1;
+    }
+
+    /**
+     * Keeps a snapshot of the stroke an action leading to a step draws, in place of whatever a
+     * replaced future recorded from that step on.
+     */
+    private void recordStroke(long step, AbstractReversibleAction action) {
+        for (int i = strokes.size() - 1; i >= 0 && strokes.keyAt(i) >= step; i--) {
+            strokes.removeAt(i);
+        }
+        if (action instanceof StrokeAction) {
+            strokes.put(step, ((StrokeAction) action).snapshot());
+        }
+    }
+
+    /**
+     * Forgets the steps before a step, keeping the strokes drawn after the keyframe it would be
+     * shown from.
+     */
+    private void forgetBefore(long step) {
+        keyframes.forgetBefore(step);
+        KeyframeIndex.Keyframe<Frame> keyframe = keyframes.floor(step);
+        long kept = keyframe == null ? step : keyframe.step;
+        while (strokes.size() > 0 && strokes.keyAt(0) <= kept) {
+            strokes.removeAt(0);
+        }
+    }
+
+    private void captureIfNeeded() {
+        if (keyframes.needsKeyframe(history.getCurrentStep())) {
+            capture();
+        }
+    }
+
+    /**
+     * Keeps a picture of the drawing as it is now as the keyframe of the current step.
+     */
+    private void capture() {
+        Bitmap bitmap = createFrameBitmap();
+        if (bitmap == null) {
+            // Not laid out yet, so there is nothing to take a picture of.
+            return;
+        }
+        long step = history.getCurrentStep();
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(BACKGROUND);
+        canvas.scale(SCALE, SCALE);
+        view.drawSnapshot(canvas);
+        Matrix frameViewport = new Matrix();
+        view.getViewport(frameViewport);
+        keyframes.put(step, new Frame(bitmap, frameViewport), bitmap.getAllocationByteCount());
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Kept keyframe of step " + step + "; " + keyframes);
+        }
+    }
+
+    /**
+     * Copies a keyframe into the preview. A keyframe drawn through another viewport is moved to
+     * where its strokes are now seen.
+     */
+    private void drawFrame(Frame frame) {
+        previewCanvas.drawColor(BACKGROUND);
+        view.getViewport(viewport);
+        frame.viewport.invert(frameMatrix);
+        frameMatrix.preScale(1 / SCALE, 1 / SCALE);
+        frameMatrix.postConcat(viewport);
+        frameMatrix.postScale(SCALE, SCALE);
+        previewCanvas.drawBitmap(frame.bitmap, frameMatrix, FRAME_PAINT);
+    }
+
+    /**
+     * @return New bitmap for a keyframe or the preview, or null if the view has no size yet.
+     */
+    private Bitmap createFrameBitmap() {
+        int width = Math.round(view.getWidth() * SCALE), height = Math.round(view.getHeight() * SCALE);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * @return Cost of drawing an action over a keyframe, in points.
+     */
+    private static long replayCost(AbstractReversibleAction action) {
+        return action instanceof StrokeAction ? STROKE_COST + ((StrokeAction) action).getPoints().size() : 0;
+    }
+
+    /**
+     * @return True if an action changes the drawing other than by drawing on top of it. Actions
+     *         which only change the paint draw nothing.
+     */
+    private static boolean isBarrier(AbstractReversibleAction action) {
+        return !(action instanceof StrokeAction || action instanceof ChangeColorAction
+                || action instanceof ChangeThicknessAction || action instanceof ChangeShapeAction
+                || action instanceof changeThicknessAction2);
+    }
+}
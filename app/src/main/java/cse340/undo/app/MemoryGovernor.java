@@ -0,0 +1,147 @@
+package cse340.undo.app;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.EraseAction;
+import cse340.undo.actions.FillAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.history.AbstractStackHistory;
+
+/**
+ * Frees memory held by the drawing when the system asks, in steps that grow with the pressure.
+ * Caches, which can be rebuilt, always go before any history, which can't:
+ *
+ * <ol>
+ * <li>When memory runs low, the history timeline's keyframes are dropped, so only steps done
+ *     after this can be shown; when it is critical, the cached outlines of variable-width strokes
+ *     and the paths drawn when zoomed out are dropped too.</li>
+ * <li>Once the drawing is hidden, the stroke layer's rendered cache is dropped, and rebuilt when
+ *     the drawing is shown again.</li>
+ * <li>Only while the drawing is hidden, and memory is low, actions which can be redone are
+ *     forgotten, and the oldest half of the undoable ones; when memory is critical, all but the
+ *     most recent undoable action.</li>
+ * </ol>
+ *
+ * History is never forgotten while the drawing is shown, even when memory is critical, since the
+ * user may be undoing at that moment. The trade-off is that a visible drawing with a large
+ * history only gives back its caches, so the system may have to kill other apps first. The
+ * history could instead be flattened into fewer, larger actions, but no action can merge with
+ * another yet.
+ *
+ * Forgotten actions stay drawn, only they can no longer be undone, so the drawing never changes.
+ * Each step is logged with the memory it freed, which for everything but the cache is an
+ * estimate. Must only be used from the UI thread.
+ */
+final class MemoryGovernor {
+    private static final String LOG_TAG = "MemoryGovernor";
+
+    /** Undoable actions kept when memory is critical. */
+    private static final int CRITICAL_HISTORY_SIZE = 1;
+
+    private final DrawingView view;
+    private final AbstractStackHistory history;
+    private final HistoryTimeline timeline;
+
+    /** Run after actions have been forgotten, so the owner can refresh what depends on them. */
+    private final Runnable onHistoryDropped;
+
+    /**
+     * @param view      View showing the drawing.
+     * @param history   History of the drawing.
+     * @param timeline  Timeline of the history.
+     * @param onHistoryDropped  Run after actions are forgotten.
+     */
+    MemoryGovernor(DrawingView view, AbstractStackHistory history, HistoryTimeline timeline,
+                   Runnable onHistoryDropped) {
+        this.view = view;
+        this.history = history;
+        this.timeline = timeline;
+        this.onHistoryDropped = onHistoryDropped;
+    }
+
+    /**
+     * Frees memory for a trim level from ComponentCallbacks2.
+     *
+     * @param level Trim level passed to onTrimMemory.
+     */
+    void onTrimMemory(int level) {
+        boolean hidden = level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+        boolean critical = level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+        boolean low = critical || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+        Log.i(LOG_TAG, "Trimming memory at level " + level);
+
+        long freed = 0;
+        if (low) {
+            freed += logStep("Released timeline keyframes", timeline.releaseKeyframes());
+        }
+        if (critical) {
+            freed += logStep("Released stroke outlines", view.getStrokeLayer().releaseOutlines());
+        }
+        if (hidden) {
+            freed += logStep("Released stroke cache", view.getStrokeLayer().releaseCache());
+        }
+        if (low && hidden) {
+            int size = history.undoSize() + history.redoSize();
+            freed += logStep("Dropped redo history", dropped(history.dropRedo(), true));
+            int keep = critical ? Math.min(CRITICAL_HISTORY_SIZE, history.undoSize()) : history.undoSize() / 2;
+            freed += logStep("Kept " + keep + " undoable actions", dropped(history.dropOldest(keep), false));
+            if (history.undoSize() + history.redoSize() != size) {
+                onHistoryDropped.run();
+            }
+        }
+        Log.i(LOG_TAG, "Freed about " + freed + " bytes at level " + level);
+    }
+
+    /**
+     * Frees as much as can be freed, as when the whole system is low on memory.
+     */
+    void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * @param undone    True if the actions had been undone, false if they are done.
+     * @return Estimated memory freed by forgetting the actions.
+     */
+    private static long dropped(List<AbstractReversibleAction> actions, boolean undone) {
+        long bytes = 0;
+        for (int i = 0; i < actions.size(); i++) {
+            bytes += retainedBytes(actions.get(i), undone);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the memory an action held only so it could be undone or redone.
+     *
+     * @param undone    True if the action had been undone, false if it is done.
+     */
+    private static long retainedBytes(AbstractReversibleAction action, boolean undone) {
+        if (action instanceof FillAction) {
+            return ((FillAction) action).getUndoByteSize();
+        }
+        if (action instanceof StrokeAction) {
+            // A done stroke is still drawn.
+            return undone ? ((StrokeAction) action).getPoints().getByteSize() : 0;
+        }
+        if (action instanceof EraseAction && !undone) {
+            long bytes = 0;
+            for (StrokeAction erased : ((EraseAction) action).getErasedStrokes()) {
+                bytes += erased.getPoints().getByteSize();
+            }
+            return bytes;
+        }
+        return 0;
+    }
+
+    private static long logStep(String step, long bytes) {
+        Log.i(LOG_TAG, step + ": " + bytes + " bytes");
+        return bytes;
+    }
+}
@@ -0,0 +1,105 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.annotation.Nullable;
+
+import cse340.undo.fill.PixelRaster;
+
+/**
+ * Pixels painted by fills, drawn beneath the strokes. Unlike the cache in StrokeLayer this bitmap
+ * is part of the drawing rather than a copy of it, so it is never released; it is created by the
+ * first fill and only grows when a fill happens in a larger view.
+ *
+ * A RasterLayer holds no reference to any View, so it can be handed to the next DrawingView after
+ * a configuration change. Must only be used from the UI thread.
+ */
+public class RasterLayer implements PixelRaster {
+    /** Painted pixels, or null if nothing has been painted. */
+    @Nullable
+    private Bitmap bitmap;
+
+    /**
+     * Makes sure the layer covers at least the given size, keeping what has been painted.
+     *
+     * @param width     Width in pixels.
+     * @param height    Height in pixels.
+     */
+    void ensureSize(int width, int height) {
+        if (bitmap != null && bitmap.getWidth() >= width && bitmap.getHeight() >= height) {
+            return;
+        }
+        Bitmap grown = Bitmap.createBitmap(Math.max(width, getWidth()), Math.max(height, getHeight()),
+                Bitmap.Config.ARGB_8888);
+        if (bitmap != null) {
+            new Canvas(grown).drawBitmap(bitmap, 0, 0, null);
+            bitmap.recycle();
+        }
+        bitmap = grown;
+    }
+
+    /**
+     * Removes everything painted, freeing the pixels.
+     */
+    void clear() {
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+    }
+
+    /**
+     * Draws the painted pixels, if any.
+     *
+     * @param canvas    Canvas to draw onto.
+     */
+    void draw(Canvas canvas) {
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, 0, 0, null);
+        }
+    }
+
+    /**
+     * @return Copy of the painted pixels, which the caller owns, or null if nothing has been
+     *         painted.
+     */
+    @Nullable
+    Bitmap copy() {
+        return bitmap == null ? null : bitmap.copy(Bitmap.Config.ARGB_8888, false);
+    }
+
+    /**
+     * @return Memory used by the layer's pixels, in bytes.
+     */
+    public long getByteCount() {
+        return bitmap == null ? 0 : bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap == null ? 0 : bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap == null ? 0 : bitmap.getHeight();
+    }
+
+    @Override
+    public void getPixels(int[] out, int x, int y, int width, int height) {
+        checkPainted();
+        bitmap.getPixels(out, 0, width, x, y, width, height);
+    }
+
+    @Override
+    public void setPixels(int[] in, int x, int y, int width, int height) {
+        checkPainted();
+        bitmap.setPixels(in, 0, width, x, y, width, height);
+    }
+
+    private void checkPainted() {
+        if (bitmap == null) {
+            throw new IllegalStateException("Raster layer has no pixels yet");
+        }
+    }
+}
@@ -8,19 +8,26 @@ import android.os.Bundle;
 import android.support.annotation.ColorInt;
 import android.support.annotation.IdRes;
 import android.support.constraint.ConstraintSet;
-import android.util.Log;
-import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewStub;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
 
 import cse340.undo.R;
+import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.ChangeColorAction;
 import cse340.undo.actions.ChangeThicknessAction;
 import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.FillAction;
 
 public class ReversibleDrawingActivity
         extends AbstractReversibleDrawingActivity  {
     private static final int DEFAULT_COLOR = Color.RED;
     private static final int DEFAULT_THICKNESS = 10;
+    /** Color picker, or null until it is first opened. */
     AbstractColorPickerView colorPickerView;
     private int updateColor;
 
@@ -47,15 +54,31 @@ public class ReversibleDrawingActivity
 
 
 
-    /** State variables used to track whether menus are open. */
-    private boolean isThicknessMenuOpen;
-    private boolean isColorWheelOpen;
-    private boolean isColorMenuOpen;
-    private boolean isThicknessMenuOpen2;
+    /** Controller for the collapsible menus, and handles for each of them. */
+    private FabMenuController menus;
+    private FabMenuController.Menu colorMenu, thicknessMenu, thicknessMenu2;
+
+    /** Paint color from before the color wheel started previewing, restored before committing. */
+    @ColorInt
+    private int previewBaseColor;
+    private boolean isPreviewingColor;
+
+    /** Whether a color action was done or undone since the color picker was last updated. */
+    private boolean isPickerColorStale;
 
     @SuppressLint("PrivateResource")
     private int miniFabSize;
 
+    /** Button opening the color picker, whose icon shows the color being previewed. */
+    private ImageView colorFab;
+
+    /** Buttons choosing the eraser, fill and selection tools, and the fill button's label. */
+    private ImageView eraserFab, fillFab, selectFab;
+    private TextView fillStatus;
+
+    /** Fill being prepared, or null if none is. */
+    private FillAction pendingFill;
+
     /**
      * Creates a new AbstractReversibleDrawingActivity with the default history limit.
      */
@@ -84,88 +107,201 @@ public class ReversibleDrawingActivity
         draw.setCurrentPaint(p);
         miniFabSize = getResources().getDimensionPixelSize(R.dimen.design_fab_size_mini);
 
-        // TODO: initialize color picker and register color change listener
-        Log.i("tag", findViewById(R.id.cse340_undo_app_ColorPickerView) + "");
-        colorPickerView = findViewById(R.id.cse340_undo_app_ColorPickerView);
-        colorPickerView.addColorChangeListener(new AbstractColorPickerView.ColorChangeListener() {
-            @Override
-            public void onColorSelected(int color) {
-                colorPickerView.setColor(color);
-                doAction(new ChangeColorAction(color));
-            }
-        });
-
-
         // Add thickness and color menus to the ConstraintLayout. Pass in onColorMenuSelected
         // and onThicknessMenuSelected as the listeners for these menus
         addCollapsableMenu(R.layout.color_menu, ConstraintSet.BOTTOM, ConstraintSet.END, COLOR_MENU_ITEMS, this::onColorMenuSelected);
-        // TODO: you may have to edit this after integrating the color picker
-        findViewById(R.id.fab_color).setOnClickListener((v) -> {
-            if(colorPickerView.getVisibility() == View.VISIBLE) {
-                colorPickerView.setVisibility(View.GONE);
-            } else {
-                isColorWheelOpen = true;
-                colorPickerView.setVisibility(View.VISIBLE);
+        addCollapsableMenu(R.layout.thickness_menu, ConstraintSet.BOTTOM, ConstraintSet.END, THICKNESS_MENU_ITEMS, this::onThicknessMenuSelected);
+        addCollapsableMenu(R.layout.circle_menu, ConstraintSet.BOTTOM, ConstraintSet.END, THICKNESS_MENU_ITEMS2, this::onThicknessMenu2Selected);
+        addMenu(getLayoutInflater().inflate(R.layout.eraser_menu, layout, false), ConstraintSet.TOP, ConstraintSet.END);
+        addMenu(getLayoutInflater().inflate(R.layout.fill_menu, layout, false), ConstraintSet.TOP, ConstraintSet.END);
+        addMenu(getLayoutInflater().inflate(R.layout.select_menu, layout, false), ConstraintSet.TOP, ConstraintSet.END);
+        addMenu(getLayoutInflater().inflate(R.layout.export_menu, layout, false), ConstraintSet.TOP, ConstraintSet.END);
+
+        // Resolve every menu view once; toggling menus afterwards never searches the view tree.
+        menus = new FabMenuController(this, miniFabSize,
+                findViewById(R.id.fab_undo), findViewById(R.id.fab_redo),
+                findViewById(R.id.fab_eraser), findViewById(R.id.fab_fill), findViewById(R.id.fab_select),
+                findViewById(R.id.fab_export));
+        colorMenu = menus.addMenu(findViewById(R.id.fab_color));
+        thicknessMenu = menus.addMenu(findViewById(R.id.fab_thickness), findViews(THICKNESS_MENU_ITEMS));
+        thicknessMenu2 = menus.addMenu(findViewById(R.id.fab_thickness2));
+
+        // The color menu shows the color picker rather than fanning out items.
+        colorFab = findViewById(R.id.fab_color);
+        colorFab.setOnClickListener((v) -> {
+            menus.setPanel(colorMenu, getColorPickerView());
+            menus.toggle(colorMenu);
+        });
+        findViewById(R.id.fab_thickness).setOnClickListener((v) -> menus.toggle(thicknessMenu));
+        findViewById(R.id.fab_thickness2).setOnClickListener((v) -> {
+            if (inflateMenuItems(R.id.thickness_menu2_items_stub, THICKNESS_MENU_ITEMS2, this::onThicknessMenu2Selected)) {
+                menus.setItems(thicknessMenu2, findViews(THICKNESS_MENU_ITEMS2));
             }
-            enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, isColorMenuOpen);
-            enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, isColorMenuOpen);
-
-            isColorMenuOpen = toggleMenu(new int[0], isColorMenuOpen);
+            menus.toggle(thicknessMenu2);
         });
 
-        // Only draw a stroke when none of the collapsible menus are open
-        draw.setOnTouchListener((view, event) -> {
-            if (isThicknessMenuOpen) {
-                isThicknessMenuOpen = toggleMenu(THICKNESS_MENU_ITEMS, isThicknessMenuOpen);
-                enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, !isThicknessMenuOpen);
-                enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, !isThicknessMenuOpen);
-                return true;
-            } else if (isColorMenuOpen) {
-                isColorMenuOpen = toggleMenu(COLOR_MENU_ITEMS, isColorMenuOpen);
-                enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isColorMenuOpen);
-                enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, !isColorMenuOpen);
-                return true;
-            } else if (isColorWheelOpen) {
-                isColorWheelOpen = toggleMenu(COLOR_MENU_ITEMS, isColorWheelOpen);
-                enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isColorWheelOpen);
-                enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, !isColorWheelOpen);
-                colorPickerView.setVisibility(View.GONE);
-                return true;
-            }  else if (isThicknessMenuOpen2) {
-                isThicknessMenuOpen2 = toggleMenu(THICKNESS_MENU_ITEMS2, isThicknessMenuOpen2);
-                enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, !isThicknessMenuOpen2);
-                enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isThicknessMenuOpen2);
-                return true;
+        eraserFab = findViewById(R.id.fab_eraser);
+        fillFab = findViewById(R.id.fab_fill);
+        selectFab = findViewById(R.id.fab_select);
+        fillStatus = findViewById(R.id.fill_status);
+        eraserFab.setOnClickListener((v) -> toggleTool(DrawingView.Tool.ERASER));
+        selectFab.setOnClickListener((v) -> toggleTool(DrawingView.Tool.SELECT));
+        fillFab.setOnClickListener((v) -> {
+            // While a fill is being worked out, the button cancels it instead.
+            if (pendingFill != null) {
+                pendingFill.cancel();
+                onFillFinished();
             } else {
-                return draw.onTouchEvent(event);
-
+                toggleTool(DrawingView.Tool.FILL);
             }
-
         });
 
+        findViewById(R.id.fab_export).setOnClickListener((v) -> exportDrawing());
+
+        // Only draw a stroke when none of the collapsible menus are open
+        draw.setOnTouchListener((view, event) -> menus.close() || draw.onTouchEvent(event));
+
         registerActionListener(this::onAction);
         registerActionUndoListener(this::onActionUndo);
+    }
 
-        addCollapsableMenu(R.layout.thickness_menu, ConstraintSet.BOTTOM, ConstraintSet.END, THICKNESS_MENU_ITEMS, this::onThicknessMenuSelected);
-        findViewById(R.id.fab_thickness).setOnClickListener((v) ->{
-            enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, isThicknessMenuOpen);
-            enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, isThicknessMenuOpen);
-            isThicknessMenuOpen = toggleMenu(THICKNESS_MENU_ITEMS, isThicknessMenuOpen);
-        });
+    /**
+     * Switches between a tool and the pen.
+     *
+     * @param tool  Tool whose button was clicked.
+     */
+    private void toggleTool(DrawingView.Tool tool) {
+        draw.setTool(draw.getTool() == tool ? DrawingView.Tool.PEN : tool);
+        showToolActive(eraserFab, draw.getTool() == DrawingView.Tool.ERASER);
+        showToolActive(fillFab, draw.getTool() == DrawingView.Tool.FILL);
+        showToolActive(selectFab, draw.getTool() == DrawingView.Tool.SELECT);
+    }
 
-        addCollapsableMenu(R.layout.circle_menu, ConstraintSet.BOTTOM, ConstraintSet.END, THICKNESS_MENU_ITEMS2, this::onThicknessMenu2Selected);
-        findViewById(R.id.fab_thickness2).setOnClickListener((v) ->{
-            enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, isThicknessMenuOpen2);
-            enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, isThicknessMenuOpen2);
-            isThicknessMenuOpen2 = toggleMenu(THICKNESS_MENU_ITEMS2, isThicknessMenuOpen2);
-        });
+    /**
+     * Exports the drawing as an SVG image to the app's files on external storage, or its internal
+     * files if there is none, and tells the user where it went.
+     */
+    private void exportDrawing() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File file = new File(directory, "drawing-" + System.currentTimeMillis() + ".svg");
+        exportSvg(file, (written, error) -> Toast.makeText(getApplicationContext(), error == null
+                ? getString(R.string.export_done, written.getPath())
+                : getString(R.string.export_failed, error.getMessage()), Toast.LENGTH_LONG).show());
+    }
 
+    /**
+     * Shows whether a tool is in use by darkening its button's icon. The background tint is left
+     * to the menu controller, which uses it for enabled state.
+     *
+     * @param fab       Button choosing the tool.
+     * @param active    True if the tool is in use.
+     */
+    private static void showToolActive(ImageView fab, boolean active) {
+        fab.setImageTintList(ColorStateList.valueOf(active ? Color.DKGRAY : Color.WHITE));
+    }
+
+    /**
+     * Shows the progress of fills while they are worked out, and lets the fill button cancel them.
+     */
+    @Override
+    protected void onStrokeCompleted(AbstractAction action) {
+        if (action instanceof FillAction) {
+            if (pendingFill != null) {
+                // Only the latest fill can be cancelled from the button.
+                onFillFinished();
+            }
+            FillAction fill = (FillAction) action;
+            pendingFill = fill;
+            long pixels = Math.max(1, (long) draw.getWidth() * draw.getHeight());
+            fill.setProgressListener(filled -> draw.post(() -> {
+                if (pendingFill == fill) {
+                    fillStatus.setText(getString(R.string.fill_progress, (int) (100 * filled / pixels)));
+                }
+            }));
+        }
+        super.onStrokeCompleted(action);
+    }
+
+    @Override
+    protected void onActionDropped(AbstractAction action) {
+        super.onActionDropped(action);
+        if (action == pendingFill) {
+            onFillFinished();
+        }
+    }
 
+    /**
+     * Stops showing the progress of the pending fill.
+     */
+    private void onFillFinished() {
+        pendingFill.setProgressListener(null);
+        pendingFill = null;
+        fillStatus.setText(R.string.fill_label);
+    }
 
+    /**
+     * Looks up each of the given views.
+     *
+     * @param ids IDs of the views to find.
+     * @return The views, in the same order as ids.
+     */
+    private View[] findViews(@IdRes int[] ids) {
+        View[] views = new View[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            views[i] = findViewById(ids[i]);
+        }
+        return views;
+    }
 
+    /**
+     * Returns the color picker, inflating it and registering its listeners on first use.
+     *
+     * @return The color picker.
+     */
+    private AbstractColorPickerView getColorPickerView() {
+        if (colorPickerView != null) {
+            return colorPickerView;
+        }
 
+        ViewStub stub = findViewById(R.id.color_picker_stub);
+        colorPickerView = (AbstractColorPickerView) stub.inflate();
+        colorPickerView.setColor(draw.getCurrentPaint().getColor());
+        colorPickerView.addColorChangeListener(new AbstractColorPickerView.ColorChangeListener() {
+            @Override
+            public void onColorSelected(int color) {
+                colorPickerView.setColor(color);
+                doAction(new ChangeColorAction(color));
+            }
+        });
+        colorPickerView.addColorPreviewListener(new AbstractColorPickerView.ColorPreviewListener() {
+            @Override
+            public void onColorPreview(int color) {
+                Paint paint = draw.getCurrentPaint();
+                if (!isPreviewingColor) {
+                    previewBaseColor = paint.getColor();
+                    isPreviewingColor = true;
+                }
+                paint.setColor(color);
+                // Nothing is drawn with the paint until the next stroke, so show the color on the button.
+                colorFab.setImageTintList(ColorStateList.valueOf(color));
+            }
 
+            @Override
+            public void onColorPreviewEnd() {
+                // Put the paint back so the whole drag is committed as a single ChangeColorAction
+                // which records the color from before the drag as its previous color.
+                if (isPreviewingColor) {
+                    draw.getCurrentPaint().setColor(previewBaseColor);
+                    isPreviewingColor = false;
+                }
+                colorFab.setImageTintList(ColorStateList.valueOf(Color.WHITE));
+            }
+        });
 
+        return colorPickerView;
     }
 
     @Override
@@ -177,16 +313,26 @@ public class ReversibleDrawingActivity
 
     private void onAction(AbstractReversibleAction action) {
         if (action instanceof ChangeColorAction) {
-            @ColorInt int currColor = draw.getCurrentPaint().getColor();
-            // TODO: update the color of the color picker if needed
-            colorPickerView.setColor(currColor);
+            isPickerColorStale = true;
+        } else if (action == pendingFill) {
+            onFillFinished();
         }
     }
 
     private void onActionUndo(AbstractReversibleAction action) {
         if (action instanceof ChangeColorAction) {
+            isPickerColorStale = true;
+        }
+    }
+
+    @Override
+    protected void onHistoryChanged() {
+        super.onHistoryChanged();
+
+        // However many color changes happened this frame, the picker only needs the final color.
+        if (isPickerColorStale && colorPickerView != null) {
+            isPickerColorStale = false;
             @ColorInt int currColor = draw.getCurrentPaint().getColor();
-            // TODO: update the color of the color picker if needed
             colorPickerView.setColor(currColor);
         }
     }
@@ -210,9 +356,7 @@ public class ReversibleDrawingActivity
         }*/
 
         // Close the menu.
-        isColorMenuOpen = toggleMenu(COLOR_MENU_ITEMS, isColorMenuOpen);
-        enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isColorMenuOpen);
-        enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, !isColorMenuOpen);
+        menus.close();
     }
 
     /**
@@ -238,9 +382,7 @@ public class ReversibleDrawingActivity
         }
 
         // Close the menu.
-        isThicknessMenuOpen = toggleMenu(THICKNESS_MENU_ITEMS, isThicknessMenuOpen);
-        enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, !isThicknessMenuOpen);
-        enableCollapsibleMenu(R.id.fab_thickness2, THICKNESS_MENU_ITEMS2, !isColorMenuOpen);
+        menus.close();
     }
 
     private void onThicknessMenu2Selected(View view) {
@@ -257,64 +399,6 @@ public class ReversibleDrawingActivity
         }
 
         // Close the menu.
-        isThicknessMenuOpen2 = toggleMenu(THICKNESS_MENU_ITEMS2, isThicknessMenuOpen2);
-        enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS, !isThicknessMenuOpen2);
-        enableCollapsibleMenu(R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isThicknessMenuOpen2);
-    }
-
-    /**
-     * Toggles a collapsible menu. That is, if it's open, it closes it. If it's closed, it opens it.
-     *
-     * @param items List of IDs of items in the menu, all FABs.
-     * @param open  Current state of the menu.
-     * @return True if the menu is now open, false otherwise.
-     */
-    private boolean toggleMenu(@IdRes int[] items, boolean open) {
-        enableFAB(R.id.fab_undo, open);
-        enableFAB(R.id.fab_redo, open);
-
-        if (!open) {
-            for (int i = 0; i < items.length; i++) {
-                View view = findViewById(items[i]);
-                view.animate()
-                        .translationY(-3 * miniFabSize * (i + 1.5f) / 2.5f)
-                        .alpha(1)
-                        .withEndAction(() -> view.setClickable(true));
-            }
-            return true;
-        } else {
-            for (int item : items) {
-                View view = findViewById(item);
-                view.setClickable(false);
-                view.animate().translationY(0).alpha(0);
-            }
-            return false;
-        }
-    }
-
-    /**
-     * Disables and enables collapsible menu FABs
-     *
-     * @param menuId The resID of the menu activation FAB
-     * @param menuItems An array of resIDs for the menu item FABs
-     * @param enabled true if the menu should be enabled, false if the menu should be disabled
-     */
-    private void enableCollapsibleMenu(@IdRes int menuId, @IdRes int[] menuItems, boolean enabled) {
-        enableFAB(menuId, enabled);
-        for (@IdRes int item : menuItems) {
-            findViewById(item).setEnabled(enabled);
-        }
-    }
-
-    /**
-     * Disables and enables FABs
-     *
-     * @param buttonId the resID of the FAB
-     * @param enabled true if the button should be enabled, false if the button should be disabled
-     */
-    private void enableFAB(@IdRes int buttonId, boolean enabled) {
-        findViewById(buttonId).setEnabled(enabled);
-        findViewById(buttonId).setBackgroundTintList(ColorStateList.valueOf(enabled ?
-                getResources().getColor(R.color.colorAccent) : Color.LTGRAY));
+        menus.close();
     }
 }
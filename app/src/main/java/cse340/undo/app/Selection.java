@@ -0,0 +1,370 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * A group of strokes picked out with the lasso, and the drag moving, scaling or rotating them.
+ * Dragging the body of the selection moves it; dragging the handle at its bottom right corner
+ * scales and rotates it about its center.
+ *
+ * While dragging, nothing is stroked: the rest of the drawing and the selected strokes are each
+ * rendered into a bitmap when the drag starts, and every frame draws the two bitmaps, the second
+ * through the drag's matrix. The preview is kept after the drag ends until the transform has been
+ * done, so the strokes don't jump back for the frames in between.
+ *
+ * The selection and its drag are in document coordinates; the bitmaps are rendered through the
+ * view's viewport, and the outline and handle keep the same size on screen at any zoom.
+ */
+final class Selection {
+    /** Part of the selection under a point. */
+    enum Part {
+        NONE, BODY, HANDLE
+    }
+
+    /** Distance from the handle's center within which a touch grabs it, in pixels on screen. */
+    private static final float HANDLE_RADIUS = 24;
+
+    /** Smallest scale a drag may shrink the selection to, so the transform stays invertible. */
+    private static final float MIN_SCALE = 0.05f;
+
+    private static final Paint OUTLINE_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private static final Paint HANDLE_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private static final Paint BITMAP_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    static {
+        OUTLINE_PAINT.setStyle(Paint.Style.STROKE);
+        OUTLINE_PAINT.setStrokeWidth(2);
+        OUTLINE_PAINT.setColor(Color.DKGRAY);
+        OUTLINE_PAINT.setPathEffect(new DashPathEffect(new float[] {12, 8}, 0));
+        HANDLE_PAINT.setColor(Color.DKGRAY);
+    }
+
+    /** Selected strokes, in drawing order. */
+    private final List<StrokeAction> strokes;
+    private final Set<StrokeAction> selected;
+
+    /** Area covered by the selected strokes, or null until computed. */
+    @Nullable
+    private RectF bounds;
+
+    /** Drag in progress or waiting for its transform to be done, or null if none. */
+    @Nullable
+    private Drag drag;
+
+    /** Scratch transform, corners and path for drawing the outline. */
+    private final Matrix outlineMatrix = new Matrix();
+    private final float[] outlineCorners = new float[8];
+    private final Path outlinePath = new Path();
+
+    /** Bitmaps and matrix of a drag. */
+    private static final class Drag {
+        final Bitmap still, moving;
+
+        /** Where the moving bitmap is drawn before the drag's matrix, in view coordinates. */
+        final float left, top;
+
+        /** Viewport the bitmaps were rendered through, and its inverse. */
+        final Matrix viewport, inverse = new Matrix();
+
+        /** Touch where the drag started, and the point scaling and rotation are around. */
+        final float startX, startY, pivotX, pivotY;
+
+        final boolean handle;
+        final Matrix matrix = new Matrix();
+        boolean finished;
+
+        Drag(Bitmap still, Bitmap moving, float left, float top, Matrix viewport, float startX, float startY,
+             float pivotX, float pivotY, boolean handle) {
+            this.still = still;
+            this.moving = moving;
+            this.left = left;
+            this.top = top;
+            this.viewport = new Matrix(viewport);
+            viewport.invert(inverse);
+            this.startX = startX;
+            this.startY = startY;
+            this.pivotX = pivotX;
+            this.pivotY = pivotY;
+            this.handle = handle;
+        }
+    }
+
+    private Selection(List<StrokeAction> strokes) {
+        this.strokes = strokes;
+        this.selected = Collections.newSetFromMap(new IdentityHashMap<StrokeAction, Boolean>());
+        this.selected.addAll(strokes);
+    }
+
+    /**
+     * Selects the strokes with at least half their points inside a lasso.
+     *
+     * @param layer Layer holding the strokes.
+     * @param lasso Points of the lasso, taken as a closed polygon.
+     * @return Selection, or null if no stroke was inside the lasso.
+     */
+    @Nullable
+    static Selection fromLasso(StrokeLayer layer, StrokePoints lasso) {
+        if (lasso.size() < 3) {
+            return null;
+        }
+        float[] polygon = lasso.getCoords();
+        RectF area = new RectF(polygon[0], polygon[1], polygon[0], polygon[1]);
+        for (int i = 1; i < lasso.size(); i++) {
+            area.union(polygon[i * 2], polygon[i * 2 + 1]);
+        }
+
+        List<StrokeAction> candidates = new ArrayList<>();
+        layer.query(area, candidates);
+        Map<StrokeAction, Boolean> inside = new IdentityHashMap<>();
+        for (StrokeAction stroke : candidates) {
+            if (isInside(stroke.getPoints(), polygon, lasso.size())) {
+                inside.put(stroke, Boolean.TRUE);
+            }
+        }
+        if (inside.isEmpty()) {
+            return null;
+        }
+
+        // Keep the drawing order, so the selection renders the way the drawing does.
+        List<StrokeAction> ordered = new ArrayList<>(inside.size());
+        for (StrokeAction stroke : layer.getStrokes()) {
+            if (inside.containsKey(stroke)) {
+                ordered.add(stroke);
+            }
+        }
+        return new Selection(ordered);
+    }
+
+    /**
+     * @return Selected strokes, in drawing order. Not a copy.
+     */
+    List<StrokeAction> getStrokes() {
+        return strokes;
+    }
+
+    boolean contains(StrokeAction stroke) {
+        return selected.contains(stroke);
+    }
+
+    /**
+     * @param scale Zoom scale of the view, from the document to the screen.
+     * @return Part of the selection under a point.
+     */
+    Part hit(float x, float y, float scale) {
+        RectF area = getBounds();
+        if (Math.hypot(x - area.right, y - area.bottom) <= HANDLE_RADIUS / scale) {
+            return Part.HANDLE;
+        }
+        return area.contains(x, y) ? Part.BODY : Part.NONE;
+    }
+
+    /**
+     * Starts dragging the selection, rendering the bitmaps shown while it is dragged.
+     *
+     * @param layer Layer holding the strokes.
+     * @param width Width of the view.
+     * @param height    Height of the view.
+     * @param viewport  Transform from the document to the view.
+     * @param x     Horizontal coordinate of the touch, in the document.
+     * @param y     Vertical coordinate of the touch, in the document.
+     * @param handle    True if the handle was grabbed, false if the body was.
+     */
+    void startDrag(StrokeLayer layer, int width, int height, Matrix viewport, float x, float y, boolean handle) {
+        dropPreview();
+        RectF area = getBounds();
+        Bitmap still = layer.renderWithout(selected, area, width, height, viewport);
+
+        // Only the part of the selection in the view is rendered.
+        RectF onScreen = new RectF(area);
+        viewport.mapRect(onScreen);
+        Rect visible = new Rect();
+        onScreen.roundOut(visible);
+        if (!visible.intersect(0, 0, width, height)) {
+            visible.set(0, 0, 1, 1);
+        }
+        Bitmap moving = Bitmap.createBitmap(visible.width(), visible.height(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(moving);
+        canvas.translate(-visible.left, -visible.top);
+        canvas.concat(viewport);
+        float scale = viewport.mapRadius(1);
+        for (int i = 0; i < strokes.size(); i++) {
+            strokes.get(i).draw(canvas, scale);
+        }
+
+        drag = new Drag(still, moving, visible.left, visible.top, viewport, x, y,
+                area.centerX(), area.centerY(), handle);
+    }
+
+    /**
+     * @return True while the selection is being dragged.
+     */
+    boolean isDragging() {
+        return drag != null && !drag.finished;
+    }
+
+    /**
+     * @return True while the drag preview is shown in place of the drawing's strokes.
+     */
+    boolean isPreviewing() {
+        return drag != null;
+    }
+
+    /**
+     * Updates the drag for the touch having moved.
+     */
+    void drag(float x, float y) {
+        Matrix matrix = drag.matrix;
+        if (!drag.handle) {
+            matrix.setTranslate(x - drag.startX, y - drag.startY);
+            return;
+        }
+
+        float startDx = drag.startX - drag.pivotX, startDy = drag.startY - drag.pivotY;
+        float dx = x - drag.pivotX, dy = y - drag.pivotY;
+        double startLength = Math.hypot(startDx, startDy);
+        float scale = startLength < 1 ? 1 : (float) Math.max(MIN_SCALE, Math.hypot(dx, dy) / startLength);
+        float degrees = (float) Math.toDegrees(Math.atan2(dy, dx) - Math.atan2(startDy, startDx));
+        matrix.setScale(scale, scale, drag.pivotX, drag.pivotY);
+        matrix.postRotate(degrees, drag.pivotX, drag.pivotY);
+    }
+
+    /**
+     * Ends the drag. The preview stays until dropPreview is called.
+     *
+     * @return Transform the drag made.
+     */
+    Matrix endDrag() {
+        drag.finished = true;
+        return new Matrix(drag.matrix);
+    }
+
+    /**
+     * Stops showing the drag preview, freeing its bitmaps.
+     */
+    void dropPreview() {
+        if (drag != null) {
+            drag.still.recycle();
+            drag.moving.recycle();
+            drag = null;
+        }
+    }
+
+    /**
+     * Records that the selected strokes were transformed, ending any preview of the transform.
+     */
+    void onTransformed() {
+        bounds = null;
+        dropPreview();
+    }
+
+    /**
+     * Draws the drag preview in place of the drawing's strokes.
+     */
+    void drawPreview(Canvas canvas) {
+        canvas.drawBitmap(drag.still, 0, 0, null);
+        canvas.save();
+        // The drag moves the strokes in the document, so the bitmap, which shows them in the view,
+        // is taken back to the document for it.
+        canvas.concat(drag.viewport);
+        canvas.concat(drag.matrix);
+        canvas.concat(drag.inverse);
+        canvas.drawBitmap(drag.moving, drag.left, drag.top, BITMAP_PAINT);
+        canvas.restore();
+    }
+
+    /**
+     * Draws the outline of the selection and its handle, moved along with any drag.
+     *
+     * @param canvas    Canvas to draw on, in view coordinates.
+     * @param viewport  Transform from the document to the view.
+     */
+    void drawOutline(Canvas canvas, Matrix viewport) {
+        RectF area = getBounds();
+        if (drag != null) {
+            outlineMatrix.set(drag.matrix);
+        } else {
+            outlineMatrix.reset();
+        }
+        outlineMatrix.postConcat(viewport);
+
+        float[] corners = outlineCorners;
+        corners[0] = area.left;
+        corners[1] = area.top;
+        corners[2] = area.right;
+        corners[3] = area.top;
+        corners[4] = area.right;
+        corners[5] = area.bottom;
+        corners[6] = area.left;
+        corners[7] = area.bottom;
+        outlineMatrix.mapPoints(corners);
+        outlinePath.rewind();
+        outlinePath.moveTo(corners[0], corners[1]);
+        outlinePath.lineTo(corners[2], corners[3]);
+        outlinePath.lineTo(corners[4], corners[5]);
+        outlinePath.lineTo(corners[6], corners[7]);
+        outlinePath.close();
+        canvas.drawPath(outlinePath, OUTLINE_PAINT);
+
+        // The handle is at the bottom right corner.
+        canvas.drawCircle(corners[4], corners[5], HANDLE_RADIUS / 2, HANDLE_PAINT);
+    }
+
+    private RectF getBounds() {
+        if (bounds == null) {
+            RectF area = new RectF();
+            RectF strokeBounds = new RectF();
+            for (int i = 0; i < strokes.size(); i++) {
+                strokes.get(i).getBounds(strokeBounds);
+                if (i == 0) {
+                    area.set(strokeBounds);
+                } else {
+                    area.union(strokeBounds);
+                }
+            }
+            bounds = area;
+        }
+        return bounds;
+    }
+
+    /**
+     * @return True if at least half of the points are inside the polygon, by the even-odd rule.
+     */
+    private static boolean isInside(StrokePoints points, float[] polygon, int corners) {
+        float[] coords = points.getCoords();
+        int inside = 0;
+        for (int p = 0; p < points.size(); p++) {
+            float x = coords[p * 2], y = coords[p * 2 + 1];
+            boolean in = false;
+            for (int i = 0, j = corners - 1; i < corners; j = i++) {
+                float xi = polygon[i * 2], yi = polygon[i * 2 + 1];
+                float xj = polygon[j * 2], yj = polygon[j * 2 + 1];
+                if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                    in = !in;
+                }
+            }
+            if (in) {
+                inside++;
+            }
+        }
+        return points.size() > 0 && inside * 2 >= points.size();
+    }
+}
@@ -0,0 +1,756 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cse340.undo.actions.StrokeAction;
+
+/**
+ * The committed strokes of a drawing, together with a bitmap cache of them rendered. New strokes
+ * are drawn onto the cache as they are added, so each frame only draws one bitmap no matter how
+ * many strokes there are; removing or inserting a stroke below others re-renders only the area it
+ * covers.
+ *
+ * Strokes are also indexed on a grid by their bounds, so the strokes in an area can be found
+ * without looking at every stroke. Strokes spanning more than MAX_CELLS cells, or reaching past
+ * the grid, are listed apart rather than in every cell.
+ *
+ * The layer is drawn through a viewport, the transform from the document to the view, so the
+ * document can be panned and zoomed. Only strokes whose bounds cross the viewport are drawn, and
+ * zoomed out they are drawn with less detail. The cache holds the strokes as seen through one
+ * viewport; while the viewport moves, the cache is drawn moved along with it, and once it stops
+ * the cache is rendered again for the new viewport in the background.
+ *
+ * A StrokeLayer holds no reference to any View, so it can outlive the DrawingView showing it (for
+ * example across a configuration change) and be handed to the next one. When the new view has a
+ * different size, the old cache keeps being shown while one of the right size is rendered in the
+ * background.
+ *
+ * Must only be used from the UI thread.
+ */
+public class StrokeLayer {
+    /** Thread used to re-render the cache at a new size or viewport. */
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "StrokeLayer");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    /** Width and height of a grid cell in the stroke index, in pixels. */
+    private static final float CELL_SIZE = 128;
+
+    /** Most cells a stroke is listed in; larger strokes are listed apart. */
+    private static final int MAX_CELLS = 64;
+
+    /** Paint drawing the cache through a viewport it wasn't rendered for. */
+    private static final Paint MOVED_CACHE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /** Strokes in the order they are drawn. */
+    private final List<StrokeAction> strokes = new ArrayList<>();
+
+    /** Strokes overlapping each grid cell, keyed by cellKey. */
+    private final Map<Long, List<StrokeAction>> grid = new HashMap<>();
+
+    /** Strokes too large for the grid. */
+    private final List<StrokeAction> largeStrokes = new ArrayList<>();
+
+    /** Scratch rectangle for stroke bounds. UI thread only. */
+    private final RectF strokeBounds = new RectF();
+
+    /** Rendered strokes; strokes 0 to cachedCount - 1 are in it. */
+    @Nullable
+    private Bitmap cache;
+    private Canvas cacheCanvas;
+    private int cachedCount;
+
+    /** Viewport the cache was rendered through, its scale and the area of the document it shows. */
+    private final Matrix cacheViewport = new Matrix();
+    private float cacheScale = 1;
+    private final RectF cacheArea = new RectF();
+
+    /** Area of the cache which no longer matches strokes 0 to cachedCount - 1. */
+    private final RectF dirty = new RectF();
+
+    /** Scratch transform and area for drawing through a viewport. UI thread only. */
+    private final Matrix scratchMatrix = new Matrix();
+    private final RectF scratchArea = new RectF();
+
+    /** Incremented whenever a stroke already in the cache is removed, or one is inserted below it. */
+    private int version;
+
+    /** Size being rendered in the background, or 0 if none, and the viewport it's rendered through. */
+    private int renderingWidth, renderingHeight;
+    private final Matrix renderingViewport = new Matrix();
+
+    /** Called when the layer needs to be redrawn; set by whichever view is showing the layer. */
+    @Nullable
+    private Runnable onInvalidated;
+
+    /**
+     * Sets the callback to run whenever the layer changes and needs to be redrawn.
+     *
+     * @param onInvalidated Callback, or null to stop being notified.
+     */
+    void setOnInvalidated(@Nullable Runnable onInvalidated) {
+        this.onInvalidated = onInvalidated;
+    }
+
+    /**
+     * Stops running the given callback, unless another has replaced it already.
+     *
+     * @param onInvalidated Callback previously passed to setOnInvalidated.
+     */
+    void removeOnInvalidated(Runnable onInvalidated) {
+        if (this.onInvalidated == onInvalidated) {
+            this.onInvalidated = null;
+        }
+    }
+
+    /**
+     * Adds a stroke on top of all others.
+     */
+    public void add(StrokeAction stroke) {
+        strokes.add(stroke);
+        addToGrid(stroke);
+        invalidate();
+    }
+
+    /**
+     * Inserts a stroke at the given position in drawing order.
+     */
+    public void add(int index, StrokeAction stroke) {
+        strokes.add(index, stroke);
+        addToGrid(stroke);
+        if (index < cachedCount) {
+            // Strokes above it are already in the cache, so redraw its area.
+            cachedCount++;
+            markDirty(stroke);
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes a stroke.
+     *
+     * @return Index the stroke was at, or -1 if it wasn't in this layer.
+     */
+    public int remove(StrokeAction stroke) {
+        // Strokes are almost always removed in reverse order (undo), so search from the end.
+        int index = strokes.lastIndexOf(stroke);
+        if (index >= 0) {
+            strokes.remove(index);
+            removeFromGrid(stroke);
+            if (index < cachedCount) {
+                cachedCount--;
+                markDirty(stroke);
+            }
+            invalidate();
+        }
+        return index;
+    }
+
+    /**
+     * Replaces strokes with others drawn in their places, rebuilding the drawing order in one pass
+     * however many strokes are replaced.
+     *
+     * @param originals Strokes to replace, in any order.
+     * @param replacements  For each original, the strokes to draw in its place, in order. May be empty.
+     * @param indices   Receives, for each original, the position it was drawn at, or -1 if it
+     *                  wasn't in this layer.
+     */
+    public void replace(List<StrokeAction> originals, List<List<StrokeAction>> replacements, int[] indices) {
+        Map<StrokeAction, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < originals.size(); i++) {
+            positions.put(originals.get(i), i);
+            indices[i] = -1;
+        }
+        List<StrokeAction> result = new ArrayList<>(strokes.size());
+        int newCachedCount = -1;
+        for (int i = 0; i < strokes.size(); i++) {
+            if (i == cachedCount) {
+                newCachedCount = result.size();
+            }
+            StrokeAction stroke = strokes.get(i);
+            Integer position = positions.get(stroke);
+            if (position == null) {
+                result.add(stroke);
+                continue;
+            }
+            indices[position] = i;
+            removeFromGrid(stroke);
+            if (i < cachedCount) {
+                // The pieces lie within the original, so redrawing its area covers them too.
+                markDirty(stroke);
+            }
+            List<StrokeAction> pieces = replacements.get(position);
+            for (int k = 0; k < pieces.size(); k++) {
+                result.add(pieces.get(k));
+                addToGrid(pieces.get(k));
+            }
+        }
+        setStrokes(result, newCachedCount);
+    }
+
+    /**
+     * Undoes replace, putting each original back in place of its replacements in one pass.
+     *
+     * @param originals Strokes replace was given.
+     * @param replacements  Strokes drawn in their places.
+     * @param indices   Positions replace returned; originals at -1 are skipped.
+     * @throws IllegalStateException if the replacements aren't drawn where replace put them.
+     */
+    public void restore(List<StrokeAction> originals, List<List<StrokeAction>> replacements, int[] indices) {
+        Integer[] order = new Integer[originals.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(indices[a], indices[b]));
+
+        List<StrokeAction> result = new ArrayList<>(strokes.size() + originals.size());
+        int from = 0;
+        // Position now of the stroke that followed the last original put back, less its old one.
+        int offset = 0;
+        int newCachedCount = -1;
+        for (Integer position : order) {
+            if (indices[position] < 0) {
+                continue;
+            }
+            List<StrokeAction> pieces = replacements.get(position);
+            int index = indices[position] + offset;
+            offset += pieces.size() - 1;
+            if (index < from || index + pieces.size() > strokes.size()) {
+                throw new IllegalStateException("Replacement strokes not rendered");
+            }
+            if (newCachedCount < 0 && cachedCount <= index) {
+                newCachedCount = result.size() + cachedCount - from;
+            }
+            result.addAll(strokes.subList(from, index));
+            StrokeAction original = originals.get(position);
+            result.add(original);
+            addToGrid(original);
+            for (int k = 0; k < pieces.size(); k++) {
+                if (strokes.get(index + k) != pieces.get(k)) {
+                    throw new IllegalStateException("Replacement stroke not rendered");
+                }
+                removeFromGrid(pieces.get(k));
+            }
+            from = index + pieces.size();
+            if (newCachedCount < 0) {
+                // Pieces were in the cache, so the original goes in it as well.
+                markDirty(original);
+                if (cachedCount <= from) {
+                    newCachedCount = result.size();
+                }
+            }
+        }
+        if (newCachedCount < 0) {
+            newCachedCount = result.size() + cachedCount - from;
+        }
+        result.addAll(strokes.subList(from, strokes.size()));
+        setStrokes(result, newCachedCount);
+    }
+
+    /**
+     * Swaps in a rebuilt drawing order.
+     *
+     * @param result    New drawing order.
+     * @param newCachedCount    Strokes of the new order in the cache, or -1 if all of them are.
+     */
+    private void setStrokes(List<StrokeAction> result, int newCachedCount) {
+        strokes.clear();
+        strokes.addAll(result);
+        cachedCount = newCachedCount < 0 ? strokes.size() : newCachedCount;
+        invalidate();
+    }
+
+    /**
+     * Removes every stroke.
+     */
+    public void clear() {
+        strokes.clear();
+        grid.clear();
+        largeStrokes.clear();
+        invalidateCache();
+        invalidate();
+    }
+
+    /**
+     * @return Strokes in drawing order. Not a copy.
+     */
+    public List<StrokeAction> getStrokes() {
+        return Collections.unmodifiableList(strokes);
+    }
+
+    /**
+     * Moves strokes by an affine transform, redrawing the areas they left and now cover.
+     *
+     * @param moved     Strokes to transform, all in this layer.
+     * @param matrix    Transform to apply.
+     */
+    public void transform(List<StrokeAction> moved, Matrix matrix) {
+        for (int i = 0; i < moved.size(); i++) {
+            StrokeAction stroke = moved.get(i);
+            removeFromGrid(stroke);
+            markDirty(stroke);
+            stroke.transform(matrix);
+            addToGrid(stroke);
+            markDirty(stroke);
+        }
+        invalidate();
+    }
+
+    /**
+     * Puts strokes back to the geometry of earlier snapshots, redrawing the areas they left and
+     * now cover.
+     *
+     * @param changed   Strokes to change, all in this layer.
+     * @param snapshots For each stroke, a snapshot of it with the geometry to put back.
+     */
+    public void restoreGeometry(List<StrokeAction> changed, List<StrokeAction> snapshots) {
+        for (int i = 0; i < changed.size(); i++) {
+            StrokeAction stroke = changed.get(i);
+            removeFromGrid(stroke);
+            markDirty(stroke);
+            stroke.restoreGeometry(snapshots.get(i));
+            addToGrid(stroke);
+            markDirty(stroke);
+        }
+        invalidate();
+    }
+
+    /**
+     * Finds the strokes whose bounds overlap an area.
+     *
+     * @param area  Area to search.
+     * @param out   List to add the strokes to, in no particular order.
+     */
+    public void query(RectF area, List<StrokeAction> out) {
+        query(area, new IdentityHashMap<>(), out);
+    }
+
+    /**
+     * Finds the strokes whose bounds overlap an area, skipping those already found. Sharing found
+     * across calls queries several areas without listing a stroke twice.
+     *
+     * @param area  Area to search.
+     * @param found Strokes already found; those added to out are added to it.
+     * @param out   List to add the strokes to, in no particular order.
+     */
+    public void query(RectF area, Map<StrokeAction, Boolean> found, List<StrokeAction> out) {
+        addIntersecting(largeStrokes, area, found, out);
+        long left = cell(area.left), top = cell(area.top);
+        long right = cell(area.right), bottom = cell(area.bottom);
+        long columns = right - left + 1, rows = bottom - top + 1;
+        // Each side is checked first, as their product can overflow.
+        if (columns > grid.size() || rows > grid.size() || columns * rows > grid.size()) {
+            // Fewer cells have strokes than the area covers.
+            for (Map.Entry<Long, List<StrokeAction>> entry : grid.entrySet()) {
+                long key = entry.getKey();
+                int x = (int) (key >> 32), y = (int) key;
+                if (x >= left && x <= right && y >= top && y <= bottom) {
+                    addIntersecting(entry.getValue(), area, found, out);
+                }
+            }
+            return;
+        }
+        for (long y = top; y <= bottom; y++) {
+            for (long x = left; x <= right; x++) {
+                List<StrokeAction> cell = grid.get(cellKey(x, y));
+                if (cell != null) {
+                    addIntersecting(cell, area, found, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the strokes of a list whose bounds overlap an area, unless already found.
+     */
+    private void addIntersecting(List<StrokeAction> candidates, RectF area, Map<StrokeAction, Boolean> found,
+                                 List<StrokeAction> out) {
+        for (int i = 0; i < candidates.size(); i++) {
+            StrokeAction stroke = candidates.get(i);
+            stroke.getBounds(strokeBounds);
+            if (RectF.intersects(strokeBounds, area) && found.put(stroke, Boolean.TRUE) == null) {
+                out.add(stroke);
+            }
+        }
+    }
+
+    /**
+     * Draws the strokes in view onto the given canvas, bringing the cache up to date first.
+     *
+     * @param canvas    Canvas to draw on.
+     * @param width Width of the view showing the layer.
+     * @param height    Height of the view showing the layer.
+     * @param viewport  Transform from the document to the view, without rotation.
+     * @param moving    True while the viewport is being moved, so the cache isn't rendered again
+     *                  for each frame of the gesture.
+     */
+    void draw(Canvas canvas, int width, int height, Matrix viewport, boolean moving) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (cache != null && !dirty.isEmpty()) {
+            redrawDirty();
+        }
+
+        if (cache != null && (cache.getWidth() != width || cache.getHeight() != height
+                || !cacheViewport.equals(viewport))) {
+            if (cachedCount > 0 || !strokes.isEmpty()) {
+                // Show the cache moved to where its strokes now are, plus whatever isn't in it
+                // yet, until the cache for the new size and viewport is ready.
+                if (!moving) {
+                    renderInBackground(width, height, viewport);
+                }
+                cacheViewport.invert(scratchMatrix);
+                scratchMatrix.postConcat(viewport);
+                canvas.drawBitmap(cache, scratchMatrix, MOVED_CACHE_PAINT);
+                visibleArea(viewport, width, height, scratchMatrix, scratchArea);
+                canvas.save();
+                canvas.concat(viewport);
+                drawStrokes(canvas, strokes, cachedCount, strokes.size(), scratchArea, viewport.mapRadius(1), strokeBounds);
+                canvas.restore();
+                return;
+            }
+            releaseCache();
+        }
+
+        if (cache == null) {
+            cache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            cacheCanvas = new Canvas(cache);
+            setCacheViewport(viewport);
+            cachedCount = 0;
+        }
+
+        drawStrokes(cacheCanvas, strokes, cachedCount, strokes.size(), cacheArea, cacheScale, strokeBounds);
+        cachedCount = strokes.size();
+        canvas.drawBitmap(cache, 0, 0, null);
+    }
+
+    /**
+     * Renders every stroke except some into a new bitmap, such as the still part of the drawing
+     * while a selection is dragged. When the cache is current it is copied, and only the area the
+     * excluded strokes cover is stroked again.
+     *
+     * @param excluded  Strokes to leave out.
+     * @param area      Area of the document covering the excluded strokes.
+     * @param width     Width of the view showing the layer.
+     * @param height    Height of the view showing the layer.
+     * @param viewport  Transform from the document to the view.
+     * @return New bitmap, which the caller owns.
+     */
+    Bitmap renderWithout(Set<StrokeAction> excluded, RectF area, int width, int height, Matrix viewport) {
+        Bitmap result = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(result);
+        float scale = viewport.mapRadius(1);
+        int from = 0;
+        if (cache != null && cache.getWidth() == width && cache.getHeight() == height
+                && cacheViewport.equals(viewport)) {
+            if (!dirty.isEmpty()) {
+                redrawDirty();
+            }
+            canvas.drawBitmap(cache, 0, 0, null);
+            canvas.concat(viewport);
+            canvas.save();
+            canvas.clipRect(area);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            for (int i = 0; i < cachedCount; i++) {
+                StrokeAction stroke = strokes.get(i);
+                stroke.getBounds(strokeBounds);
+                if (!excluded.contains(stroke) && RectF.intersects(strokeBounds, area)) {
+                    stroke.draw(canvas, scale);
+                }
+            }
+            canvas.restore();
+            from = cachedCount;
+        } else {
+            canvas.concat(viewport);
+        }
+        visibleArea(viewport, width, height, scratchMatrix, scratchArea);
+        for (int i = from; i < strokes.size(); i++) {
+            StrokeAction stroke = strokes.get(i);
+            stroke.getBounds(strokeBounds);
+            if (!excluded.contains(stroke) && RectF.intersects(strokeBounds, scratchArea)) {
+                stroke.draw(canvas, scale);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cache. It is rebuilt the next time the layer is drawn.
+     *
+     * @return Number of bytes freed.
+     */
+    public long releaseCache() {
+        if (cache == null) {
+            return 0;
+        }
+        long bytes = cache.getAllocationByteCount();
+        cache = null;
+        cacheCanvas = null;
+        cachedCount = 0;
+        dirty.setEmpty();
+        version++;
+        return bytes;
+    }
+
+    /**
+     * Drops the cached outlines of the variable-width strokes, and the strokes' paths at reduced
+     * detail. Each is built again when its stroke is next drawn; while the layer is shown, that is
+     * only when the cache is rendered again, such as after panning or zooming.
+     *
+     * @return Approximate number of bytes freed.
+     */
+    public long releaseOutlines() {
+        long bytes = 0;
+        for (int i = 0; i < strokes.size(); i++) {
+            bytes += strokes.get(i).releaseOutline();
+        }
+        return bytes;
+    }
+
+    /**
+     * Runs a task on the UI thread once any rendering in the background has finished, after which
+     * strokes removed from the layer are no longer being drawn.
+     *
+     * @param task  Task to run.
+     */
+    static void runAfterRendering(Runnable task) {
+        RENDERER.execute(() -> MAIN.post(task));
+    }
+
+    /**
+     * Draws the strokes from one index up to another whose bounds overlap an area.
+     *
+     * @param area      Area of the document to draw.
+     * @param scale     Zoom scale the canvas draws at, choosing each stroke's level of detail.
+     * @param bounds    Scratch rectangle for the strokes' bounds.
+     */
+    private static void drawStrokes(Canvas canvas, List<StrokeAction> strokes, int from, int to,
+                                    RectF area, float scale, RectF bounds) {
+        for (int i = from; i < to; i++) {
+            StrokeAction stroke = strokes.get(i);
+            stroke.getBounds(bounds);
+            if (RectF.intersects(bounds, area)) {
+                stroke.draw(canvas, scale);
+            }
+        }
+    }
+
+    /**
+     * Works out the area of the document seen through a viewport.
+     *
+     * @param inverse   Scratch matrix, which receives the inverse of the viewport.
+     * @param out       Rectangle to receive the area.
+     */
+    private static void visibleArea(Matrix viewport, int width, int height, Matrix inverse, RectF out) {
+        out.set(0, 0, width, height);
+        if (viewport.invert(inverse)) {
+            inverse.mapRect(out);
+        }
+    }
+
+    /**
+     * Makes the cache show the document through a viewport. The cache's contents are left alone.
+     */
+    private void setCacheViewport(Matrix viewport) {
+        cacheViewport.set(viewport);
+        cacheScale = viewport.mapRadius(1);
+        visibleArea(viewport, cache.getWidth(), cache.getHeight(), scratchMatrix, cacheArea);
+        cacheCanvas.setMatrix(viewport);
+    }
+
+    /**
+     * Forces the cache to be re-rendered from scratch.
+     */
+    private void invalidateCache() {
+        if (cache != null) {
+            cache.eraseColor(Color.TRANSPARENT);
+        }
+        cachedCount = 0;
+        dirty.setEmpty();
+        version++;
+    }
+
+    /**
+     * Records that the area covered by a stroke must be redrawn in the cache.
+     */
+    private void markDirty(StrokeAction stroke) {
+        stroke.getBounds(strokeBounds);
+        // Anti-aliasing can reach a pixel past the geometric bounds, which zoomed out is further.
+        float reach = 2 / cacheScale;
+        strokeBounds.inset(-reach, -reach);
+        dirty.union(strokeBounds);
+        version++;
+    }
+
+    /**
+     * Clears the dirty area of the cache and draws the cached strokes into it again. Strokes
+     * entirely outside the area are skipped by their bounds.
+     */
+    private void redrawDirty() {
+        cacheCanvas.save();
+        cacheCanvas.clipRect(dirty);
+        cacheCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        drawStrokes(cacheCanvas, strokes, 0, cachedCount, dirty, cacheScale, strokeBounds);
+        cacheCanvas.restore();
+        dirty.setEmpty();
+    }
+
+    private void addToGrid(StrokeAction stroke) {
+        stroke.getBounds(strokeBounds);
+        if (isLarge(strokeBounds)) {
+            largeStrokes.add(stroke);
+            return;
+        }
+        for (long y = cell(strokeBounds.top); y <= cell(strokeBounds.bottom); y++) {
+            for (long x = cell(strokeBounds.left); x <= cell(strokeBounds.right); x++) {
+                long key = cellKey(x, y);
+                List<StrokeAction> cell = grid.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>();
+                    grid.put(key, cell);
+                }
+                cell.add(stroke);
+            }
+        }
+    }
+
+    private void removeFromGrid(StrokeAction stroke) {
+        stroke.getBounds(strokeBounds);
+        if (isLarge(strokeBounds)) {
+            int index = largeStrokes.lastIndexOf(stroke);
+            if (index >= 0) {
+                largeStrokes.remove(index);
+            }
+            return;
+        }
+        for (long y = cell(strokeBounds.top); y <= cell(strokeBounds.bottom); y++) {
+            for (long x = cell(strokeBounds.left); x <= cell(strokeBounds.right); x++) {
+                long key = cellKey(x, y);
+                List<StrokeAction> cell = grid.get(key);
+                if (cell != null) {
+                    // Recent strokes are removed most often, and they are at the end.
+                    int index = cell.lastIndexOf(stroke);
+                    if (index >= 0) {
+                        cell.remove(index);
+                    }
+                    if (cell.isEmpty()) {
+                        grid.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if bounds span more than MAX_CELLS cells, or have a coordinate past the grid.
+     */
+    private static boolean isLarge(RectF bounds) {
+        if (!inGrid(bounds.left) || !inGrid(bounds.top) || !inGrid(bounds.right) || !inGrid(bounds.bottom)) {
+            return true;
+        }
+        long columns = cell(bounds.right) - cell(bounds.left) + 1;
+        long rows = cell(bounds.bottom) - cell(bounds.top) + 1;
+        return columns * rows > MAX_CELLS;
+    }
+
+    /**
+     * @return True if a coordinate is finite and its cell fits the int halves of a cell key.
+     */
+    private static boolean inGrid(float coordinate) {
+        float cell = coordinate / CELL_SIZE;
+        return cell > Integer.MIN_VALUE && cell < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Cell of a coordinate. Coordinates past the grid, and infinite ones, saturate to the first or
+     * last int; the loops over cells count in long so they still end.
+     */
+    private static long cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long cellKey(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private void invalidate() {
+        if (onInvalidated != null) {
+            onInvalidated.run();
+        }
+    }
+
+    /**
+     * Renders a cache of the given size and viewport on the background thread, unless one is
+     * already being rendered. Transforming a stroke replaces its geometry rather than changing it,
+     * so strokes can safely be drawn from another thread; a cache rendered while strokes were
+     * transformed is stale by its version, and dropped.
+     */
+    private void renderInBackground(int width, int height, Matrix viewport) {
+        if (renderingWidth == width && renderingHeight == height && renderingViewport.equals(viewport)) {
+            return;
+        }
+        renderingWidth = width;
+        renderingHeight = height;
+        renderingViewport.set(viewport);
+
+        Matrix rendered = new Matrix(viewport);
+        List<StrokeAction> snapshot = new ArrayList<>(strokes);
+        int snapshotVersion = version;
+        RENDERER.execute(() -> {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.setMatrix(rendered);
+            RectF area = new RectF();
+            visibleArea(rendered, width, height, new Matrix(), area);
+            drawStrokes(canvas, snapshot, 0, snapshot.size(), area, rendered.mapRadius(1), new RectF());
+            MAIN.post(() -> onRendered(bitmap, rendered, snapshot.size(), snapshotVersion));
+        });
+    }
+
+    private void onRendered(Bitmap rendered, Matrix viewport, int count, int renderedVersion) {
+        boolean current = rendered.getWidth() == renderingWidth && rendered.getHeight() == renderingHeight
+                && viewport.equals(renderingViewport);
+        if (current) {
+            renderingWidth = 0;
+            renderingHeight = 0;
+        }
+
+        // Only strokes added since the snapshot are missing; anything else means it's stale.
+        if (current && renderedVersion == version) {
+            cache = rendered;
+            cacheCanvas = new Canvas(rendered);
+            setCacheViewport(viewport);
+            cachedCount = count;
+        } else if (current) {
+            cache = null;
+            cacheCanvas = null;
+            cachedCount = 0;
+        }
+        invalidate();
+    }
+}
@@ -0,0 +1,144 @@
+package cse340.undo.app;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Reuses the objects each stroke needs, so drawing quickly doesn't keep the garbage collector
+ * busy. Paths and point buffers are taken back from strokes that are thrown away (lassos, eraser
+ * sweeps, strokes forgotten by the history) and handed to the next strokes drawn. Paints are
+ * shared by every stroke drawn with the same color and width, rather than copied for each one.
+ *
+ * Counts of objects reused and created are kept so the saving can be checked, for example
+ * alongside the allocation counts of a replay. Must only be used from the UI thread.
+ */
+final class StrokePool {
+    /** Most paths or point buffers kept waiting for reuse. */
+    private static final int MAX_POOLED = 16;
+
+    /** Most shared paints kept; the table starts over when it would grow past this. */
+    private static final int MAX_PAINTS = 64;
+
+    private final ArrayDeque<Path> paths = new ArrayDeque<>(MAX_POOLED);
+    private final ArrayDeque<StrokePoints> points = new ArrayDeque<>(MAX_POOLED);
+
+    /** Shared stroke paints and the paints filling their outlines, keyed by color and width. */
+    private final Map<Long, Paint> strokePaints = new HashMap<>();
+    private final Map<Long, Paint> fillPaints = new HashMap<>();
+
+    private long reused, created;
+
+    /**
+     * @return Empty path, reused if one is available.
+     */
+    Path obtainPath() {
+        Path path = paths.pollFirst();
+        if (path == null) {
+            created++;
+            return new Path();
+        }
+        reused++;
+        return path;
+    }
+
+    /**
+     * @return Empty point buffer, reused if one is available.
+     */
+    StrokePoints obtainPoints() {
+        StrokePoints buffer = points.pollFirst();
+        if (buffer == null) {
+            created++;
+            return new StrokePoints();
+        }
+        reused++;
+        return buffer;
+    }
+
+    /**
+     * Takes back a path nothing uses any more.
+     */
+    void recycle(Path path) {
+        if (paths.size() < MAX_POOLED) {
+            path.reset();
+            paths.addFirst(path);
+        }
+    }
+
+    /**
+     * Takes back a point buffer nothing uses any more.
+     */
+    void recycle(StrokePoints buffer) {
+        if (points.size() < MAX_POOLED) {
+            buffer.clear();
+            points.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Returns a paint equal to the given one, shared with every other stroke drawn in the same
+     * color and width. Strokes only differ in color and width, so nothing else is compared.
+     *
+     * @param paint Paint to match. Not kept.
+     * @return Shared paint, which must not be changed.
+     */
+    Paint sharedPaint(Paint paint) {
+        long key = key(paint);
+        Paint shared = strokePaints.get(key);
+        if (shared == null) {
+            if (strokePaints.size() == MAX_PAINTS) {
+                strokePaints.clear();
+                fillPaints.clear();
+            }
+            created++;
+            shared = new Paint(paint);
+            strokePaints.put(key, shared);
+        } else {
+            reused++;
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the paint filling the outline of a variable-width stroke drawn with a shared paint.
+     *
+     * @param shared    Paint returned by sharedPaint.
+     * @return Shared fill paint, which must not be changed.
+     */
+    Paint sharedFillPaint(Paint shared) {
+        long key = key(shared);
+        Paint fill = fillPaints.get(key);
+        if (fill == null) {
+            created++;
+            fill = new Paint(shared);
+            fill.setStyle(Paint.Style.FILL);
+            fillPaints.put(key, fill);
+        } else {
+            reused++;
+        }
+        return fill;
+    }
+
+    /**
+     * @return Number of objects handed out which were reused rather than created.
+     */
+    long getReusedCount() {
+        return reused;
+    }
+
+    /**
+     * @return Number of objects which had to be created.
+     */
+    long getCreatedCount() {
+        return created;
+    }
+
+    private static long key(Paint paint) {
+        return ((long) paint.getColor() << 32) | (Float.floatToIntBits(paint.getStrokeWidth()) & 0xFFFFFFFFL);
+    }
+}
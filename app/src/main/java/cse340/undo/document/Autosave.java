@@ -0,0 +1,410 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Saves a drawing continuously without blocking the UI thread. Each change to the history is
+ * queued as a small delta; a background thread drains everything queued so far and appends it to
+ * a journal file in a single write (group commit). Writes are never forced to disk, so a crash of
+ * the device (not of the app) may lose the most recent changes.
+ *
+ * Once the journal grows past a threshold, the owner is asked (via needsCompaction()) to capture a
+ * full DrawingDocument, which is written as the new base file and the journal emptied.
+ *
+ * The on* methods and compact() must be called on the UI thread, in the order the changes happen.
+ *
+ * @see AutosaveJournal
+ */
+public final class Autosave {
+    private static final String LOG_TAG = "Autosave";
+
+    /** Journal size, in bytes, after which a compaction is requested. */
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /**
+     * All autosave instances share one writer thread, so a recreated activity never writes the
+     * same files concurrently with the one it replaced.
+     */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Autosave");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /** A change waiting to be written. */
+    private static final class Delta {
+        final byte type;
+        final AbstractReversibleAction action;
+        final DrawingDocument document;
+        final long queuedAt = SystemClock.elapsedRealtime();
+
+        Delta(byte type, AbstractReversibleAction action, DrawingDocument document) {
+            this.type = type;
+            this.action = action;
+            this.document = document;
+        }
+    }
+
+    /** Delta type for compactions; never written to the journal. */
+    private static final byte COMPACT = 0;
+
+    private final File baseFile, journalFile;
+
+    private final ConcurrentLinkedQueue<Delta> queue = new ConcurrentLinkedQueue<>();
+
+    /** Whether a drain of the queue has been submitted to the writer but not started. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /** Whether the journal is past COMPACTION_THRESHOLD and no compaction has been queued. */
+    private volatile boolean compactionNeeded;
+
+    /** Metrics, written by the writer thread. */
+    private volatile long bytesWritten, lastLagMillis, maxLagMillis;
+
+    /**
+     * Journal being appended to, and the output every drain writes it through, so its buffer is
+     * allocated once. Only touched on the writer thread.
+     */
+    private RandomAccessFile journal;
+    private ChannelOutput journalOut;
+
+    /**
+     * Generation of the base, and of the journal following it, once the journal is open. Only
+     * touched on the writer thread.
+     */
+    private short generation;
+
+    /**
+     * Creates an autosave which keeps its files in the given directory.
+     *
+     * @param directory Directory for the base and journal files. Created if needed.
+     */
+    public Autosave(File directory) {
+        baseFile = new File(directory, "drawing.undo");
+        journalFile = new File(directory, "drawing.journal");
+        WRITER.execute(() -> {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(LOG_TAG, "Cannot create " + directory);
+            }
+        });
+    }
+
+    /**
+     * @return File holding the most recently compacted document.
+     */
+    public File getBaseFile() {
+        return baseFile;
+    }
+
+    /**
+     * @return File holding the changes made since the base file was written.
+     */
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Records that an action was done (and added to the history).
+     */
+    public void onActionDone(AbstractReversibleAction action) {
+        byte type;
+        if (action instanceof StrokeAction) {
+            type = ((StrokeAction) action).isVariableWidth()
+                    ? DocumentFormat.JOURNAL_VARIABLE_STROKE : DocumentFormat.JOURNAL_STROKE;
+            // Written as the stroke is now, even if it is transformed before the writer gets to it.
+            action = ((StrokeAction) action).snapshot();
+        } else if (action instanceof ChangeColorAction) {
+            type = DocumentFormat.JOURNAL_COLOR;
+        } else if (action instanceof ChangeThicknessAction) {
+            type = DocumentFormat.JOURNAL_THICKNESS;
+        } else {
+            // Not representable in the journal; ask for a full snapshot instead.
+            compactionNeeded = true;
+            return;
+        }
+        enqueue(new Delta(type, action, null));
+    }
+
+    /**
+     * Records that the most recent action was undone.
+     */
+    public void onUndo() {
+        enqueue(new Delta(DocumentFormat.JOURNAL_UNDO, null, null));
+    }
+
+    /**
+     * Records that the most recently undone action was redone.
+     */
+    public void onRedo() {
+        enqueue(new Delta(DocumentFormat.JOURNAL_REDO, null, null));
+    }
+
+    /**
+     * Records that the drawing changed in a way the journal can't express, so the next change
+     * is saved by a full snapshot.
+     */
+    public void requestCompaction() {
+        compactionNeeded = true;
+    }
+
+    /**
+     * @return True if the owner should capture a document and pass it to compact().
+     */
+    public boolean needsCompaction() {
+        return compactionNeeded;
+    }
+
+    /**
+     * Replaces the base file with the given document and empties the journal. The document must
+     * reflect every change recorded so far.
+     *
+     * @param document  Snapshot of the whole drawing.
+     */
+    public void compact(DrawingDocument document) {
+        compactionNeeded = false;
+        enqueue(new Delta(COMPACT, null, document));
+    }
+
+    /**
+     * @return Total bytes written to the base and journal files.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return Time, in milliseconds, between the oldest delta of the last batch being queued and
+     *         the batch being written.
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    /**
+     * @return Largest lag seen so far, in milliseconds.
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * Runs a task on the UI thread once everything queued so far, by any Autosave, has been
+     * written. Use this before reading the files back.
+     *
+     * @param task  Task to run on the UI thread.
+     */
+    public void runAfterPendingWrites(Runnable task) {
+        Handler main = new Handler(Looper.getMainLooper());
+        WRITER.execute(() -> main.post(task));
+    }
+
+    /**
+     * Stops writing once everything queued so far has been written. Does not block.
+     */
+    public void close() {
+        WRITER.execute(this::closeJournal);
+    }
+
+    private void enqueue(Delta delta) {
+        queue.add(delta);
+        if (drainScheduled.compareAndSet(false, true)) {
+            WRITER.execute(this::drain);
+        }
+    }
+
+    /**
+     * Writes every queued delta. Runs on the writer thread.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+
+        List<Delta> batch = new ArrayList<>();
+        for (Delta delta = queue.poll(); delta != null; delta = queue.poll()) {
+            batch.add(delta);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // A compaction captures everything before it, so earlier deltas need not be written.
+        int first = 0;
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (batch.get(i).type == COMPACT) {
+                first = i;
+                break;
+            }
+        }
+
+        long bytes = 0;
+        try {
+            if (batch.get(first).type == COMPACT) {
+                bytes += writeBase(batch.get(first).document);
+                first++;
+            }
+            if (first < batch.size()) {
+                bytes += appendToJournal(batch, first);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Autosave failed", e);
+            closeJournal();
+            // The changes in this batch aren't saved anywhere, so save them all with the next one.
+            compactionNeeded = true;
+            return;
+        }
+
+        long lag = SystemClock.elapsedRealtime() - batch.get(0).queuedAt;
+        lastLagMillis = lag;
+        maxLagMillis = Math.max(maxLagMillis, lag);
+        bytesWritten += bytes;
+        Log.i(LOG_TAG, "Saved " + batch.size() + " change(s), " + bytes + " bytes, lag " + lag
+                + " ms (" + bytesWritten + " bytes total, max lag " + maxLagMillis + " ms)");
+    }
+
+    /**
+     * Writes a new base file and truncates the journal. The base is of the next generation, so
+     * if the journal isn't truncated (say the app is killed first), it is known to be stale.
+     *
+     * @return Number of bytes written.
+     */
+    private long writeBase(DrawingDocument document) throws IOException {
+        FileChannel channel = openJournal();
+        short next = (short) (generation + 1);
+
+        // Write to a temporary file first so a failure never leaves a partial base behind.
+        File temp = new File(baseFile.getPath() + ".tmp");
+        long bytes = DrawingDocumentWriter.write(document, temp, next);
+        if (!temp.renameTo(baseFile)) {
+            throw new IOException("Cannot replace " + baseFile);
+        }
+
+        generation = next;
+        channel.truncate(0);
+        channel.position(0);
+        return bytes + writeJournalHeader();
+    }
+
+    /**
+     * Appends deltas to the journal in a single write.
+     *
+     * @return Number of bytes written.
+     */
+    private long appendToJournal(List<Delta> batch, int from) throws IOException {
+        FileChannel channel = openJournal();
+        ChannelOutput out = journalOut;
+        long start = out.position(), end = channel.position();
+        try {
+            for (int i = from; i < batch.size(); i++) {
+                writeDelta(out, batch.get(i));
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Later appends must not follow a partial record, which would end the replay there.
+            try {
+                channel.truncate(end);
+            } catch (IOException truncateFailure) {
+                Log.w(LOG_TAG, "Failed to drop partial journal records", truncateFailure);
+            }
+            throw e;
+        }
+
+        long size = channel.position();
+        if (size >= COMPACTION_THRESHOLD) {
+            compactionNeeded = true;
+        }
+        return out.position() - start;
+    }
+
+    private static void writeDelta(ChannelOutput out, Delta delta) throws IOException {
+        out.putByte(delta.type);
+        switch (delta.type) {
+            case DocumentFormat.JOURNAL_STROKE:
+            case DocumentFormat.JOURNAL_VARIABLE_STROKE:
+                StrokeAction stroke = (StrokeAction) delta.action;
+                Paint paint = stroke.getPaint();
+                StrokePoints points = stroke.getPoints();
+                out.putInt(paint.getColor());
+                out.putFloat(paint.getStrokeWidth());
+                out.putInt(points.size());
+                out.putFloats(points.getCoords(), 0, points.size() * 2);
+                if (delta.type == DocumentFormat.JOURNAL_VARIABLE_STROKE) {
+                    out.putFloats(points.getWeights(), 0, points.size());
+                }
+                break;
+            case DocumentFormat.JOURNAL_COLOR:
+                out.putInt(((ChangeColorAction) delta.action).getColor());
+                break;
+            case DocumentFormat.JOURNAL_THICKNESS:
+                out.putInt(((ChangeThicknessAction) delta.action).getThickness());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Opens the journal for appending, starting a new one if it doesn't exist, is unreadable or
+     * doesn't follow the base.
+     */
+    private FileChannel openJournal() throws IOException {
+        if (journal == null) {
+            journal = new RandomAccessFile(journalFile, "rw");
+            FileChannel channel = journal.getChannel();
+            journalOut = new ChannelOutput(channel);
+            generation = DrawingDocumentReader.readGeneration(baseFile);
+            if (channel.size() < DocumentFormat.JOURNAL_HEADER_SIZE
+                    || DrawingDocumentReader.readGeneration(channel, DocumentFormat.JOURNAL_MAGIC) != generation) {
+                channel.truncate(0);
+                channel.position(0);
+                bytesWritten += writeJournalHeader();
+            }
+            channel.position(channel.size());
+        }
+        return journal.getChannel();
+    }
+
+    /**
+     * @return Number of bytes written.
+     */
+    private long writeJournalHeader() throws IOException {
+        ChannelOutput out = journalOut;
+        long start = out.position();
+        out.putInt(DocumentFormat.JOURNAL_MAGIC);
+        out.putShort(DocumentFormat.JOURNAL_VERSION);
+        out.putShort(generation);
+        out.flush();
+        return out.position() - start;
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close journal", e);
+            }
+            journal = null;
+            journalOut = null;
+        }
+    }
+}
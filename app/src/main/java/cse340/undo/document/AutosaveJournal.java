@@ -0,0 +1,147 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Reads back the journal written by Autosave.
+ *
+ * @see Autosave
+ * @see DocumentFormat
+ */
+public final class AutosaveJournal {
+    private static final String LOG_TAG = "AutosaveJournal";
+
+    /**
+     * Receives the changes recorded in a journal, in the order they were made.
+     */
+    public interface Replay {
+        void onAction(AbstractReversibleAction action);
+
+        void onUndo();
+
+        void onRedo();
+    }
+
+    private AutosaveJournal() {}
+
+    /**
+     * Replays a journal. Since journal writes are not forced to disk, the journal may end with a
+     * partially written record; replay stops at the last complete one. A journal from before the
+     * base was last written, which a crash while compacting can leave behind, is not replayed,
+     * since the base already holds its changes.
+     *
+     * @param file  Journal file. Nothing is replayed if it doesn't exist.
+     * @param base  Base file the journal follows, which need not exist.
+     * @param template  Paint whose style, cap, join and flags are used for every stroke.
+     * @param replay    Receiver for the recorded changes.
+     * @return Number of changes replayed.
+     * @throws IOException if the journal cannot be read or is not a journal.
+     */
+    public static int replay(File file, File base, Paint template, Replay replay) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        short baseGeneration = DrawingDocumentReader.readGeneration(base);
+
+        ByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            data = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the buffer is full.
+            }
+            data.flip();
+        }
+        data.order(DocumentFormat.ORDER);
+
+        if (data.remaining() < DocumentFormat.JOURNAL_HEADER_SIZE
+                || data.getInt() != DocumentFormat.JOURNAL_MAGIC) {
+            throw new IOException("Not an autosave journal");
+        }
+        short version = data.getShort();
+        if (version != DocumentFormat.JOURNAL_VERSION) {
+            throw new IOException("Unsupported journal version: " + version);
+        }
+        short generation = data.getShort();
+        if (generation != baseGeneration) {
+            Log.w(LOG_TAG, "Skipping journal of generation " + generation + ", older than its base");
+            return 0;
+        }
+
+        // Strokes with the same color and thickness share a Paint, as with documents.
+        Map<Long, Paint> paints = new HashMap<>();
+        int count = 0;
+        try {
+            while (data.hasRemaining()) {
+                byte type = data.get();
+                switch (type) {
+                    case DocumentFormat.JOURNAL_STROKE:
+                    case DocumentFormat.JOURNAL_VARIABLE_STROKE:
+                        boolean weighted = type == DocumentFormat.JOURNAL_VARIABLE_STROKE;
+                        Paint paint = paint(paints, template, data.getInt(), data.getFloat());
+                        int size = data.getInt();
+                        if (size < 0 || size > data.remaining() / (weighted ? 12 : 8)) {
+                            throw new BufferUnderflowException();
+                        }
+                        float[] coords = new float[size * 2];
+                        data.asFloatBuffer().get(coords);
+                        data.position(data.position() + coords.length * 4);
+                        float[] weights = null;
+                        if (weighted) {
+                            weights = new float[size];
+                            data.asFloatBuffer().get(weights);
+                            data.position(data.position() + weights.length * 4);
+                        }
+                        replay.onAction(StrokeAction.withSharedPaint(new StrokePoints(coords, weights, size), paint));
+                        break;
+                    case DocumentFormat.JOURNAL_COLOR:
+                        replay.onAction(new ChangeColorAction(data.getInt()));
+                        break;
+                    case DocumentFormat.JOURNAL_THICKNESS:
+                        replay.onAction(new ChangeThicknessAction(data.getInt()));
+                        break;
+                    case DocumentFormat.JOURNAL_UNDO:
+                        replay.onUndo();
+                        break;
+                    case DocumentFormat.JOURNAL_REDO:
+                        replay.onRedo();
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type);
+                }
+                count++;
+            }
+        } catch (BufferUnderflowException e) {
+            Log.w(LOG_TAG, "Journal ends with a partial record after " + count + " changes");
+        }
+        return count;
+    }
+
+    private static Paint paint(Map<Long, Paint> paints, Paint template, int color, float thickness) {
+        long key = ((long) color << 32) | (Float.floatToIntBits(thickness) & 0xFFFFFFFFL);
+        Paint paint = paints.get(key);
+        if (paint == null) {
+            paint = new Paint(template);
+            paint.setColor(color);
+            paint.setStrokeWidth(thickness);
+            paints.put(key, paint);
+        }
+        return paint;
+    }
+}
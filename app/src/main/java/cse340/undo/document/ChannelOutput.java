@@ -0,0 +1,91 @@
+package cse340.undo.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered little-endian output to a channel. Values are gathered in a direct buffer which is
+ * written to the channel whenever it fills up, so output of any size streams through a fixed
+ * amount of memory.
+ */
+final class ChannelOutput {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /** Bytes written to the channel so far, not counting what is still buffered. */
+    private long flushed;
+
+    ChannelOutput(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(DocumentFormat.ORDER);
+    }
+
+    /**
+     * @return Number of bytes output so far, including those still buffered.
+     */
+    long position() {
+        return flushed + buffer.position();
+    }
+
+    void putByte(byte value) throws IOException {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    void putShort(short value) throws IOException {
+        ensure(2);
+        buffer.putShort(value);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    void putFloat(float value) throws IOException {
+        ensure(4);
+        buffer.putFloat(value);
+    }
+
+    /**
+     * Outputs count floats from values, starting at offset, filling the buffer as many times as
+     * needed.
+     */
+    void putFloats(float[] values, int offset, int count) throws IOException {
+        while (count > 0) {
+            ensure(4);
+            FloatBuffer floats = buffer.asFloatBuffer();
+            int n = Math.min(count, floats.remaining());
+            floats.put(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Writes everything buffered to the channel.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cse340.undo.document;
+
+import java.nio.ByteOrder;
+
+/**
+ * Constants describing the binary drawing document format. All values are little-endian.
+ *
+ * <pre>
+ * HEADER        int magic, short version, short generation
+ * STROKES       per stroke: int paint, int pointCount, int flags, float[2 * pointCount] x/y
+ *               coordinates, then float[pointCount] weights if flags has STROKE_WEIGHTS
+ * STROKE TABLE  per stroke: long offset of its record, so strokes can be decoded in any order
+ * PAINTS        per paint: int color, float thickness
+ * HISTORY       per action: byte type, then int stroke index, int color or int thickness
+ * TRAILER       long strokeTable, long paints, long history, int strokeCount, int bakedCount,
+ *               int paintCount, int historyCount, int undoneCount, int basePaint,
+ *               int currentPaint, int magic
+ * </pre>
+ *
+ * The first bakedCount strokes are rendered but no longer in the history; the rest are referenced
+ * by the history. The trailer is at a fixed distance from the end of the file, which lets the
+ * document be written in a single streaming pass and read without scanning.
+ *
+ * Version 1 documents are still read. Their stroke records have no flags, and no weights.
+ *
+ * The generation is 0 except in an autosave base, where it tells which journal was started
+ * after the base was written: a journal of another generation is older than the base, and its
+ * changes are already in it.
+ */
+final class DocumentFormat {
+    static final int MAGIC = 0x4F444E55; // "UNDO"
+    static final short VERSION = 2;
+
+    /** Oldest document version that can still be read. */
+    static final short MIN_VERSION = 1;
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 3 * 8 + 8 * 4;
+
+    /** Size of a stroke record before its coordinates, in version 1 and from version 2 on. */
+    static final int STROKE_HEADER_SIZE_V1 = 8;
+    static final int STROKE_HEADER_SIZE = 12;
+
+    /** Stroke flag: the coordinates are followed by a weight for each point. */
+    static final int STROKE_WEIGHTS = 1;
+
+    /** History record types. */
+    static final byte TYPE_STROKE = 1;
+    static final byte TYPE_COLOR = 2;
+    static final byte TYPE_THICKNESS = 3;
+
+    /**
+     * Journal files hold the changes made since the base document was written, appended in the
+     * order they happened. After a header of int magic, short version and short generation (that
+     * of the base the journal follows), each record is a type byte followed by:
+     *
+     * <pre>
+     * JOURNAL_STROKE           int color, float thickness, int pointCount, float[2 * pointCount]
+     * JOURNAL_COLOR            int color
+     * JOURNAL_THICKNESS        int thickness
+     * JOURNAL_UNDO             nothing
+     * JOURNAL_REDO             nothing
+     * JOURNAL_VARIABLE_STROKE  as JOURNAL_STROKE, then float[pointCount] weights
+     * </pre>
+     *
+     * Journals are versioned separately from documents, since they only ever gain record types.
+     */
+    static final int JOURNAL_MAGIC = 0x4A444E55; // "UNDJ"
+    static final short JOURNAL_VERSION = 1;
+    static final int JOURNAL_HEADER_SIZE = 8;
+
+    static final byte JOURNAL_STROKE = 1;
+    static final byte JOURNAL_COLOR = 2;
+    static final byte JOURNAL_THICKNESS = 3;
+    static final byte JOURNAL_UNDO = 4;
+    static final byte JOURNAL_REDO = 5;
+    static final byte JOURNAL_VARIABLE_STROKE = 6;
+
+    private DocumentFormat() {}
+}
@@ -0,0 +1,203 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+import android.support.annotation.ColorInt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.app.DrawingView;
+import cse340.undo.history.AbstractStackHistory;
+
+/**
+ * A snapshot of a drawing: the strokes which are rendered but no longer in the history (baked
+ * strokes), the history itself, and the paint before and after the history. Capture a snapshot on
+ * the UI thread; it may then be written from any thread, since it keeps a snapshot of each stroke
+ * which later transforms leave as it was.
+ *
+ * @see DrawingDocumentWriter
+ * @see DrawingDocumentReader
+ */
+public final class DrawingDocument {
+    /** Rendered strokes which are not in the history, in drawing order. */
+    private final List<StrokeAction> bakedStrokes;
+
+    /** History in the order given by AbstractStackHistory#getActions(). */
+    private final List<AbstractReversibleAction> history;
+
+    /** Number of actions at the end of history which are undone. */
+    private final int undoneCount;
+
+    /** Paint before the first action in history was done. */
+    @ColorInt
+    private final int baseColor;
+    private final float baseThickness;
+
+    /** Paint at the time of the snapshot. */
+    @ColorInt
+    private final int currentColor;
+    private final float currentThickness;
+
+    /**
+     * Creates a document. The lists are not copied.
+     *
+     * @param bakedStrokes  Rendered strokes which are not in the history.
+     * @param history   Actions in the history, oldest first, undone actions last.
+     * @param undoneCount   Number of actions at the end of history which are undone.
+     * @param baseColor Paint color before history.
+     * @param baseThickness Paint thickness before history.
+     * @param currentColor  Paint color after history.
+     * @param currentThickness  Paint thickness after history.
+     * @throws IllegalArgumentException if undoneCount is out of range.
+     */
+    public DrawingDocument(List<StrokeAction> bakedStrokes, List<AbstractReversibleAction> history,
+                           int undoneCount, @ColorInt int baseColor, float baseThickness,
+                           @ColorInt int currentColor, float currentThickness) {
+        if (undoneCount < 0 || undoneCount > history.size()) {
+            throw new IllegalArgumentException("Illegal undone count: " + undoneCount);
+        }
+        this.bakedStrokes = Collections.unmodifiableList(bakedStrokes);
+        this.history = Collections.unmodifiableList(history);
+        this.undoneCount = undoneCount;
+        this.baseColor = baseColor;
+        this.baseThickness = baseThickness;
+        this.currentColor = currentColor;
+        this.currentThickness = currentThickness;
+    }
+
+    /**
+     * Takes a snapshot of a drawing. Must be called on the UI thread.
+     *
+     * If the history holds an action the document format can't represent (such as an erase), the
+     * history is flattened: every rendered stroke is baked and the snapshot has no history.
+     *
+     * @param view  DrawingView showing the drawing.
+     * @param model History of the drawing.
+     * @return New snapshot.
+     */
+    public static DrawingDocument capture(DrawingView view, AbstractStackHistory model) {
+        List<AbstractReversibleAction> history = model.getActions();
+        int undoneCount = model.redoSize();
+        if (!canRecord(history)) {
+            Paint paint = view.getCurrentPaint();
+            return new DrawingDocument(snapshot(view.getStrokes(), new IdentityHashMap<>()),
+                    Collections.<AbstractReversibleAction>emptyList(), 0,
+                    paint.getColor(), paint.getStrokeWidth(), paint.getColor(), paint.getStrokeWidth());
+        }
+
+        // Each stroke in the history is snapshotted once, so the same stroke stays the same object.
+        Map<StrokeAction, StrokeAction> inHistory = new IdentityHashMap<>();
+        List<AbstractReversibleAction> recorded = new ArrayList<>(history.size());
+        for (AbstractReversibleAction action : history) {
+            if (action instanceof StrokeAction) {
+                recorded.add(snapshot((StrokeAction) action, inHistory));
+            } else {
+                recorded.add(action);
+            }
+        }
+
+        List<StrokeAction> rendered = view.getStrokes();
+        List<StrokeAction> baked = new ArrayList<>(rendered.size());
+        for (StrokeAction stroke : rendered) {
+            if (!inHistory.containsKey(stroke)) {
+                baked.add(stroke.snapshot());
+            }
+        }
+
+        // Walk back through the done actions to find the paint from before the history.
+        Paint paint = view.getCurrentPaint();
+        int color = paint.getColor();
+        float thickness = paint.getStrokeWidth();
+        for (int i = history.size() - undoneCount - 1; i >= 0; i--) {
+            AbstractReversibleAction action = history.get(i);
+            if (action instanceof ChangeColorAction) {
+                color = ((ChangeColorAction) action).getPreviousColor();
+            } else if (action instanceof ChangeThicknessAction) {
+                thickness = ((ChangeThicknessAction) action).getPreviousThickness();
+            }
+        }
+
+        return new DrawingDocument(baked, recorded, undoneCount, color, thickness,
+                paint.getColor(), paint.getStrokeWidth());
+    }
+
+    private static List<StrokeAction> snapshot(List<StrokeAction> strokes, Map<StrokeAction, StrokeAction> snapshots) {
+        List<StrokeAction> result = new ArrayList<>(strokes.size());
+        for (StrokeAction stroke : strokes) {
+            result.add(snapshot(stroke, snapshots));
+        }
+        return result;
+    }
+
+    /**
+     * @return Snapshot of a stroke, the same one each time for the same stroke.
+     */
+    private static StrokeAction snapshot(StrokeAction stroke, Map<StrokeAction, StrokeAction> snapshots) {
+        StrokeAction result = snapshots.get(stroke);
+        if (result == null) {
+            result = stroke.snapshot();
+            snapshots.put(stroke, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param history   Actions in a history.
+     * @return True if the document format can represent every action, so the history is kept
+     *         by capture() rather than flattened.
+     */
+    public static boolean canRecord(List<AbstractReversibleAction> history) {
+        for (int i = 0; i < history.size(); i++) {
+            if (!canRecord(history.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param action    Action in a history.
+     * @return True if the document format can represent the action.
+     */
+    public static boolean canRecord(AbstractReversibleAction action) {
+        return action instanceof StrokeAction || action instanceof ChangeColorAction
+                || action instanceof ChangeThicknessAction;
+    }
+
+    public List<StrokeAction> getBakedStrokes() {
+        return bakedStrokes;
+    }
+
+    public List<AbstractReversibleAction> getHistory() {
+        return history;
+    }
+
+    public int getUndoneCount() {
+        return undoneCount;
+    }
+
+    @ColorInt
+    public int getBaseColor() {
+        return baseColor;
+    }
+
+    public float getBaseThickness() {
+        return baseThickness;
+    }
+
+    @ColorInt
+    public int getCurrentColor() {
+        return currentColor;
+    }
+
+    public float getCurrentThickness() {
+        return currentThickness;
+    }
+}
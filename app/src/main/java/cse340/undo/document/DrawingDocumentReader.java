@@ -0,0 +1,292 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+import android.support.annotation.ColorInt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Reads a document written by DrawingDocumentWriter. Opening a document only reads its trailer
+ * and paint table; strokes are decoded one at a time, on request, so the first strokes can be
+ * shown before the rest have been looked at. Large documents are memory-mapped rather than read
+ * into the heap.
+ *
+ * Strokes decoded by the same reader share one Paint per entry of the paint table.
+ *
+ * @see DocumentFormat
+ */
+public final class DrawingDocumentReader implements Closeable {
+    /** Documents at least this large are memory-mapped instead of read into memory. */
+    private static final long MAP_THRESHOLD = 256 * 1024;
+
+    private final RandomAccessFile file;
+    private final ByteBuffer data;
+
+    private final short version;
+    private final int strokeTable, history;
+    private final int strokeCount, bakedCount, historyCount, undoneCount;
+    private final int basePaint, currentPaint;
+
+    /** Paint table, built from the template paint given when opening. */
+    private final Paint[] paints;
+
+    private DrawingDocumentReader(RandomAccessFile file, ByteBuffer data, Paint template) throws IOException {
+        this.file = file;
+        this.data = data;
+
+        int size = data.limit();
+        if (size < DocumentFormat.HEADER_SIZE + DocumentFormat.TRAILER_SIZE
+                || data.getInt(0) != DocumentFormat.MAGIC
+                || data.getInt(size - 4) != DocumentFormat.MAGIC) {
+            throw new IOException("Not a drawing document");
+        }
+        version = data.getShort(4);
+        if (version < DocumentFormat.MIN_VERSION || version > DocumentFormat.VERSION) {
+            throw new IOException("Unsupported document version: " + version);
+        }
+
+        int trailer = size - DocumentFormat.TRAILER_SIZE;
+        strokeTable = checkOffset(data.getLong(trailer), size);
+        int paintTable = checkOffset(data.getLong(trailer + 8), size);
+        history = checkOffset(data.getLong(trailer + 16), size);
+        strokeCount = data.getInt(trailer + 24);
+        bakedCount = data.getInt(trailer + 28);
+        int paintCount = data.getInt(trailer + 32);
+        historyCount = data.getInt(trailer + 36);
+        undoneCount = data.getInt(trailer + 40);
+        basePaint = data.getInt(trailer + 44);
+        currentPaint = data.getInt(trailer + 48);
+
+        // Each section must fit before the next, so no count can reach past the end of the file.
+        if (strokeCount < 0 || bakedCount < 0 || bakedCount > strokeCount
+                || paintCount < 0 || historyCount < 0 || undoneCount < 0 || undoneCount > historyCount
+                || strokeTable + 8L * strokeCount > paintTable
+                || paintTable + 8L * paintCount > history
+                || history + 5L * historyCount > trailer) {
+            throw new IOException("Corrupt document trailer");
+        }
+        if (basePaint < 0 || basePaint >= paintCount || currentPaint < 0 || currentPaint >= paintCount) {
+            throw new IOException("Corrupt document paints: " + basePaint + ", " + currentPaint
+                    + " of " + paintCount);
+        }
+
+        paints = new Paint[paintCount];
+        for (int i = 0; i < paintCount; i++) {
+            Paint paint = new Paint(template);
+            paint.setColor(data.getInt(paintTable + i * 8));
+            paint.setStrokeWidth(data.getFloat(paintTable + i * 8 + 4));
+            paints[i] = paint;
+        }
+    }
+
+    /**
+     * Opens a document.
+     *
+     * @param file  File to read.
+     * @param template  Paint whose style, cap, join and flags are used for every stroke.
+     * @return Reader for the document. Must be closed.
+     * @throws IOException if the file cannot be read or is not a valid document.
+     */
+    public static DrawingDocumentReader open(File file, Paint template) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Document too large: " + size + " bytes");
+            }
+
+            ByteBuffer data;
+            if (size >= MAP_THRESHOLD) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                data = ByteBuffer.allocate((int) size);
+                while (data.hasRemaining() && channel.read(data) >= 0) {
+                    // Keep reading until the buffer is full.
+                }
+                data.flip();
+            }
+            data.order(DocumentFormat.ORDER);
+
+            return new DrawingDocumentReader(raf, data, template);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the generation of a document without opening it.
+     *
+     * @param file  Document to read.
+     * @return Generation in the document's header, or 0 if there is no document or it is too
+     *         short to have one.
+     * @throws IOException if the file cannot be read.
+     */
+    static short readGeneration(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readGeneration(raf.getChannel(), DocumentFormat.MAGIC);
+        }
+    }
+
+    /**
+     * Reads the generation from a document or journal header.
+     *
+     * @param channel   Channel holding the file, which is read from its start.
+     * @param magic     Number the file must start with.
+     * @return Generation in the header, or 0 if the file has no such header.
+     */
+    static short readGeneration(FileChannel channel, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DocumentFormat.HEADER_SIZE).order(DocumentFormat.ORDER);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Keep reading until the header is full.
+        }
+        if (header.hasRemaining() || header.getInt(0) != magic) {
+            return 0;
+        }
+        return header.getShort(6);
+    }
+
+    /**
+     * @return Total number of strokes, baked and in the history.
+     */
+    public int getStrokeCount() {
+        return strokeCount;
+    }
+
+    /**
+     * @return Number of strokes which are rendered but not in the history. These are strokes
+     *         0 to getBakedStrokeCount() - 1, in drawing order.
+     */
+    public int getBakedStrokeCount() {
+        return bakedCount;
+    }
+
+    /**
+     * @return Number of actions at the end of the history which are undone.
+     */
+    public int getUndoneCount() {
+        return undoneCount;
+    }
+
+    @ColorInt
+    public int getBaseColor() {
+        return paints[basePaint].getColor();
+    }
+
+    public float getBaseThickness() {
+        return paints[basePaint].getStrokeWidth();
+    }
+
+    @ColorInt
+    public int getCurrentColor() {
+        return paints[currentPaint].getColor();
+    }
+
+    public float getCurrentThickness() {
+        return paints[currentPaint].getStrokeWidth();
+    }
+
+    /**
+     * Decodes a single stroke.
+     *
+     * @param index Index of the stroke, from 0 to getStrokeCount() - 1.
+     * @return Newly decoded stroke, not yet done.
+     * @throws IOException if the stroke is corrupt.
+     * @throws IndexOutOfBoundsException if index is out of range.
+     */
+    public StrokeAction readStroke(int index) throws IOException {
+        if (index < 0 || index >= strokeCount) {
+            throw new IndexOutOfBoundsException("Stroke " + index + " of " + strokeCount);
+        }
+
+        int offset = checkOffset(data.getLong(strokeTable + index * 8), strokeTable);
+        int headerSize = version == 1 ? DocumentFormat.STROKE_HEADER_SIZE_V1 : DocumentFormat.STROKE_HEADER_SIZE;
+        if (offset + headerSize > strokeTable) {
+            throw new IOException("Corrupt stroke " + index);
+        }
+        int paint = data.getInt(offset);
+        int count = data.getInt(offset + 4);
+        int flags = version == 1 ? 0 : data.getInt(offset + 8);
+        boolean weighted = (flags & DocumentFormat.STROKE_WEIGHTS) != 0;
+        if (paint < 0 || paint >= paints.length || count < 0
+                || offset + headerSize + count * (weighted ? 12L : 8L) > strokeTable) {
+            throw new IOException("Corrupt stroke " + index);
+        }
+
+        float[] coords = new float[count * 2];
+        float[] weights = weighted ? new float[count] : null;
+        ByteBuffer record = data.duplicate().order(DocumentFormat.ORDER);
+        record.position(offset + headerSize);
+        FloatBuffer floats = record.asFloatBuffer();
+        floats.get(coords);
+        if (weights != null) {
+            floats.get(weights);
+        }
+
+        return StrokeAction.withSharedPaint(new StrokePoints(coords, weights, count), paints[paint]);
+    }
+
+    /**
+     * Decodes the history, including the strokes it references.
+     *
+     * @return Actions in the history, oldest first, undone actions last. None are done yet.
+     * @throws IOException if the history is corrupt.
+     */
+    public List<AbstractReversibleAction> readHistory() throws IOException {
+        List<AbstractReversibleAction> actions = new ArrayList<>(historyCount);
+        int position = history;
+        for (int i = 0; i < historyCount; i++) {
+            byte type = data.get(position);
+            int value = data.getInt(position + 1);
+            position += 5;
+
+            switch (type) {
+                case DocumentFormat.TYPE_STROKE:
+                    if (value < bakedCount || value >= strokeCount) {
+                        throw new IOException("Corrupt history: stroke " + value + " of " + strokeCount);
+                    }
+                    actions.add(readStroke(value));
+                    break;
+                case DocumentFormat.TYPE_COLOR:
+                    actions.add(new ChangeColorAction(value));
+                    break;
+                case DocumentFormat.TYPE_THICKNESS:
+                    actions.add(new ChangeThicknessAction(value));
+                    break;
+                default:
+                    throw new IOException("Unknown action type " + type);
+            }
+        }
+        return actions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static int checkOffset(long offset, int limit) throws IOException {
+        if (offset < DocumentFormat.HEADER_SIZE || offset > limit) {
+            throw new IOException("Corrupt document offset: " + offset);
+        }
+        return (int) offset;
+    }
+}
@@ -0,0 +1,177 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Writes a DrawingDocument in the binary document format. The document is streamed through a
+ * fixed-size buffer in one pass, so writing never holds more than one buffer's worth of output.
+ * Strokes drawn with the same color and thickness share one entry in the paint table.
+ *
+ * @see DocumentFormat
+ */
+public final class DrawingDocumentWriter {
+    private DrawingDocumentWriter() {}
+
+    /**
+     * Writes a document to a file, replacing it if it exists.
+     *
+     * @param document  Document to write.
+     * @param file  File to write to.
+     * @return Number of bytes written.
+     * @throws IOException if writing fails, or the history contains an unsupported action.
+     */
+    public static long write(DrawingDocument document, File file) throws IOException {
+        return write(document, file, (short) 0);
+    }
+
+    /**
+     * Writes a document to a file, as write(DrawingDocument, File), with a generation in its
+     * header.
+     *
+     * @param generation    Generation of the document, for an autosave base.
+     */
+    static long write(DrawingDocument document, File file, short generation) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            return write(document, channel, generation);
+        }
+    }
+
+    /**
+     * Writes a document to a channel.
+     *
+     * @param document  Document to write.
+     * @param channel   Channel to write to. Not closed.
+     * @return Number of bytes written.
+     * @throws IOException if writing fails, or the history contains an unsupported action.
+     */
+    public static long write(DrawingDocument document, WritableByteChannel channel) throws IOException {
+        return write(document, channel, (short) 0);
+    }
+
+    private static long write(DrawingDocument document, WritableByteChannel channel, short generation)
+            throws IOException {
+        ChannelOutput out = new ChannelOutput(channel);
+        PaintTable paints = new PaintTable();
+
+        out.putInt(DocumentFormat.MAGIC);
+        out.putShort(DocumentFormat.VERSION);
+        out.putShort(generation);
+
+        // Strokes: baked strokes first, then the ones referenced by the history.
+        List<Long> offsets = new ArrayList<>();
+        for (StrokeAction stroke : document.getBakedStrokes()) {
+            offsets.add(out.position());
+            writeStroke(out, stroke, paints);
+        }
+        Map<StrokeAction, Integer> historyStrokes = new IdentityHashMap<>();
+        for (AbstractReversibleAction action : document.getHistory()) {
+            if (action instanceof StrokeAction && !historyStrokes.containsKey(action)) {
+                historyStrokes.put((StrokeAction) action, offsets.size());
+                offsets.add(out.position());
+                writeStroke(out, (StrokeAction) action, paints);
+            }
+        }
+
+        long strokeTable = out.position();
+        for (long offset : offsets) {
+            out.putLong(offset);
+        }
+
+        int basePaint = paints.intern(document.getBaseColor(), document.getBaseThickness());
+        int currentPaint = paints.intern(document.getCurrentColor(), document.getCurrentThickness());
+        long paintTable = out.position();
+        paints.write(out);
+
+        long history = out.position();
+        for (AbstractReversibleAction action : document.getHistory()) {
+            if (action instanceof StrokeAction) {
+                out.putByte(DocumentFormat.TYPE_STROKE);
+                out.putInt(historyStrokes.get(action));
+            } else if (action instanceof ChangeColorAction) {
+                out.putByte(DocumentFormat.TYPE_COLOR);
+                out.putInt(((ChangeColorAction) action).getColor());
+            } else if (action instanceof ChangeThicknessAction) {
+                out.putByte(DocumentFormat.TYPE_THICKNESS);
+                out.putInt(((ChangeThicknessAction) action).getThickness());
+            } else {
+                throw new IOException("Cannot save action: " + action);
+            }
+        }
+
+        out.putLong(strokeTable);
+        out.putLong(paintTable);
+        out.putLong(history);
+        out.putInt(offsets.size());
+        out.putInt(document.getBakedStrokes().size());
+        out.putInt(paints.size());
+        out.putInt(document.getHistory().size());
+        out.putInt(document.getUndoneCount());
+        out.putInt(basePaint);
+        out.putInt(currentPaint);
+        out.putInt(DocumentFormat.MAGIC);
+
+        out.flush();
+        return out.position();
+    }
+
+    private static void writeStroke(ChannelOutput out, StrokeAction stroke, PaintTable paints) throws IOException {
+        Paint paint = stroke.getPaint();
+        StrokePoints points = stroke.getPoints();
+
+        out.putInt(paints.intern(paint.getColor(), paint.getStrokeWidth()));
+        out.putInt(points.size());
+        out.putInt(points.hasWeights() ? DocumentFormat.STROKE_WEIGHTS : 0);
+        out.putFloats(points.getCoords(), 0, points.size() * 2);
+        if (points.hasWeights()) {
+            out.putFloats(points.getWeights(), 0, points.size());
+        }
+    }
+
+    /**
+     * Assigns each distinct (color, thickness) pair an index, in order of first use.
+     */
+    private static final class PaintTable {
+        private final Map<Long, Integer> indices = new HashMap<>();
+        private final List<Long> keys = new ArrayList<>();
+
+        int intern(int color, float thickness) {
+            long key = ((long) color << 32) | (Float.floatToIntBits(thickness) & 0xFFFFFFFFL);
+            Integer index = indices.get(key);
+            if (index == null) {
+                index = keys.size();
+                indices.put(key, index);
+                keys.add(key);
+            }
+            return index;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        void write(ChannelOutput out) throws IOException {
+            for (long key : keys) {
+                out.putInt((int) (key >>> 32));
+                out.putFloat(Float.intBitsToFloat((int) key));
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package cse340.undo.document;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokeOutline;
+import cse340.undo.actions.StrokePoints;
+
+/**
+ * Exports strokes as an SVG image. Path data is formatted straight into a fixed-size byte buffer
+ * which is written to the output whenever it fills, so memory use doesn't grow with the drawing.
+ *
+ * Consecutive strokes with the same color and thickness, i.e. those drawn between two
+ * ChangeColorAction or ChangeThicknessAction, are grouped under one element carrying the paint,
+ * which keeps the output small. Each stroke's path has the same curves as StrokePoints#toPath().
+ * Strokes whose width varies are written as their filled outline instead, as StrokeOutline
+ * builds it.
+ */
+public final class SvgExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Longest formatted number, plus room for the command letter and separators. */
+    private static final int MAX_TOKEN = 32;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long written;
+
+    private SvgExporter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Exports strokes to a file.
+     *
+     * @param strokes   Strokes in drawing order.
+     * @param width Width of the image.
+     * @param height    Height of the image.
+     * @param file  File to write. Replaced if it exists.
+     * @return Number of bytes written.
+     * @throws IOException if the file could not be written.
+     */
+    public static long export(List<StrokeAction> strokes, int width, int height, File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            return export(strokes, width, height, out);
+        }
+    }
+
+    /**
+     * Exports strokes to a stream. The stream is not closed.
+     *
+     * @param strokes   Strokes in drawing order.
+     * @param width Width of the image.
+     * @param height    Height of the image.
+     * @param out   Stream to write to. Needs no buffering of its own.
+     * @return Number of bytes written.
+     * @throws IOException if the stream could not be written.
+     */
+    public static long export(List<StrokeAction> strokes, int width, int height, OutputStream out) throws IOException {
+        SvgExporter exporter = new SvgExporter(out);
+        exporter.writeDocument(strokes, width, height);
+        return exporter.written;
+    }
+
+    private void writeDocument(List<StrokeAction> strokes, int width, int height) throws IOException {
+        ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        number(width);
+        ascii("\" height=\"");
+        number(height);
+        ascii("\" viewBox=\"0 0 ");
+        number(width);
+        ascii(" ");
+        number(height);
+        ascii("\" fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+
+        Paint group = null;
+        for (int i = 0; i < strokes.size(); i++) {
+            StrokeAction stroke = strokes.get(i);
+            Paint paint = stroke.getPaint();
+            if (group == null || !samePaint(group, paint)) {
+                if (group != null) {
+                    ascii("</g>\n");
+                }
+                startGroup(paint);
+                group = paint;
+            }
+            if (stroke.isVariableWidth()) {
+                outline(stroke.getPoints(), paint);
+            } else {
+                path(stroke.getPoints());
+            }
+        }
+        if (group != null) {
+            ascii("</g>\n");
+        }
+        ascii("</svg>\n");
+        flush();
+    }
+
+    private static boolean samePaint(Paint a, Paint b) {
+        return a == b || (a.getColor() == b.getColor() && a.getStrokeWidth() == b.getStrokeWidth());
+    }
+
+    private void startGroup(Paint paint) throws IOException {
+        int color = paint.getColor();
+        ascii("<g stroke=\"#");
+        hexByte(Color.red(color));
+        hexByte(Color.green(color));
+        hexByte(Color.blue(color));
+        if (Color.alpha(color) != 0xFF) {
+            ascii("\" stroke-opacity=\"");
+            number(Color.alpha(color) / 255f);
+        }
+        ascii("\" stroke-width=\"");
+        number(paint.getStrokeWidth());
+        ascii("\">\n");
+    }
+
+    /**
+     * Writes a path element: a move to the first point, then a quadratic curve through each
+     * following point's predecessor to the midpoint between the two.
+     */
+    private void path(StrokePoints points) throws IOException {
+        int size = points.size();
+        if (size == 0) {
+            return;
+        }
+        float[] coords = points.getCoords();
+
+        ascii("<path d=\"M");
+        number(coords[0]);
+        space();
+        number(coords[1]);
+        for (int i = 1; i < size; i++) {
+            float lastX = coords[i * 2 - 2], lastY = coords[i * 2 - 1];
+            float x = coords[i * 2], y = coords[i * 2 + 1];
+            ensure(MAX_TOKEN * 4);
+            buffer[position++] = 'Q';
+            number(lastX);
+            space();
+            number(lastY);
+            space();
+            number((x + lastX) / 2);
+            space();
+            number((y + lastY) / 2);
+        }
+        ascii("\"/>\n");
+    }
+
+    /**
+     * Writes a filled path element outlining a variable-width stroke: along its left side, around
+     * the end, back along its right side and around the start.
+     */
+    private void outline(StrokePoints points, Paint paint) throws IOException {
+        int size = points.size();
+        if (size == 0) {
+            return;
+        }
+        float[] coords = points.getCoords();
+        float width = paint.getStrokeWidth();
+
+        int color = paint.getColor();
+        ascii("<path stroke=\"none\" fill=\"#");
+        hexByte(Color.red(color));
+        hexByte(Color.green(color));
+        hexByte(Color.blue(color));
+        if (Color.alpha(color) != 0xFF) {
+            ascii("\" fill-opacity=\"");
+            number(Color.alpha(color) / 255f);
+        }
+        ascii("\" d=\"M");
+        if (size == 1) {
+            float radius = StrokeOutline.radius(points, 0, width);
+            number(coords[0] + radius);
+            space();
+            number(coords[1]);
+            arc(radius, coords[0] - radius, coords[1]);
+            arc(radius, coords[0] + radius, coords[1]);
+        } else {
+            float[] sides = StrokeOutline.sides(points, width);
+            int right = size * 2;
+            number(sides[0]);
+            space();
+            number(sides[1]);
+            for (int i = 1; i < size; i++) {
+                lineTo(sides[i * 2], sides[i * 2 + 1]);
+            }
+            arc(StrokeOutline.radius(points, size - 1, width), sides[right + size * 2 - 2], sides[right + size * 2 - 1]);
+            for (int i = size - 2; i >= 0; i--) {
+                lineTo(sides[right + i * 2], sides[right + i * 2 + 1]);
+            }
+            arc(StrokeOutline.radius(points, 0, width), sides[0], sides[1]);
+        }
+        ascii("Z\"/>\n");
+    }
+
+    private void lineTo(float x, float y) throws IOException {
+        ensure(MAX_TOKEN * 2);
+        buffer[position++] = 'L';
+        number(x);
+        space();
+        number(y);
+    }
+
+    /**
+     * Writes a half circle to a point, turning counter-clockwise on screen as StrokeOutline does.
+     */
+    private void arc(float radius, float x, float y) throws IOException {
+        ensure(MAX_TOKEN * 4);
+        buffer[position++] = 'A';
+        number(radius);
+        space();
+        number(radius);
+        ascii(" 0 0 0 ");
+        number(x);
+        space();
+        number(y);
+    }
+
+    private void space() throws IOException {
+        ensure(1);
+        buffer[position++] = ' ';
+    }
+
+    private void hexByte(int value) throws IOException {
+        ensure(2);
+        buffer[position++] = HEX[(value >> 4) & 0xF];
+        buffer[position++] = HEX[value & 0xF];
+    }
+
+    /**
+     * Writes a number rounded to two decimal places, without trailing zeros.
+     */
+    private void number(float value) throws IOException {
+        ensure(MAX_TOKEN);
+        long hundredths = Math.round(value * 100.0);
+        if (hundredths < 0) {
+            buffer[position++] = '-';
+            hundredths = -hundredths;
+        }
+        writeDigits(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        if (fraction != 0) {
+            buffer[position++] = '.';
+            buffer[position++] = (byte) ('0' + fraction / 10);
+            if (fraction % 10 != 0) {
+                buffer[position++] = (byte) ('0' + fraction % 10);
+            }
+        }
+    }
+
+    private void number(int value) throws IOException {
+        ensure(MAX_TOKEN);
+        if (value < 0) {
+            buffer[position++] = '-';
+            writeDigits(-(long) value);
+        } else {
+            writeDigits(value);
+        }
+    }
+
+    /**
+     * Writes a non-negative number's decimal digits. The caller must ensure there is room.
+     */
+    private void writeDigits(long value) {
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        // Digits were written least significant first.
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void ascii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            ensure(1);
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Makes room for at least count bytes in the buffer, writing it out if needed.
+     */
+    private void ensure(int count) throws IOException {
+        if (BUFFER_SIZE - position < count) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        written += position;
+        position = 0;
+    }
+}
@@ -6,45 +6,12 @@ import cse340.undo.actions.AbstractReversibleAction;
  * Keeps a history of actions that have been done and undone. When undo is called, the most recently
  * added action (via addAction) should be returned. When redo is called, the most recently undone
  * action should be returned.
+ *
+ * The history itself lives in the Android-free history module; this is its use for the app's
+ * reversible actions. It can be searched by type of action, time and area, such as for the color
+ * changes of the last minute or the strokes touching a rectangle between two steps.
+ *
+ * @see IndexedHistory
  */
-public interface AbstractStackHistory {
-    /**
-     * Add a reversible event to the history.
-     *
-     * @param action    Reversible action to be added.
-     */
-    void addAction(AbstractReversibleAction action);
-
-    /**
-     * Undoes an action.
-     *
-     * @return null if there is nothing to undo, otherwise the action to be undone.
-     */
-    AbstractReversibleAction undo();
-
-    /**
-     * Redoes an action.
-     *
-     * @return null if there is nothing to redo, otherwise the action to be redone.
-     */
-    AbstractReversibleAction redo();
-
-    /**
-     * Clears the history.
-     */
-    void clear();
-
-    /**
-     * Is there anything that can be undone?
-     *
-     * @return True if can undo any actions, false otherwise.
-     */
-    boolean canUndo();
-
-    /**
-     * Is there anything that can be done?
-     *
-     * @return True if can redo any actions, false otherwise.
-     */
-    boolean canRedo();
+public interface AbstractStackHistory extends IndexedHistory<AbstractReversibleAction> {
 }
@@ -0,0 +1,22 @@
+package cse340.undo.render;
+
+import android.graphics.Bitmap;
+
+/**
+ * Receives the tiles of an image rendered by TiledRenderer.
+ *
+ * @see TiledRenderer#render(android.graphics.RectF, float, TileSink)
+ */
+public interface TileSink {
+    /**
+     * Called once for each tile, in no particular order and from any thread, but never
+     * concurrently. The bitmap is reused once this returns, so copy anything needed from it.
+     *
+     * @param tile  Bitmap holding the tile in its top-left width x height pixels.
+     * @param x Left edge of the tile in the image, in pixels.
+     * @param y Top edge of the tile in the image, in pixels.
+     * @param width Width of the tile, in pixels. Less than the bitmap width on the right edge.
+     * @param height    Height of the tile, in pixels. Less than the bitmap height on the bottom edge.
+     */
+    void onTile(Bitmap tile, int x, int y, int width, int height);
+}
@@ -0,0 +1,311 @@
+package cse340.undo.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cse340.undo.actions.StrokeAction;
+
+/**
+ * Renders strokes offscreen, without any View or Activity. The image is split into square tiles
+ * which are rendered in parallel on a fork-join pool, each drawing only the strokes overlapping
+ * it. Tiles are either assembled into one Bitmap or streamed to a TileSink, in which case only
+ * one tile per worker thread is ever in memory, however large the image.
+ *
+ * A renderer takes a snapshot of the strokes it is given, which later transforms of the strokes
+ * leave as it was, so the snapshot may be taken on the UI thread and rendered from any other.
+ */
+public final class TiledRenderer {
+    private static final String LOG_TAG = "TiledRenderer";
+
+    /** Default tile width and height, in pixels. */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final StrokeAction[] strokes;
+
+    /** Bounds of each stroke, including its width, as left, top, right, bottom. */
+    private final float[] bounds;
+
+    /** Union of all stroke bounds. Empty if there are no strokes. */
+    private final RectF drawingBounds = new RectF();
+
+    private final int tileSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a renderer for the given strokes, using the default tile size and the common pool.
+     *
+     * @param strokes   Strokes to render, in drawing order.
+     */
+    public TiledRenderer(List<StrokeAction> strokes) {
+        this(strokes, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a renderer for the given strokes.
+     *
+     * @param strokes   Strokes to render, in drawing order.
+     * @param tileSize  Tile width and height, in pixels.
+     * @param pool  Pool rendering the tiles.
+     * @throws IllegalArgumentException if tileSize is not positive.
+     */
+    public TiledRenderer(List<StrokeAction> strokes, int tileSize, ForkJoinPool pool) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.strokes = new StrokeAction[strokes.size()];
+        for (int i = 0; i < this.strokes.length; i++) {
+            this.strokes[i] = strokes.get(i).snapshot();
+        }
+        this.tileSize = tileSize;
+        this.pool = pool;
+
+        bounds = new float[this.strokes.length * 4];
+        RectF stroke = new RectF();
+        for (int i = 0; i < this.strokes.length; i++) {
+            this.strokes[i].getBounds(stroke);
+
+            bounds[i * 4] = stroke.left;
+            bounds[i * 4 + 1] = stroke.top;
+            bounds[i * 4 + 2] = stroke.right;
+            bounds[i * 4 + 3] = stroke.bottom;
+            if (i == 0) {
+                drawingBounds.set(stroke);
+            } else {
+                drawingBounds.union(stroke);
+            }
+        }
+    }
+
+    /**
+     * @return Smallest rectangle containing every stroke, including stroke widths.
+     */
+    public RectF getBounds() {
+        return new RectF(drawingBounds);
+    }
+
+    /**
+     * Renders the whole drawing scaled to fit within a square, keeping its aspect ratio.
+     *
+     * @param maxSize   Largest width and height of the thumbnail, in pixels.
+     * @return The thumbnail, or null if there are no strokes.
+     */
+    public Bitmap renderThumbnail(int maxSize) {
+        if (drawingBounds.isEmpty()) {
+            return null;
+        }
+        float scale = maxSize / Math.max(drawingBounds.width(), drawingBounds.height());
+        return render(drawingBounds, scale);
+    }
+
+    /**
+     * Renders a region of the drawing into a new Bitmap.
+     *
+     * @param region    Region to render, in drawing coordinates.
+     * @param scale Pixels per drawing unit.
+     * @return Image of size ceil(region.width() * scale) x ceil(region.height() * scale).
+     */
+    public Bitmap render(RectF region, float scale) {
+        Bitmap image = Bitmap.createBitmap(imageSize(region.width(), scale),
+                imageSize(region.height(), scale), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(image);
+        Rect src = new Rect();
+        Rect dst = new Rect();
+        render(region, scale, (tile, x, y, width, height) -> {
+            src.set(0, 0, width, height);
+            dst.set(x, y, x + width, y + height);
+            canvas.drawBitmap(tile, src, dst, null);
+        });
+        return image;
+    }
+
+    /**
+     * Renders a region of the drawing tile by tile, passing each tile to the sink as soon as it
+     * is ready. Blocks until every tile has been passed to the sink.
+     *
+     * @param region    Region to render, in drawing coordinates.
+     * @param scale Pixels per drawing unit.
+     * @param sink  Receiver for the tiles.
+     * @throws IllegalArgumentException if scale is not positive.
+     */
+    public void render(RectF region, float scale, TileSink sink) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        long start = SystemClock.uptimeMillis();
+
+        int width = imageSize(region.width(), scale);
+        int height = imageSize(region.height(), scale);
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        if (columns == 0 || rows == 0) {
+            return;
+        }
+
+        Job job = new Job(region, scale, width, height, columns, rows, sink);
+        pool.invoke(new TileTask(job, 0, columns * rows));
+        Log.i(LOG_TAG, "Rendered " + strokes.length + " strokes in " + columns * rows + " tiles of "
+                + width + "x" + height + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    private static int imageSize(float size, float scale) {
+        return Math.max(0, (int) Math.ceil(size * scale));
+    }
+
+    /**
+     * A tile bitmap and a canvas drawing into it, reused from tile to tile.
+     */
+    private static final class Tile {
+        final Bitmap bitmap;
+        final Canvas canvas;
+
+        Tile(int size) {
+            bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+        }
+    }
+
+    /**
+     * State shared by every tile of one render.
+     */
+    private final class Job {
+        final RectF region;
+        final float scale;
+        final int width, height, columns, rows;
+        final TileSink sink;
+
+        /** Indices of the strokes overlapping each tile, in drawing order. */
+        final int[][] tileStrokes;
+
+        /** Tiles not in use; at most one per worker is ever created. */
+        final BlockingQueue<Tile> tiles;
+
+        Job(RectF region, float scale, int width, int height, int columns, int rows, TileSink sink) {
+            this.region = new RectF(region);
+            this.scale = scale;
+            this.width = width;
+            this.height = height;
+            this.columns = columns;
+            this.rows = rows;
+            this.sink = sink;
+            this.tiles = new ArrayBlockingQueue<>(pool.getParallelism() + 1);
+            this.tileStrokes = binStrokes();
+        }
+
+        /**
+         * Sorts the strokes into the tiles they overlap, so each tile only looks at its own.
+         */
+        private int[][] binStrokes() {
+            float tileUnits = tileSize / scale;
+            int[] counts = new int[columns * rows];
+            int[] cells = new int[strokes.length * 4];
+            for (int i = 0; i < strokes.length; i++) {
+                float left = bounds[i * 4], top = bounds[i * 4 + 1];
+                float right = bounds[i * 4 + 2], bottom = bounds[i * 4 + 3];
+                if (right < region.left || left > region.right
+                        || bottom < region.top || top > region.bottom) {
+                    // Outside the region: an empty column range, so no cell is visited.
+                    cells[i * 4] = 1;
+                    continue;
+                }
+                cells[i * 4] = clamp((int) ((left - region.left) / tileUnits), columns);
+                cells[i * 4 + 1] = clamp((int) ((top - region.top) / tileUnits), rows);
+                cells[i * 4 + 2] = clamp((int) ((right - region.left) / tileUnits), columns);
+                cells[i * 4 + 3] = clamp((int) ((bottom - region.top) / tileUnits), rows);
+                forEachCell(cells, i, cell -> counts[cell]++);
+            }
+
+            int[][] bins = new int[counts.length][];
+            for (int cell = 0; cell < counts.length; cell++) {
+                bins[cell] = new int[counts[cell]];
+                counts[cell] = 0;
+            }
+            for (int i = 0; i < strokes.length; i++) {
+                final int stroke = i;
+                forEachCell(cells, i, cell -> bins[cell][counts[cell]++] = stroke);
+            }
+            return bins;
+        }
+
+        private void forEachCell(int[] cells, int stroke, CellVisitor visitor) {
+            for (int row = cells[stroke * 4 + 1]; row <= cells[stroke * 4 + 3]; row++) {
+                for (int column = cells[stroke * 4]; column <= cells[stroke * 4 + 2]; column++) {
+                    visitor.visit(row * columns + column);
+                }
+            }
+        }
+
+        /**
+         * Renders one tile and hands it to the sink.
+         */
+        void renderTile(int index) {
+            Tile tile = tiles.poll();
+            if (tile == null) {
+                tile = new Tile(tileSize);
+            }
+
+            int column = index % columns;
+            int row = index / columns;
+            int x = column * tileSize;
+            int y = row * tileSize;
+
+            Canvas canvas = tile.canvas;
+            tile.bitmap.eraseColor(Color.TRANSPARENT);
+            canvas.save();
+            canvas.translate(-x, -y);
+            canvas.scale(scale, scale);
+            canvas.translate(-region.left, -region.top);
+            for (int stroke : tileStrokes[index]) {
+                strokes[stroke].draw(canvas);
+            }
+            canvas.restore();
+
+            synchronized (sink) {
+                sink.onTile(tile.bitmap, x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+            }
+            tiles.offer(tile);
+        }
+    }
+
+    private interface CellVisitor {
+        void visit(int cell);
+    }
+
+    private static int clamp(int cell, int count) {
+        return Math.max(0, Math.min(count - 1, cell));
+    }
+
+    /**
+     * Renders a range of tiles, splitting it in half until there is one tile left.
+     */
+    private static final class TileTask extends RecursiveAction {
+        private final Job job;
+        private final int from, to;
+
+        TileTask(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                job.renderTile(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(job, from, mid), new TileTask(job, mid, to));
+        }
+    }
+}
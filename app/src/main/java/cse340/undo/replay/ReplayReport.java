@@ -0,0 +1,99 @@
+package cse340.undo.replay;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Measurements from one replay of a recorded session.
+ *
+ * @see TouchReplayer
+ */
+public final class ReplayReport {
+    private final int events;
+    private final long totalNanos;
+    private final long[] commitNanos;
+    private final long allocations;
+    private final long allocatedBytes;
+    private final int navigationErrors;
+
+    ReplayReport(int events, long totalNanos, long[] commitNanos, long allocations, long allocatedBytes,
+                 int navigationErrors) {
+        this.events = events;
+        this.totalNanos = totalNanos;
+        this.commitNanos = commitNanos;
+        this.allocations = allocations;
+        this.allocatedBytes = allocatedBytes;
+        this.navigationErrors = navigationErrors;
+    }
+
+    /**
+     * @return Number of events replayed.
+     */
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * @return Time from the first event to the last, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return Time taken to commit each stroke, in nanoseconds, in the order they were drawn.
+     */
+    public long[] getCommitNanos() {
+        return commitNanos.clone();
+    }
+
+    /**
+     * @return Number of objects allocated on the UI thread during the replay.
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * @return Bytes allocated on the UI thread during the replay.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return Number of gestures of more than one finger, which pan and zoom, after which the
+     *         number of strokes had changed. Should be 0.
+     */
+    public int getNavigationErrors() {
+        return navigationErrors;
+    }
+
+    /**
+     * Returns a percentile of the stroke commit times.
+     *
+     * @param percentile    Percentile from 0 to 100.
+     * @return Commit time in nanoseconds, or 0 if no stroke was committed.
+     */
+    public long getCommitPercentile(double percentile) {
+        if (commitNanos.length == 0) {
+            return 0;
+        }
+        long[] sorted = commitNanos.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return events + " events in " + totalNanos / 1000000 + " ms, "
+                + commitNanos.length + " strokes committed (median "
+                + getCommitPercentile(50) / 1000 + " us, p95 " + getCommitPercentile(95) / 1000
+                + " us, max " + getCommitPercentile(100) / 1000 + " us), "
+                + allocations + " allocations (" + allocatedBytes + " bytes), "
+                + navigationErrors + " pans or zooms changing the strokes";
+    }
+}
@@ -0,0 +1,169 @@
+package cse340.undo.replay;
+
+import android.os.SystemClock;
+import android.support.annotation.ColorInt;
+import android.view.MotionEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records a drawing session: the touch events reaching DrawingView and the menu actions (color,
+ * thickness, undo and redo) taken between them, each with the time since recording started. The
+ * recording is kept in memory and written to a file when the session ends, so recording never
+ * touches the disk on the UI thread while drawing.
+ *
+ * Each touch keeps what DrawingView reads from it: the position of every finger down, which pans
+ * and zooms when there is more than one; its pressure, which sets the stroke's width; and its
+ * time since the first finger went down, which sets the smoothing. Replayed events keep the
+ * recorded times between them, however fast they are replayed, so a replay draws the same
+ * strokes at any speed.
+ *
+ * <pre>
+ * HEADER   int magic, short version, short reserved
+ * RECORDS  byte type, int time in ms, then:
+ *            TOUCH      byte action, byte action index, int time since down in ms,
+ *                       byte pointer count, then per pointer: byte id, float x, float y,
+ *                       float pressure
+ *            COLOR      int color
+ *            THICKNESS  int thickness
+ *            UNDO/REDO  nothing
+ * </pre>
+ *
+ * @see TouchReplayer
+ */
+public final class TouchRecorder {
+    static final int MAGIC = 0x52444E55; // "UNDR"
+    static final short VERSION = 3;
+
+    static final byte TOUCH = 1;
+    static final byte COLOR = 2;
+    static final byte THICKNESS = 3;
+    static final byte UNDO = 4;
+    static final byte REDO = 5;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final long start = SystemClock.uptimeMillis();
+    private int count;
+
+    /**
+     * Starts a new, empty recording.
+     */
+    public TouchRecorder() {
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+        } catch (IOException e) {
+            // Writing to memory never fails.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records a touch event. Events other than down, move, up and cancel, of the first finger or
+     * any other, are ignored.
+     */
+    public void onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action != MotionEvent.ACTION_DOWN && action != MotionEvent.ACTION_MOVE
+                && action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL
+                && action != MotionEvent.ACTION_POINTER_DOWN && action != MotionEvent.ACTION_POINTER_UP) {
+            return;
+        }
+        try {
+            record(TOUCH, event.getEventTime());
+            out.writeByte(action);
+            out.writeByte(event.getActionIndex());
+            out.writeInt((int) (event.getEventTime() - event.getDownTime()));
+            int pointers = event.getPointerCount();
+            out.writeByte(pointers);
+            for (int i = 0; i < pointers; i++) {
+                out.writeByte(event.getPointerId(i));
+                out.writeFloat(event.getX(i));
+                out.writeFloat(event.getY(i));
+                out.writeFloat(event.getPressure(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records a change of color chosen from a menu.
+     */
+    public void onColor(@ColorInt int color) {
+        recordValue(COLOR, color);
+    }
+
+    /**
+     * Records a change of thickness chosen from a menu.
+     */
+    public void onThickness(int thickness) {
+        recordValue(THICKNESS, thickness);
+    }
+
+    /**
+     * Records an undo.
+     */
+    public void onUndo() {
+        try {
+            record(UNDO, SystemClock.uptimeMillis());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records a redo.
+     */
+    public void onRedo() {
+        try {
+            record(REDO, SystemClock.uptimeMillis());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Number of events recorded so far.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Writes the recording to a file.
+     *
+     * @param file  File to write. Replaced if it exists.
+     * @return Number of bytes written.
+     * @throws IOException if the file could not be written.
+     */
+    public long writeTo(File file) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            bytes.writeTo(stream);
+        }
+        return bytes.size();
+    }
+
+    private void recordValue(byte type, int value) {
+        try {
+            record(type, SystemClock.uptimeMillis());
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(byte type, long uptime) throws IOException {
+        out.writeByte(type);
+        out.writeInt((int) Math.max(0, uptime - start));
+        count++;
+    }
+}
@@ -0,0 +1,381 @@
+package cse340.undo.replay;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.ColorInt;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plays back a session recorded by TouchRecorder on the UI thread, either at the recorded pace or
+ * faster, and measures it: total time, the time taken to commit each stroke (handling its up
+ * event) and the number of objects allocated on the UI thread.
+ *
+ * It also checks that gestures of more than one finger, which pan and zoom, leave the strokes as
+ * they were; the report counts those which didn't.
+ *
+ * @see TouchRecorder
+ */
+public final class TouchReplayer {
+    /**
+     * Longest time spent dispatching events before yielding to the UI thread, when replaying
+     * faster than the events are due.
+     */
+    private static final long MAX_STEP_MILLIS = 8;
+
+    /**
+     * Receives the replayed session.
+     */
+    public interface Target {
+        boolean onTouchEvent(MotionEvent event);
+
+        /**
+         * @return Number of strokes drawn, or waiting to be.
+         */
+        int getStrokeCount();
+
+        void onColor(@ColorInt int color);
+
+        void onThickness(int thickness);
+
+        void onUndo();
+
+        void onRedo();
+    }
+
+    /**
+     * Called once the whole session has been replayed.
+     */
+    public interface OnFinishedListener {
+        void onFinished(ReplayReport report);
+    }
+
+    /** The recording, one entry per event; a touch's value is its action, with its index. */
+    private final byte[] types;
+    private final int[] times;
+    private final int[] values;
+
+    /** Touch time since down, and where the touch's pointers start and how many there are. */
+    private final int[] sinceDown;
+    private final int[] firstPointers;
+    private final byte[] pointerCounts;
+    private final int count;
+
+    /** Pointers of every touch, one entry per pointer. */
+    private final Pointers pointers;
+
+    /** Pointers of the touch being dispatched, reused for every touch. */
+    private final MotionEvent.PointerProperties[] properties;
+    private final MotionEvent.PointerCoords[] coords;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable step = this::step;
+
+    private Target target;
+    private OnFinishedListener listener;
+    private float speed;
+
+    /** Progress of the current replay. */
+    private int next;
+    private long startUptime, startNanos, downTime;
+    private long[] commitNanos;
+    private int strokes;
+    private boolean running;
+
+    /**
+     * Strokes when the current gesture started, whether it has had more than one finger, and the
+     * number of such gestures which changed the strokes.
+     */
+    private int gestureStrokes;
+    private boolean navigating;
+    private int navigationErrors;
+
+    /** Pointers recorded, growing as they are loaded. */
+    private static final class Pointers {
+        byte[] ids = new byte[64];
+        float[] xs = new float[64], ys = new float[64], pressures = new float[64];
+        int size;
+        int maxPerTouch = 1;
+
+        void add(byte id, float x, float y, float pressure) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                pressures = Arrays.copyOf(pressures, size * 2);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            pressures[size] = pressure;
+            size++;
+        }
+    }
+
+    private TouchReplayer(byte[] types, int[] times, int[] values, int[] sinceDown,
+                          int[] firstPointers, byte[] pointerCounts, Pointers pointers, int count) {
+        this.types = types;
+        this.times = times;
+        this.values = values;
+        this.sinceDown = sinceDown;
+        this.firstPointers = firstPointers;
+        this.pointerCounts = pointerCounts;
+        this.pointers = pointers;
+        this.count = count;
+
+        properties = new MotionEvent.PointerProperties[pointers.maxPerTouch];
+        coords = new MotionEvent.PointerCoords[pointers.maxPerTouch];
+        for (int i = 0; i < pointers.maxPerTouch; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].size = 1;
+        }
+    }
+
+    /**
+     * Loads a recording. A recording which ends with a partial event is played up to that event.
+     *
+     * @param file  File written by TouchRecorder#writeTo(File).
+     * @return Replayer for the recording.
+     * @throws IOException if the file could not be read or is not a recording.
+     */
+    public static TouchReplayer load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != TouchRecorder.MAGIC) {
+                throw new IOException("Not a touch recording");
+            }
+            short version = in.readShort();
+            if (version != TouchRecorder.VERSION) {
+                throw new IOException("Unsupported recording version: " + version);
+            }
+            in.readShort();
+
+            // Single finger touches are most of a recording, so this is usually enough.
+            int capacity = (int) Math.max(16, file.length() / 24);
+            byte[] types = new byte[capacity];
+            int[] times = new int[capacity];
+            int[] values = new int[capacity];
+            int[] sinceDown = new int[capacity];
+            int[] firstPointers = new int[capacity];
+            byte[] pointerCounts = new byte[capacity];
+            Pointers pointers = new Pointers();
+            int count = 0;
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (count == capacity) {
+                        capacity *= 2;
+                        types = Arrays.copyOf(types, capacity);
+                        times = Arrays.copyOf(times, capacity);
+                        values = Arrays.copyOf(values, capacity);
+                        sinceDown = Arrays.copyOf(sinceDown, capacity);
+                        firstPointers = Arrays.copyOf(firstPointers, capacity);
+                        pointerCounts = Arrays.copyOf(pointerCounts, capacity);
+                    }
+                    types[count] = type;
+                    times[count] = in.readInt();
+                    switch (type) {
+                        case TouchRecorder.TOUCH:
+                            int action = in.readByte();
+                            int actionIndex = in.readByte();
+                            values[count] = action | actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+                            sinceDown[count] = in.readInt();
+                            byte pointerCount = in.readByte();
+                            if (pointerCount < 1 || actionIndex < 0 || actionIndex >= pointerCount) {
+                                throw new IOException("Corrupt touch with " + pointerCount + " pointers");
+                            }
+                            firstPointers[count] = pointers.size;
+                            pointerCounts[count] = pointerCount;
+                            for (int i = 0; i < pointerCount; i++) {
+                                pointers.add(in.readByte(), in.readFloat(), in.readFloat(), in.readFloat());
+                            }
+                            pointers.maxPerTouch = Math.max(pointers.maxPerTouch, pointerCount);
+                            break;
+                        case TouchRecorder.COLOR:
+                        case TouchRecorder.THICKNESS:
+                            values[count] = in.readInt();
+                            break;
+                        case TouchRecorder.UNDO:
+                        case TouchRecorder.REDO:
+                            break;
+                        default:
+                            throw new IOException("Unknown event type " + type);
+                    }
+                    count++;
+                }
+            } catch (EOFException e) {
+                // End of the recording.
+            }
+            return new TouchReplayer(types, times, values, sinceDown, firstPointers, pointerCounts,
+                    pointers, count);
+        }
+    }
+
+    /**
+     * @return Number of events in the recording.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Starts replaying the recording on the UI thread. Must be called on the UI thread.
+     *
+     * @param target    Receiver of the events.
+     * @param speed How many times faster than recorded to replay, or Float.POSITIVE_INFINITY to
+     *              replay as fast as possible.
+     * @param listener  Called with the measurements once the replay finishes, or null.
+     * @throws IllegalArgumentException if speed is not positive.
+     * @throws IllegalStateException if a replay is already running.
+     */
+    @SuppressWarnings("deprecation")
+    public void start(Target target, float speed, OnFinishedListener listener) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        if (running) {
+            throw new IllegalStateException("Replay already running");
+        }
+        this.target = target;
+        this.speed = speed;
+        this.listener = listener;
+
+        running = true;
+        next = 0;
+        strokes = 0;
+        navigationErrors = 0;
+        commitNanos = new long[16];
+        startUptime = SystemClock.uptimeMillis();
+        startNanos = System.nanoTime();
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        step();
+    }
+
+    /**
+     * Stops the replay without reporting.
+     */
+    @SuppressWarnings("deprecation")
+    public void cancel() {
+        if (running) {
+            running = false;
+            handler.removeCallbacks(step);
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /**
+     * Dispatches every event that is due, then waits for the next one.
+     */
+    private void step() {
+        long stepStart = SystemClock.uptimeMillis();
+        while (next < count) {
+            long now = SystemClock.uptimeMillis();
+            long due = dueTime(next);
+            if (due > now) {
+                handler.postAtTime(step, due);
+                return;
+            }
+            if (now - stepStart >= MAX_STEP_MILLIS) {
+                handler.post(step);
+                return;
+            }
+            dispatch(next++);
+        }
+        finish();
+    }
+
+    private long dueTime(int index) {
+        return startUptime + (long) (times[index] / speed);
+    }
+
+    private void dispatch(int index) {
+        switch (types[index]) {
+            case TouchRecorder.TOUCH:
+                dispatchTouch(index);
+                break;
+            case TouchRecorder.COLOR:
+                target.onColor(values[index]);
+                break;
+            case TouchRecorder.THICKNESS:
+                target.onThickness(values[index]);
+                break;
+            case TouchRecorder.UNDO:
+                target.onUndo();
+                break;
+            case TouchRecorder.REDO:
+                target.onRedo();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void dispatchTouch(int index) {
+        int action = values[index] & MotionEvent.ACTION_MASK;
+        if (action == MotionEvent.ACTION_DOWN) {
+            downTime = SystemClock.uptimeMillis();
+            gestureStrokes = target.getStrokeCount();
+            navigating = false;
+        } else if (action == MotionEvent.ACTION_POINTER_DOWN) {
+            navigating = true;
+        }
+        // The recorded time between events, rather than the replay's, so strokes are smoothed the
+        // same at any speed.
+        long eventTime = downTime + sinceDown[index];
+
+        int pointerCount = pointerCounts[index];
+        for (int i = 0, p = firstPointers[index]; i < pointerCount; i++, p++) {
+            properties[i].id = pointers.ids[p];
+            coords[i].x = pointers.xs[p];
+            coords[i].y = pointers.ys[p];
+            coords[i].pressure = pointers.pressures[p];
+        }
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, values[index], pointerCount,
+                properties, coords, 0, 0, 1, 1, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+        long start = System.nanoTime();
+        target.onTouchEvent(event);
+        long elapsed = System.nanoTime() - start;
+        event.recycle();
+
+        if (navigating && (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+                && target.getStrokeCount() != gestureStrokes) {
+            navigationErrors++;
+        }
+
+        // Lifting the finger is what commits a stroke to the drawing and the history.
+        if (action == MotionEvent.ACTION_UP && !navigating) {
+            if (strokes == commitNanos.length) {
+                commitNanos = Arrays.copyOf(commitNanos, strokes * 2);
+            }
+            commitNanos[strokes++] = elapsed;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void finish() {
+        running = false;
+        long allocations = Debug.getThreadAllocCount();
+        long allocatedBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        ReplayReport report = new ReplayReport(count, System.nanoTime() - startNanos,
+                Arrays.copyOf(commitNanos, strokes), allocations, allocatedBytes, navigationErrors);
+        if (listener != null) {
+            listener.onFinished(report);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that DrawingDocumentReader rejects corrupt documents with an IOException. Documents are
+ * built by hand: one baked stroke of two points, one stroke in the history, and one paint.
+ */
+public class DrawingDocumentReaderTest {
+    /** Offsets of each section in the documents built. */
+    private static final int STROKES = DocumentFormat.HEADER_SIZE;
+    private static final int STROKE_SIZE = DocumentFormat.STROKE_HEADER_SIZE + 2 * 8;
+    private static final int STROKE_TABLE = STROKES + 2 * STROKE_SIZE;
+    private static final int PAINTS = STROKE_TABLE + 2 * 8;
+    private static final int HISTORY = PAINTS + 8;
+    private static final int TRAILER = HISTORY + 5;
+    private static final int SIZE = TRAILER + DocumentFormat.TRAILER_SIZE;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("document", ".undo");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /** Builds a valid document, to be corrupted by each test. */
+    private static ByteBuffer document() {
+        ByteBuffer data = ByteBuffer.allocate(SIZE).order(DocumentFormat.ORDER);
+        data.putInt(DocumentFormat.MAGIC).putShort(DocumentFormat.VERSION).putShort((short) 0);
+        for (int i = 0; i < 2; i++) {
+            data.putInt(0).putInt(2).putInt(0);
+            data.putFloat(0).putFloat(0).putFloat(10).putFloat(10);
+        }
+        data.putLong(STROKES).putLong(STROKES + STROKE_SIZE);
+        data.putInt(0xFF000000).putFloat(10);
+        data.put(DocumentFormat.TYPE_STROKE).putInt(1);
+        data.putLong(STROKE_TABLE).putLong(PAINTS).putLong(HISTORY);
+        data.putInt(2).putInt(1).putInt(1).putInt(1).putInt(0).putInt(0).putInt(0);
+        data.putInt(DocumentFormat.MAGIC);
+        return data;
+    }
+
+    private DrawingDocumentReader open(ByteBuffer data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data.array(), 0, data.limit());
+        }
+        return DrawingDocumentReader.open(file, new Paint());
+    }
+
+    /** Opens a document and reads everything in it, which must fail with an IOException. */
+    private void assertCorrupt(ByteBuffer data) {
+        try (DrawingDocumentReader reader = open(data)) {
+            for (int i = 0; i < reader.getBakedStrokeCount(); i++) {
+                reader.readStroke(i);
+            }
+            reader.readHistory();
+            fail("Corrupt document was read");
+        } catch (IOException expected) {
+            // Corrupt documents are only ever reported this way.
+        }
+    }
+
+    @Test
+    public void readsValidDocument() throws IOException {
+        try (DrawingDocumentReader reader = open(document())) {
+            assertEquals(2, reader.getStrokeCount());
+            assertEquals(1, reader.getBakedStrokeCount());
+            reader.readStroke(0);
+            assertEquals(1, reader.readHistory().size());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedDocument() {
+        ByteBuffer data = document();
+        data.limit(SIZE / 2);
+        assertCorrupt(data);
+    }
+
+    @Test
+    public void rejectsNegativeCounts() {
+        assertCorrupt(document().putInt(TRAILER + 24, -1));
+        assertCorrupt(document().putInt(TRAILER + 32, -1));
+        assertCorrupt(document().putInt(TRAILER + 36, -1));
+    }
+
+    @Test
+    public void rejectsCountsPastTheirSection() {
+        assertCorrupt(document().putInt(TRAILER + 24, Integer.MAX_VALUE));
+        assertCorrupt(document().putInt(TRAILER + 28, 3));
+        assertCorrupt(document().putInt(TRAILER + 32, 2));
+        assertCorrupt(document().putInt(TRAILER + 36, 2));
+        assertCorrupt(document().putInt(TRAILER + 40, 2));
+    }
+
+    @Test
+    public void rejectsPaintIndicesPastTable() {
+        assertCorrupt(document().putInt(TRAILER + 44, 1));
+        assertCorrupt(document().putInt(TRAILER + 48, -1));
+        assertCorrupt(document().putInt(STROKES, 1));
+    }
+
+    @Test
+    public void rejectsStrokesPastTable() {
+        assertCorrupt(document().putInt(STROKES + 4, Integer.MAX_VALUE));
+        assertCorrupt(document().putInt(STROKES + 4, -1));
+        assertCorrupt(document().putLong(STROKE_TABLE, STROKE_TABLE - 4));
+    }
+
+    @Test
+    public void rejectsHistoryStrokeOutOfRange() {
+        assertCorrupt(document().putInt(HISTORY + 1, 2));
+        assertCorrupt(document().putInt(HISTORY + 1, 0));
+        assertCorrupt(document().putInt(HISTORY + 1, -1));
+    }
+}
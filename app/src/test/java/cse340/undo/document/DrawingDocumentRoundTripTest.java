@@ -0,0 +1,145 @@
+package cse340.undo.document;
+
+import android.graphics.Paint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokePoints;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that large drawings read back exactly as they were written. Paints only exist as stubs in
+ * local tests, so only points, weights and the history are compared. The time to write and read
+ * each drawing is printed; LoadBenchmark measures loading on a device.
+ */
+public class DrawingDocumentRoundTripTest {
+    /** Actions in the history of each drawing; the rest of its strokes are baked. */
+    private static final int HISTORY_SIZE = 10;
+
+    /** Most points in a stroke. */
+    private static final int MAX_POINTS = 32;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("document", ".undo");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrips10kStrokes() throws IOException {
+        roundTrip(10000);
+    }
+
+    @Test
+    public void roundTrips100kStrokes() throws IOException {
+        roundTrip(100000);
+    }
+
+    /**
+     * Writes a drawing of random strokes, some with weights, followed by a history of strokes and
+     * paint changes with the last few undone; then reads it back and compares every stroke.
+     */
+    private void roundTrip(int strokes) throws IOException {
+        Random random = new Random(strokes);
+        Paint paint = new Paint();
+        List<StrokeAction> baked = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes - HISTORY_SIZE / 2; i++) {
+            baked.add(StrokeAction.withSharedPaint(randomPoints(random), paint));
+        }
+        List<AbstractReversibleAction> history = new ArrayList<>(HISTORY_SIZE);
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            if (i % 2 == 0) {
+                history.add(StrokeAction.withSharedPaint(randomPoints(random), paint));
+            } else if (i % 4 == 1) {
+                history.add(new ChangeColorAction(random.nextInt()));
+            } else {
+                history.add(new ChangeThicknessAction(1 + random.nextInt(50)));
+            }
+        }
+        DrawingDocument document = new DrawingDocument(baked, history, 3, 0xFF000000, 10, 0xFFFF0000, 20);
+
+        long start = System.nanoTime();
+        long size = DrawingDocumentWriter.write(document, file);
+        long written = System.nanoTime();
+        assertEquals(file.length(), size);
+
+        try (DrawingDocumentReader reader = DrawingDocumentReader.open(file, new Paint())) {
+            assertEquals(baked.size(), reader.getBakedStrokeCount());
+            assertEquals(baked.size() + HISTORY_SIZE / 2, reader.getStrokeCount());
+            assertEquals(3, reader.getUndoneCount());
+            for (int i = 0; i < baked.size(); i++) {
+                assertSamePoints(baked.get(i), reader.readStroke(i));
+            }
+            List<AbstractReversibleAction> read = reader.readHistory();
+            long readNanos = System.nanoTime() - written;
+            assertEquals(history.size(), read.size());
+            for (int i = 0; i < history.size(); i++) {
+                AbstractReversibleAction expected = history.get(i), actual = read.get(i);
+                assertEquals(expected.getClass(), actual.getClass());
+                if (expected instanceof StrokeAction) {
+                    assertSamePoints((StrokeAction) expected, (StrokeAction) actual);
+                } else if (expected instanceof ChangeColorAction) {
+                    assertEquals(((ChangeColorAction) expected).getColor(), ((ChangeColorAction) actual).getColor());
+                } else {
+                    assertEquals(((ChangeThicknessAction) expected).getThickness(),
+                            ((ChangeThicknessAction) actual).getThickness());
+                }
+            }
+            System.out.println(strokes + " strokes, " + size + " bytes: written in "
+                    + (written - start) / 1000000 + " ms, read in " + readNanos / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Makes a random walk of 1 to MAX_POINTS points, weighted half the time.
+     */
+    private static StrokePoints randomPoints(Random random) {
+        int count = 1 + random.nextInt(MAX_POINTS);
+        StrokePoints points = new StrokePoints(count);
+        boolean weighted = random.nextBoolean();
+        float x = random.nextFloat() * 2000, y = random.nextFloat() * 2000;
+        for (int i = 0; i < count; i++) {
+            if (weighted) {
+                points.add(x, y, random.nextFloat());
+            } else {
+                points.add(x, y);
+            }
+            x += random.nextFloat() * 20 - 10;
+            y += random.nextFloat() * 20 - 10;
+        }
+        return points;
+    }
+
+    private static void assertSamePoints(StrokeAction expected, StrokeAction actual) {
+        StrokePoints e = expected.getPoints(), a = actual.getPoints();
+        assertEquals(e.size(), a.size());
+        assertArrayEquals(Arrays.copyOf(e.getCoords(), e.size() * 2),
+                Arrays.copyOf(a.getCoords(), a.size() * 2), 0);
+        assertEquals(e.hasWeights(), a.hasWeights());
+        if (e.hasWeights()) {
+            assertArrayEquals(Arrays.copyOf(e.getWeights(), e.size()),
+                    Arrays.copyOf(a.getWeights(), a.size()), 0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cse340.undo.fill;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures filling areas of different sizes on a 4K (3840x2160) canvas: finding the spans, and
+ * painting them and undoing the paint through a TileDelta. The area is a rectangle outlined on an
+ * otherwise empty canvas, covering the given fraction of it.
+ *
+ * The undoBytes and undoTiles counters give the memory one fill's undo holds, which should grow
+ * with the area rather than stay at the 33 MB a full copy of the canvas would take.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class FillBenchmark {
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+    private static final int OUTLINE = 0xFF000000, FILL = 0xFFFF0000;
+
+    @Param({"0.001", "0.01", "0.1", "1.0"})
+    public double area;
+
+    /** Undo memory of the most recent fill. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class UndoSize {
+        public long undoBytes;
+        public long undoTiles;
+    }
+
+    /** Raster backed by an array, standing in for the app's bitmap. */
+    private static final class ArrayRaster implements PixelRaster {
+        final int[] pixels = new int[WIDTH * HEIGHT];
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public void getPixels(int[] out, int x, int y, int width, int height) {
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(pixels, (y + row) * WIDTH + x, out, row * width, width);
+            }
+        }
+
+        @Override
+        public void setPixels(int[] in, int x, int y, int width, int height) {
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(in, row * width, pixels, (y + row) * WIDTH + x, width);
+            }
+        }
+    }
+
+    private int[] canvas;
+    private final ArrayRaster layer = new ArrayRaster();
+    private int[] spans;
+
+    @Setup
+    public void outline() {
+        canvas = new int[WIDTH * HEIGHT];
+        if (area < 1) {
+            // A rectangle with the canvas's aspect ratio, centered.
+            double scale = Math.sqrt(area);
+            int width = (int) (WIDTH * scale), height = (int) (HEIGHT * scale);
+            int left = (WIDTH - width) / 2, top = (HEIGHT - height) / 2;
+            int right = left + width - 1, bottom = top + height - 1;
+            for (int x = left; x <= right; x++) {
+                canvas[top * WIDTH + x] = OUTLINE;
+                canvas[bottom * WIDTH + x] = OUTLINE;
+            }
+            for (int y = top; y <= bottom; y++) {
+                canvas[y * WIDTH + left] = OUTLINE;
+                canvas[y * WIDTH + right] = OUTLINE;
+            }
+        }
+        spans = new ScanlineFill(canvas, WIDTH, HEIGHT, 0).fill(WIDTH / 2, HEIGHT / 2, null, null);
+    }
+
+    @Benchmark
+    public int[] findSpans() {
+        return new ScanlineFill(canvas, WIDTH, HEIGHT, 0).fill(WIDTH / 2, HEIGHT / 2, null, null);
+    }
+
+    @Benchmark
+    public TileDelta paintAndUndo(UndoSize size) {
+        TileDelta delta = TileDelta.paint(layer, spans, FILL);
+        delta.restore(layer);
+        size.undoBytes = delta.getByteSize();
+        size.undoTiles = delta.getTileCount();
+        return delta;
+    }
+}
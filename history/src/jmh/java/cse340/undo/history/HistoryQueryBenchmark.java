@@ -0,0 +1,112 @@
+package cse340.undo.history;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queries of IndexedStackHistory against a full history: the color changes of the last
+ * minute, and the strokes touching a rectangle between two steps. Strokes are spread over a
+ * 4000 by 4000 canvas, one action every 100 ms on average, and one in ten actions is a color
+ * change. Each query is also timed as a scan of every action, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class HistoryQueryBenchmark {
+    private static final float CANVAS_SIZE = 4000;
+
+    /** Stands for a color change, which has no area. */
+    private static final class ColorChange {
+    }
+
+    /** Stands for a stroke, with its area. */
+    private static final class Stroke {
+        final float[] area;
+
+        Stroke(float[] area) {
+            this.area = area;
+        }
+    }
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private IndexedStackHistory<Object> history;
+    private long now;
+
+    /** Rectangle searched, and the steps searched between. */
+    private final float[] rect = {1000, 1000, 1400, 1300};
+    private long from, to;
+
+    @Setup
+    public void fill() {
+        Random random = new Random(340);
+        long[] clock = {0};
+        history = new IndexedStackHistory<>(size, (action, area) -> {
+            if (!(action instanceof Stroke)) {
+                return false;
+            }
+            System.arraycopy(((Stroke) action).area, 0, area, 0, 4);
+            return true;
+        }, () -> clock[0]);
+        for (int i = 0; i < size; i++) {
+            clock[0] += random.nextInt(200);
+            if (random.nextInt(10) == 0) {
+                history.addAction(new ColorChange());
+            } else {
+                float x = random.nextFloat() * CANVAS_SIZE, y = random.nextFloat() * CANVAS_SIZE;
+                float width = 20 + random.nextFloat() * 200, height = 20 + random.nextFloat() * 200;
+                history.addAction(new Stroke(new float[] {x, y, x + width, y + height}));
+            }
+        }
+        now = clock[0];
+        from = history.getFirstStep() + size / 10;
+        to = history.getFirstStep() + size * 4 / 10;
+    }
+
+    @Benchmark
+    public void recentColorChanges(Blackhole blackhole) {
+        for (Object action : history.find(ColorChange.class, history.getStepAt(now - 60_000), Long.MAX_VALUE)) {
+            blackhole.consume(action);
+        }
+    }
+
+    @Benchmark
+    public void recentColorChangesByScan(Blackhole blackhole) {
+        for (long step = history.getFirstStep(); step <= history.getLastStep(); step++) {
+            if (history.getTime(step) >= now - 60_000 && history.getAction(step) instanceof ColorChange) {
+                blackhole.consume(history.getAction(step));
+            }
+        }
+    }
+
+    @Benchmark
+    public void strokesInRect(Blackhole blackhole) {
+        for (Object action : history.find(Stroke.class, rect[0], rect[1], rect[2], rect[3], from, to)) {
+            blackhole.consume(action);
+        }
+    }
+
+    @Benchmark
+    public void strokesInRectByScan(Blackhole blackhole) {
+        for (long step = from; step <= to; step++) {
+            Object action = history.getAction(step);
+            if (action instanceof Stroke) {
+                float[] area = ((Stroke) action).area;
+                if (area[0] <= rect[2] && area[2] >= rect[0] && area[1] <= rect[3] && area[3] >= rect[1]) {
+                    blackhole.consume(action);
+                }
+            }
+        }
+    }
+}
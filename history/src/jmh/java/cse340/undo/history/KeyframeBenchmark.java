@@ -0,0 +1,57 @@
+package cse340.undo.history;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bookkeeping of one frame of a timeline scrub with KeyframeIndex: finding the
+ * keyframe of a step, checking the replay from it and costing it. The history is 5000 actions,
+ * mostly strokes of 8 to 200 points with an occasional barrier, with keyframes placed as the
+ * index asks and thinned to a budget of 24 frames. The gc profiler should show no allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class KeyframeBenchmark {
+    private static final int STEPS = 5000;
+
+    /** Memory taken by each frame; the budget fits FRAMES of them. */
+    private static final long FRAME_BYTES = 1 << 20;
+    private static final int FRAMES = 24;
+
+    private final KeyframeIndex<Object> index = new KeyframeIndex<>(4096, FRAMES * FRAME_BYTES);
+    private long next;
+
+    @Setup
+    public void record() {
+        Random random = new Random(340);
+        index.put(0, new Object(), FRAME_BYTES);
+        for (int step = 1; step <= STEPS; step++) {
+            index.record(step, 8 + random.nextInt(193), random.nextInt(100) == 0);
+            if (index.needsKeyframe(step)) {
+                index.put(step, new Object(), FRAME_BYTES);
+            }
+        }
+    }
+
+    @Benchmark
+    public long scrub() {
+        if (next > STEPS) {
+            next = 0;
+        }
+        long step = next++;
+        KeyframeIndex.Keyframe<Object> keyframe = index.floor(step);
+        if (keyframe == null || !index.canReplay(keyframe.step, step)) {
+            return -1;
+        }
+        return index.getCost(keyframe.step, step);
+    }
+}
@@ -0,0 +1,114 @@
+package cse340.undo.history;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for BoundedStackHistory. Run with ./gradlew :history:jmh; the GC profiler is
+ * enabled in build.gradle, so each result also shows the allocation rate.
+ *
+ * Actions are plain objects: the history never looks inside them, so app actions would behave
+ * the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class StackHistoryBenchmark {
+    /** Number of operations in one run of the mixed workload. */
+    private static final int MIXED_OPERATIONS = 1024;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int capacity;
+
+    private BoundedStackHistory<Object> history;
+
+    /** Preallocated actions, so the benchmarks measure the history rather than allocating them. */
+    private Object[] actions;
+    private int nextAction;
+
+    /** Mixed workload: 0 is add, 1 is undo, 2 is redo. */
+    private byte[] operations;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        actions = new Object[1024];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = new Object();
+        }
+
+        // 70% adds, 20% undos, 10% redos, the same sequence on every run.
+        Random random = new Random(340);
+        operations = new byte[MIXED_OPERATIONS];
+        for (int i = 0; i < operations.length; i++) {
+            int roll = random.nextInt(10);
+            operations[i] = (byte) (roll < 7 ? 0 : roll < 9 ? 1 : 2);
+        }
+    }
+
+    /**
+     * Starts every iteration from a full history, so adds evict and undo/redo always succeed.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        history = new BoundedStackHistory<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            history.addAction(nextAction());
+        }
+    }
+
+    private Object nextAction() {
+        Object action = actions[nextAction];
+        nextAction = (nextAction + 1) % actions.length;
+        return action;
+    }
+
+    /**
+     * Adds to a full history, evicting the oldest action each time.
+     */
+    @Benchmark
+    public void pushWithEviction() {
+        history.addAction(nextAction());
+    }
+
+    /**
+     * Undoes then redoes the most recent action.
+     */
+    @Benchmark
+    public Object undoRedoPingPong() {
+        history.undo();
+        return history.redo();
+    }
+
+    /**
+     * Adds, undoes and redoes in a fixed, pseudo-random order.
+     */
+    @Benchmark
+    @OperationsPerInvocation(MIXED_OPERATIONS)
+    public void mixed(Blackhole blackhole) {
+        for (byte operation : operations) {
+            switch (operation) {
+                case 0:
+                    history.addAction(nextAction());
+                    break;
+                case 1:
+                    blackhole.consume(history.undo());
+                    break;
+                default:
+                    blackhole.consume(history.redo());
+                    break;
+            }
+        }
+    }
+}
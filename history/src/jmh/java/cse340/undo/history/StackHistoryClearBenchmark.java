@@ -0,0 +1,45 @@
+package cse340.undo.history;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures clearing a full BoundedStackHistory. Refilling the history before each call is part of
+ * the setup rather than the measurement, which is why this is separate from StackHistoryBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class StackHistoryClearBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int capacity;
+
+    private BoundedStackHistory<Object> history;
+    private final Object action = new Object();
+
+    @Setup(Level.Trial)
+    public void create() {
+        history = new BoundedStackHistory<>(capacity);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        for (int i = 0; i < capacity; i++) {
+            history.addAction(action);
+        }
+    }
+
+    @Benchmark
+    public void clear() {
+        history.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package cse340.undo.input;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of smoothing one touch sample with OneEuroFilter. The samples trace a circle
+ * at 120 Hz with a couple of pixels of jitter, like a finger on a touch screen. The gc profiler
+ * should show no allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SmoothingBenchmark {
+    /** Number of samples in one stroke; the filter starts over after each. */
+    private static final int SAMPLES = 4096;
+
+    private final float[] xs = new float[SAMPLES], ys = new float[SAMPLES];
+    private final long[] times = new long[SAMPLES];
+    private final OneEuroFilter filter = new OneEuroFilter(1, 0.01f, 1);
+    private int next;
+
+    @Setup
+    public void trace() {
+        Random random = new Random(340);
+        for (int i = 0; i < SAMPLES; i++) {
+            double angle = i * 2 * Math.PI / 360;
+            xs[i] = (float) (500 + 300 * Math.cos(angle) + random.nextGaussian() * 2);
+            ys[i] = (float) (500 + 300 * Math.sin(angle) + random.nextGaussian() * 2);
+            times[i] = i * 1000L / 120;
+        }
+    }
+
+    @Benchmark
+    public float sample() {
+        if (next == SAMPLES) {
+            next = 0;
+            filter.reset();
+        }
+        filter.filter(xs[next], ys[next], times[next]);
+        next++;
+        return filter.getX() + filter.getY();
+    }
+
+    @Benchmark
+    public float raw() {
+        // Baseline: the same loop without filtering.
+        if (next == SAMPLES) {
+            next = 0;
+        }
+        float result = xs[next] + ys[next] + times[next];
+        next++;
+        return result;
+    }
+}
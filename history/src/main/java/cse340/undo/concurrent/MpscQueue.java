@@ -0,0 +1,83 @@
+package cse340.undo.concurrent;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free, unbounded queue for many producer threads and a single consumer thread. Producers
+ * never block or retry: offering swaps the new node in as the head with one atomic exchange and
+ * then links the previous head to it. The consumer follows the links from its own tail without any
+ * atomic operation.
+ *
+ * Between those two steps of an offer, the node is in the queue but not yet reachable, so poll can
+ * return null while isEmpty returns false. A consumer draining the queue should check isEmpty once
+ * poll returns null and come back later if it is false.
+ *
+ * @param <E>   Type of element.
+ */
+public final class MpscQueue<E> {
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+    /** Most recently offered node. Swapped by producers. */
+    private final AtomicReference<Node<E>> head;
+
+    /** Node before the next one to poll; its value has already been taken. Consumer only. */
+    private Node<E> tail;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        head = new AtomicReference<>(stub);
+        tail = stub;
+    }
+
+    /**
+     * Adds an element. May be called from any thread.
+     *
+     * @param value Element to add.
+     * @throws IllegalArgumentException if value is null.
+     */
+    public void offer(E value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null element");
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> previous = head.getAndSet(node);
+        NEXT.lazySet(previous, node);
+    }
+
+    /**
+     * Removes the oldest reachable element. Must only be called from the consumer thread.
+     *
+     * @return The element, or null if none is reachable yet.
+     */
+    public E poll() {
+        Node<E> next = tail.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        tail = next;
+        return value;
+    }
+
+    /**
+     * Must only be called from the consumer thread.
+     *
+     * @return True if nothing has been offered since the last element was polled.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail;
+    }
+}
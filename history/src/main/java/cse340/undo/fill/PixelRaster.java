@@ -0,0 +1,39 @@
+package cse340.undo.fill;
+
+/**
+ * A rectangle of packed ARGB pixels which can be read and written a block at a time. Lets
+ * TileDelta work on an Android bitmap in the app and on a plain array in benchmarks.
+ */
+public interface PixelRaster {
+    /**
+     * @return Width in pixels.
+     */
+    int getWidth();
+
+    /**
+     * @return Height in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Copies a block of pixels out, row by row.
+     *
+     * @param out   Array to receive width * height pixels.
+     * @param x     Left of the block.
+     * @param y     Top of the block.
+     * @param width Width of the block.
+     * @param height    Height of the block.
+     */
+    void getPixels(int[] out, int x, int y, int width, int height);
+
+    /**
+     * Copies a block of pixels in, row by row.
+     *
+     * @param in    Array holding width * height pixels.
+     * @param x     Left of the block.
+     * @param y     Top of the block.
+     * @param width Width of the block.
+     * @param height    Height of the block.
+     */
+    void setPixels(int[] in, int x, int y, int width, int height);
+}
@@ -0,0 +1,185 @@
+package cse340.undo.fill;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Span-based scanline flood fill over packed ARGB pixels. Each step grows a seed left and right
+ * into a whole span of matching pixels, and then seeds the rows above and below once per run of
+ * matching pixels rather than once per pixel. The work done is proportional to the area filled,
+ * and the seed stack stays a few entries per row deep.
+ *
+ * Only the spans are found; painting them, and keeping what they covered for undo, is left to
+ * TileDelta. Not thread-safe, but any thread may use its own instance.
+ */
+public final class ScanlineFill {
+    /**
+     * Receives progress from the thread doing the fill.
+     */
+    public interface ProgressListener {
+        /**
+         * @param filledPixels  Number of pixels found to be in the area so far.
+         */
+        void onProgress(long filledPixels);
+    }
+
+    /** Pixels found between progress reports. */
+    private static final int PROGRESS_INTERVAL = 1 << 16;
+
+    private final int[] pixels;
+    private final int width, height;
+
+    /** Largest difference in any channel for a pixel to count as the seed's color. */
+    private final int tolerance;
+
+    /** Pixels already in a span, one bit each. */
+    private long[] visited;
+
+    /** Pixel indices still to grow into spans. */
+    private int[] stack = new int[64];
+    private int stackSize;
+
+    /** Spans found, as (y, left, right) triples. */
+    private int[] spans = new int[3 * 64];
+    private int spanCount;
+
+    /**
+     * Creates a fill over the given pixels, which are read but never changed.
+     *
+     * @param pixels    Pixels, row by row.
+     * @param width     Width of a row.
+     * @param height    Number of rows.
+     * @param tolerance Largest difference, in any of the four channels, for a pixel to be filled
+     *                  along with the seed.
+     * @throws IllegalArgumentException if pixels is null or doesn't match the size, or tolerance
+     *                                  is negative.
+     */
+    public ScanlineFill(int[] pixels, int width, int height, int tolerance) {
+        if (pixels == null || width < 0 || height < 0 || pixels.length < (long) width * height) {
+            throw new IllegalArgumentException("Pixels don't match a " + width + "x" + height + " raster");
+        }
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Negative tolerance");
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Finds the area connected to a seed pixel (through its four neighbours) whose pixels match
+     * the seed's color.
+     *
+     * @param x Column of the seed.
+     * @param y Row of the seed.
+     * @param cancelled Checked once per span; the fill stops when it becomes true. May be null.
+     * @param progress  Told how many pixels have been found every so often. May be null.
+     * @return Spans covering the area as (y, left, right) triples, right inclusive; empty if the
+     *         seed is outside the pixels. Null if cancelled.
+     */
+    public int[] fill(int x, int y, AtomicBoolean cancelled, ProgressListener progress) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return new int[0];
+        }
+
+        int target = pixels[y * width + x];
+        visited = new long[(int) (((long) width * height + 63) >>> 6)];
+        stackSize = 0;
+        spanCount = 0;
+        long filled = 0;
+        long nextReport = PROGRESS_INTERVAL;
+
+        push(y * width + x);
+        while (stackSize > 0) {
+            if (cancelled != null && cancelled.get()) {
+                visited = null;
+                return null;
+            }
+
+            int seed = stack[--stackSize];
+            int row = seed - seed % width;
+            if (!matches(seed, target)) {
+                // Already taken by a span grown from another seed.
+                continue;
+            }
+
+            int left = seed, right = seed;
+            while (left > row && matches(left - 1, target)) {
+                left--;
+            }
+            while (right < row + width - 1 && matches(right + 1, target)) {
+                right++;
+            }
+            for (int i = left; i <= right; i++) {
+                visited[i >>> 6] |= 1L << i;
+            }
+            addSpan(row / width, left - row, right - row);
+
+            if (row > 0) {
+                seedRow(left - width, right - width, target);
+            }
+            if (row + width < (long) width * height) {
+                seedRow(left + width, right + width, target);
+            }
+
+            filled += right - left + 1;
+            if (progress != null && filled >= nextReport) {
+                progress.onProgress(filled);
+                nextReport = filled + PROGRESS_INTERVAL;
+            }
+        }
+
+        visited = null;
+        return Arrays.copyOf(spans, spanCount * 3);
+    }
+
+    /**
+     * Pushes one seed for each run of matching pixels between two indices in a row.
+     */
+    private void seedRow(int from, int to, int target) {
+        boolean inRun = false;
+        for (int i = from; i <= to; i++) {
+            if (matches(i, target)) {
+                if (!inRun) {
+                    push(i);
+                    inRun = true;
+                }
+            } else {
+                inRun = false;
+            }
+        }
+    }
+
+    private boolean matches(int index, int target) {
+        if ((visited[index >>> 6] & (1L << index)) != 0) {
+            return false;
+        }
+        int pixel = pixels[index];
+        if (pixel == target) {
+            return true;
+        }
+        return tolerance > 0
+                && Math.abs((pixel >>> 24) - (target >>> 24)) <= tolerance
+                && Math.abs((pixel >> 16 & 0xFF) - (target >> 16 & 0xFF)) <= tolerance
+                && Math.abs((pixel >> 8 & 0xFF) - (target >> 8 & 0xFF)) <= tolerance
+                && Math.abs((pixel & 0xFF) - (target & 0xFF)) <= tolerance;
+    }
+
+    private void push(int index) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = index;
+    }
+
+    private void addSpan(int y, int left, int right) {
+        if (spanCount * 3 == spans.length) {
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        spans[spanCount * 3] = y;
+        spans[spanCount * 3 + 1] = left;
+        spans[spanCount * 3 + 2] = right;
+        spanCount++;
+    }
+}
@@ -0,0 +1,201 @@
+package cse340.undo.fill;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The pixels a fill painted over, kept so the fill can be undone. The raster is divided into
+ * square tiles; only the tiles the fill touches are kept, each run-length encoded, so the memory
+ * an undo costs grows with the area filled rather than the size of the canvas. Paint layers are
+ * mostly flat color, so most tiles encode to a handful of runs.
+ */
+public final class TileDelta {
+    /** Width and height of a tile, in pixels. */
+    public static final int TILE_SIZE = 64;
+
+    /** First element of encoded tile data, giving how the rest is stored. */
+    private static final int RAW = 0, RUNS = 1;
+
+    /** Contents of one tile from before the fill. */
+    private static final class Tile {
+        final int x, y, width, height;
+        final int[] data;
+
+        Tile(int x, int y, int width, int height, int[] data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    private final List<Tile> tiles;
+
+    private TileDelta(List<Tile> tiles) {
+        this.tiles = tiles;
+    }
+
+    /**
+     * Paints spans onto a raster, keeping the tiles they cover as they were. Parts of spans
+     * outside the raster are ignored.
+     *
+     * @param raster    Raster to paint.
+     * @param spans     Spans as (y, left, right) triples, right inclusive, as from ScanlineFill.
+     * @param color     Color to paint.
+     * @return Delta which restores the raster.
+     * @throws IllegalArgumentException if raster or spans are null, or spans isn't made of triples.
+     */
+    public static TileDelta paint(PixelRaster raster, int[] spans, int color) {
+        if (raster == null || spans == null || spans.length % 3 != 0) {
+            throw new IllegalArgumentException("Null raster or malformed spans");
+        }
+        int width = raster.getWidth(), height = raster.getHeight();
+        int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        // Sort the spans by tile row, so each tile is read and written once.
+        int[] rowStart = new int[tilesDown + 1];
+        for (int i = 0; i < spans.length; i += 3) {
+            if (isVisible(spans, i, width, height)) {
+                rowStart[spans[i] / TILE_SIZE + 1]++;
+            }
+        }
+        for (int row = 0; row < tilesDown; row++) {
+            rowStart[row + 1] += rowStart[row];
+        }
+        int[] byRow = new int[rowStart[tilesDown]];
+        int[] next = Arrays.copyOf(rowStart, tilesDown);
+        for (int i = 0; i < spans.length; i += 3) {
+            if (isVisible(spans, i, width, height)) {
+                byRow[next[spans[i] / TILE_SIZE]++] = i;
+            }
+        }
+
+        List<Tile> tiles = new ArrayList<>();
+        boolean[] touched = new boolean[tilesAcross];
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (int row = 0; row < tilesDown; row++) {
+            int from = rowStart[row], to = rowStart[row + 1];
+            if (from == to) {
+                continue;
+            }
+
+            Arrays.fill(touched, false);
+            for (int s = from; s < to; s++) {
+                int i = byRow[s];
+                int left = Math.max(0, spans[i + 1]), right = Math.min(width - 1, spans[i + 2]);
+                for (int column = left / TILE_SIZE; column <= right / TILE_SIZE; column++) {
+                    touched[column] = true;
+                }
+            }
+
+            int tileY = row * TILE_SIZE;
+            int tileHeight = Math.min(TILE_SIZE, height - tileY);
+            for (int column = 0; column < tilesAcross; column++) {
+                if (!touched[column]) {
+                    continue;
+                }
+                int tileX = column * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, width - tileX);
+                raster.getPixels(pixels, tileX, tileY, tileWidth, tileHeight);
+                tiles.add(new Tile(tileX, tileY, tileWidth, tileHeight, encode(pixels, tileWidth * tileHeight)));
+
+                for (int s = from; s < to; s++) {
+                    int i = byRow[s];
+                    int left = Math.max(tileX, spans[i + 1]);
+                    int right = Math.min(tileX + tileWidth - 1, spans[i + 2]);
+                    if (left <= right) {
+                        int offset = (spans[i] - tileY) * tileWidth - tileX;
+                        Arrays.fill(pixels, offset + left, offset + right + 1, color);
+                    }
+                }
+                raster.setPixels(pixels, tileX, tileY, tileWidth, tileHeight);
+            }
+        }
+        return new TileDelta(tiles);
+    }
+
+    /**
+     * Puts back the pixels the fill painted over.
+     *
+     * @param raster    Raster which was painted, at least as large as it was then.
+     */
+    public void restore(PixelRaster raster) {
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (Tile tile : tiles) {
+            decode(tile.data, pixels);
+            raster.setPixels(pixels, tile.x, tile.y, tile.width, tile.height);
+        }
+    }
+
+    /**
+     * @return Number of tiles kept.
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return Approximate memory held by this delta, in bytes.
+     */
+    public long getByteSize() {
+        // Object headers and references are counted at a typical 16 and 4 bytes.
+        long bytes = 16 + 4L * tiles.size();
+        for (Tile tile : tiles) {
+            bytes += 16 + 16 + 4 * 4 + 4L * tile.data.length;
+        }
+        return bytes;
+    }
+
+    private static boolean isVisible(int[] spans, int i, int width, int height) {
+        return spans[i] >= 0 && spans[i] < height && spans[i + 2] >= 0 && spans[i + 1] < width
+                && spans[i + 1] <= spans[i + 2];
+    }
+
+    /**
+     * Encodes pixels as (count, color) runs, or copies them as they are if that is smaller.
+     */
+    private static int[] encode(int[] pixels, int length) {
+        int runs = 0;
+        for (int i = 0; i < length; runs++) {
+            int color = pixels[i];
+            while (i < length && pixels[i] == color) {
+                i++;
+            }
+        }
+        if (runs * 2 >= length) {
+            int[] raw = new int[length + 1];
+            raw[0] = RAW;
+            System.arraycopy(pixels, 0, raw, 1, length);
+            return raw;
+        }
+
+        int[] encoded = new int[runs * 2 + 1];
+        encoded[0] = RUNS;
+        int out = 1;
+        for (int i = 0; i < length; ) {
+            int color = pixels[i];
+            int start = i;
+            while (i < length && pixels[i] == color) {
+                i++;
+            }
+            encoded[out++] = i - start;
+            encoded[out++] = color;
+        }
+        return encoded;
+    }
+
+    private static void decode(int[] data, int[] pixels) {
+        if (data[0] == RAW) {
+            System.arraycopy(data, 1, pixels, 0, data.length - 1);
+            return;
+        }
+        int out = 0;
+        for (int i = 1; i < data.length; i += 2) {
+            Arrays.fill(pixels, out, out + data[i], data[i + 1]);
+            out += data[i];
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package cse340.undo.history;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps a history of actions that have been done and undone using two stacks. When an item is done,
+ * it is pushed onto the undo stack. When an item is undone, it is popped from the undo stack and
+ * pushed to the redo stack. The number of history items is limited by the capacity.
+ *
+ * The stacks are array-backed, so pushing, popping and evicting the oldest action allocate
+ * nothing once the stacks have grown to their working size.
+ *
+ * @param <A>   Type of action kept in the history.
+ */
+public class BoundedStackHistory<A> implements History<A> {
+    /** Data structures for staring undo/redo events. */
+    private final Deque<A> undoStack, redoStack;
+
+    /** Should always be true that undoStack.size() + redoStack.size() <= capacity. */
+    private final int capacity;
+
+    /** Told about actions evicted by addAction, or null. */
+    private DiscardListener<? super A> discardListener;
+
+    /**
+     * Initializes empty undo/redo stacks.
+     *
+     * @param capacity  Maximum size of undo/redo stacks.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public BoundedStackHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        this.capacity = capacity;
+
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+    }
+
+    /**
+     * Add a reversible event to the history.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(A action) {
+        // 1. Clear out the redo stack (when we do a new action we have to delete all the redo
+        // actions to ensure consistency)
+        // 2. If the stack is full, remove the oldest thing in it
+        // 3. Add the new event to the undo stack
+        if (discardListener != null && !redoStack.isEmpty()) {
+            for (A undone : redoStack) {
+                discardListener.onDiscarded(undone, true);
+            }
+        }
+        redoStack.clear();
+        if (undoStack.size() == capacity) {
+            // The top of the stack is at the front, so the oldest action is at the back.
+            A oldest = undoStack.removeLast();
+            if (discardListener != null) {
+                discardListener.onDiscarded(oldest, false);
+            }
+        }
+        undoStack.push(action);
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public A undo() {
+        if (undoStack.isEmpty()) {
+            return null;
+        }
+        A e = undoStack.pop();
+        redoStack.push(e);
+        return e;
+    }
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public A redo() {
+        if (redoStack.isEmpty()) {
+            return null;
+        }
+        A e = redoStack.pop();
+        undoStack.push(e);
+        return e;
+    }
+
+    /**
+     * Clears the history.
+     */
+    @Override
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void setDiscardListener(DiscardListener<? super A> listener) {
+        discardListener = listener;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<A> dropRedo() {
+        List<A> dropped = new ArrayList<>(redoStack);
+        redoStack.clear();
+        return dropped;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<A> dropOldest(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Illegal size: " + max);
+        }
+        List<A> dropped = new ArrayList<>(Math.max(0, undoStack.size() - max));
+        while (undoStack.size() > max) {
+            dropped.add(undoStack.removeLast());
+        }
+        return dropped;
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {return !redoStack.isEmpty();}
+
+    /** @inheritDoc */
+    @Override
+    public int undoSize() {
+        return undoStack.size();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int redoSize() {
+        return redoStack.size();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<A> getActions() {
+        List<A> actions = new ArrayList<>(undoStack.size() + redoStack.size());
+
+        // Both stacks keep their top at the front, so the oldest undoable action is at the back.
+        Iterator<A> undone = undoStack.descendingIterator();
+        while (undone.hasNext()) {
+            actions.add(undone.next());
+        }
+        actions.addAll(redoStack);
+        return actions;
+    }
+
+    @Override
+    public String toString() {
+        return  "Undo size: " + undoStack.size() + ", redo size: " + redoStack.size();
+    }
+}
@@ -0,0 +1,116 @@
+package cse340.undo.history;
+
+import java.util.List;
+
+/**
+ * Keeps a history of actions that have been done and undone. When undo is called, the most recently
+ * added action (via addAction) should be returned. When redo is called, the most recently undone
+ * action should be returned.
+ *
+ * A history only keeps track of actions; it never does or undoes them itself, so it has no
+ * dependency on what the actions are.
+ *
+ * @param <A>   Type of action kept in the history.
+ */
+public interface History<A> {
+    /**
+     * Told about actions the history forgets on its own: those which could be redone when a new
+     * action is added, and the oldest action when the history is full.
+     *
+     * @param <A>   Type of action kept in the history.
+     */
+    interface DiscardListener<A> {
+        /**
+         * @param action    Action forgotten.
+         * @param undone    True if the action had been undone, false if it is still done.
+         */
+        void onDiscarded(A action, boolean undone);
+    }
+
+    /**
+     * Sets who is told about actions the history forgets on its own.
+     *
+     * @param listener  Listener, or null for none.
+     */
+    void setDiscardListener(DiscardListener<? super A> listener);
+
+    /**
+     * Add a reversible event to the history.
+     *
+     * @param action    Reversible action to be added.
+     */
+    void addAction(A action);
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    A undo();
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    A redo();
+
+    /**
+     * Clears the history.
+     */
+    void clear();
+
+    /**
+     * Forgets every action which can be redone, to free the memory they hold.
+     *
+     * @return Actions forgotten, the next one to be redone first.
+     */
+    List<A> dropRedo();
+
+    /**
+     * Forgets the oldest actions which can be undone, until at most max remain, to free the
+     * memory they hold. Actions which can be redone are kept.
+     *
+     * @param max   Number of undoable actions to keep.
+     * @return Actions forgotten, oldest first.
+     * @throws IllegalArgumentException if max is negative.
+     */
+    List<A> dropOldest(int max);
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    boolean canUndo();
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    boolean canRedo();
+
+    /**
+     * How many actions can be undone?
+     *
+     * @return Number of actions which can currently be undone.
+     */
+    int undoSize();
+
+    /**
+     * How many actions can be redone?
+     *
+     * @return Number of actions which can currently be redone.
+     */
+    int redoSize();
+
+    /**
+     * Lists every action in the history in the order they would be done: first the actions which
+     * can be undone, oldest first, then the actions which can be redone, starting with the next
+     * one to be redone.
+     *
+     * @return New list of all actions in the history.
+     */
+    List<A> getActions();
+}
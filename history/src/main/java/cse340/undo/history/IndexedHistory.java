@@ -0,0 +1,112 @@
+package cse340.undo.history;
+
+import java.util.Iterator;
+
+/**
+ * A history which can be searched: for the actions of a type, those done in a span of time, or
+ * those touching an area, without going through every action in it.
+ *
+ * Each action added gets the step after the current one. Undoing and redoing only move the
+ * current step; the actions which can be redone are searched as well, and are those after the
+ * current step. Adding an action forgets those, and it takes the step the first of them had, so
+ * a step is a position in the history rather than a name for one action: after undoing, the s-th
+ * action added need not be at step s. Steps are never renumbered as the oldest actions are
+ * forgotten, so a step found by one query can be used in the next, unless an action was added in
+ * between. Each action also gets the time it was added, which never goes back from one step to
+ * the next.
+ *
+ * Queries return views of the history rather than copies, so they cost nothing until iterated.
+ * Changing the history while iterating one makes the iterator throw
+ * ConcurrentModificationException.
+ *
+ * @param <A>   Type of action kept in the history.
+ */
+public interface IndexedHistory<A> extends History<A> {
+    /**
+     * Actions found by a query, in order of step.
+     *
+     * @param <A>   Type of action kept in the history.
+     */
+    interface Matches<A> extends Iterable<A> {
+        /**
+         * @return Iterator over the actions found, which also tells the step of each.
+         */
+        @Override
+        Cursor<A> iterator();
+    }
+
+    /**
+     * Iterator over the actions found by a query.
+     *
+     * @param <A>   Type of action kept in the history.
+     */
+    interface Cursor<A> extends Iterator<A> {
+        /**
+         * @return Step of the action last returned by next().
+         * @throws IllegalStateException if next() hasn't been called.
+         */
+        long getStep();
+    }
+
+    /**
+     * @return Step of the oldest action in the history, or getLastStep() + 1 if it is empty.
+     */
+    long getFirstStep();
+
+    /**
+     * @return Step of the newest action in the history, including those which can be redone.
+     */
+    long getLastStep();
+
+    /**
+     * @return Step of the last action done, or getFirstStep() - 1 if none is.
+     */
+    long getCurrentStep();
+
+    /**
+     * @return Action leading to a step.
+     * @throws IllegalArgumentException if the step isn't in the history.
+     */
+    A getAction(long step);
+
+    /**
+     * @return Time the action leading to a step was added, in milliseconds.
+     * @throws IllegalArgumentException if the step isn't in the history.
+     */
+    long getTime(long step);
+
+    /**
+     * Finds where a time falls in the history, so it can bound a query: the actions added since
+     * the time are those from the step returned on.
+     *
+     * @param time  Time in milliseconds, from the same clock as getTime.
+     * @return First step added at or after the time, or getLastStep() + 1 if there is none.
+     */
+    long getStepAt(long time);
+
+    /**
+     * Finds the actions of a type between two steps.
+     *
+     * @param type  Type of action to find, including subtypes, or null for any.
+     * @param from  First step to search; steps before the history are skipped.
+     * @param to    Last step to search; steps after the history are skipped.
+     * @return Actions found.
+     */
+    Matches<A> find(Class<? extends A> type, long from, long to);
+
+    /**
+     * Finds the actions of a type between two steps which touch an area. What an action touches
+     * is the area it changed when it was added; actions which change no area never match.
+     *
+     * @param type  Type of action to find, including subtypes, or null for any.
+     * @param left  Left of the area.
+     * @param top   Top of the area.
+     * @param right Right of the area.
+     * @param bottom    Bottom of the area.
+     * @param from  First step to search; steps before the history are skipped.
+     * @param to    Last step to search; steps after the history are skipped.
+     * @return Actions found.
+     * @throws IllegalArgumentException if right is less than left or bottom is less than top.
+     */
+    Matches<A> find(Class<? extends A> type, float left, float top, float right, float bottom, long from, long to);
+}
@@ -0,0 +1,647 @@
+package cse340.undo.history;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+
+/**
+ * A BoundedStackHistory which keeps indexes of its actions as they are added and forgotten, so it
+ * can be searched as an IndexedHistory:
+ *
+ * <ul>
+ * <li>By type: the steps of each class of action, in order.</li>
+ * <li>By time: times never go back from one step to the next, so the step at a time is a binary
+ *     search.</li>
+ * <li>By area: a grid of square cells, each listing in order the steps of the actions touching
+ *     it. Actions spanning more than MAX_CELLS cells are listed once, apart, rather than in every
+ *     cell.</li>
+ * </ul>
+ *
+ * A query only merges the lists which can hold what it looks for, from the first step in range
+ * on. Steps are added at the end of each list and forgotten from either end, so keeping the
+ * indexes costs about as much per action as the history itself.
+ *
+ * @param <A>   Type of action kept in the history.
+ */
+public class IndexedStackHistory<A> extends BoundedStackHistory<A> implements IndexedHistory<A> {
+    /**
+     * Tells the area an action changes, for searching by area.
+     *
+     * @param <A>   Type of action kept in the history.
+     */
+    public interface AreaFunction<A> {
+        /**
+         * @param action    Action just added.
+         * @param area      Receives the left, top, right and bottom of the area.
+         * @return True if the action changes an area, false if it changes none.
+         */
+        boolean getArea(A action, float[] area);
+    }
+
+    /** Size of the grid's cells, in the units of the areas. */
+    private static final float CELL_SIZE = 128;
+
+    /** Most cells an action is listed in; larger actions are listed apart. */
+    private static final int MAX_CELLS = 64;
+
+    /** Tells the area of each action, or null if actions aren't searched by area. */
+    private final AreaFunction<? super A> areaFunction;
+
+    /** Gives the time of each action added, in milliseconds. */
+    private final LongSupplier clock;
+
+    /**
+     * Actions from firstStep to lastStep, their times, and their areas as 4 floats each (NaN if
+     * they have none). The entry of step s is at s & (length - 1); the length is a power of 2.
+     */
+    private Object[] actions = new Object[16];
+    private long[] times = new long[16];
+    private float[] areas = new float[16 * 4];
+
+    private long firstStep = 1, lastStep, currentStep;
+
+    /** Steps of each class of action. */
+    private final Map<Class<?>, StepList> byType = new HashMap<>();
+
+    /** Steps of the actions touching each cell, by cell coordinates packed as in cellKey. */
+    private final Map<Long, StepList> cells = new HashMap<>();
+
+    /** Steps of the actions spanning too many cells to be listed in each. */
+    private final StepList large = new StepList();
+
+    /** Counts changes to the actions indexed, so iterators can tell they are stale. */
+    private int modCount;
+
+    /** Receives the area of an action being added. */
+    private final float[] area = new float[4];
+
+    /**
+     * Initializes an empty history, timing actions by the system clock.
+     *
+     * @param capacity  Maximum size of undo/redo stacks.
+     * @param areaFunction  Tells the area each action changes, or null to not search by area.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public IndexedStackHistory(int capacity, AreaFunction<? super A> areaFunction) {
+        this(capacity, areaFunction, System::currentTimeMillis);
+    }
+
+    /**
+     * Initializes an empty history.
+     *
+     * @param capacity  Maximum size of undo/redo stacks.
+     * @param areaFunction  Tells the area each action changes, or null to not search by area.
+     * @param clock     Gives the time each action is added, in milliseconds.
+     * @throws IllegalArgumentException if capacity is not positive, or clock is null.
+     */
+    public IndexedStackHistory(int capacity, AreaFunction<? super A> areaFunction, LongSupplier clock) {
+        super(capacity);
+        if (clock == null) {
+            throw new IllegalArgumentException("Null clock");
+        }
+        this.areaFunction = areaFunction;
+        this.clock = clock;
+    }
+
+    /**
+     * Add a reversible event to the history, timed by the clock.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(A action) {
+        addAction(action, clock.getAsLong());
+    }
+
+    /**
+     * Add a reversible event to the history, done at a given time, such as an action being
+     * restored. A time before that of the last action is taken as the last action's time.
+     *
+     * @param action    Reversible action to be added.
+     * @param time      Time the action was done, in milliseconds.
+     */
+    public void addAction(A action, long time) {
+        super.addAction(action);
+        forgetAfter(currentStep);
+        if (lastStep >= firstStep) {
+            time = Math.max(time, times[slot(lastStep)]);
+        }
+        // The oldest action is evicted once the history is full.
+        forgetBefore(currentStep + 2 - undoSize());
+
+        long step = ++currentStep;
+        if (step - firstStep == actions.length) {
+            grow();
+        }
+        int slot = slot(step);
+        actions[slot] = action;
+        times[slot] = time;
+        lastStep = step;
+        index(step, action);
+        modCount++;
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public A undo() {
+        A action = super.undo();
+        if (action != null) {
+            currentStep--;
+        }
+        return action;
+    }
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public A redo() {
+        A action = super.redo();
+        if (action != null) {
+            currentStep++;
+        }
+        return action;
+    }
+
+    /**
+     * Clears the history. Steps go on being counted from the current one.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        forgetAfter(firstStep - 1);
+        firstStep = currentStep + 1;
+        lastStep = currentStep;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<A> dropRedo() {
+        List<A> dropped = super.dropRedo();
+        forgetAfter(currentStep);
+        return dropped;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<A> dropOldest(int max) {
+        List<A> dropped = super.dropOldest(max);
+        forgetBefore(currentStep - undoSize() + 1);
+        return dropped;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getLastStep() {
+        return lastStep;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getCurrentStep() {
+        return currentStep;
+    }
+
+    /** @inheritDoc */
+    @Override
+    @SuppressWarnings("unchecked")
+    public A getAction(long step) {
+        checkStep(step);
+        return (A) actions[slot(step)];
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getTime(long step) {
+        checkStep(step);
+        return times[slot(step)];
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getStepAt(long time) {
+        long low = firstStep, high = lastStep + 1;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (times[slot(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Matches<A> find(Class<? extends A> type, long from, long to) {
+        return new Query(type, false, 0, 0, 0, 0, from, to);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Matches<A> find(Class<? extends A> type, float left, float top, float right, float bottom,
+                           long from, long to) {
+        if (!(right >= left && bottom >= top)) {
+            throw new IllegalArgumentException("Illegal area: " + left + ", " + top + ", " + right + ", " + bottom);
+        }
+        return new Query(type, true, left, top, right, bottom, from, to);
+    }
+
+    /**
+     * Adds a step to the indexes of its type and area.
+     */
+    private void index(long step, A action) {
+        StepList steps = byType.get(action.getClass());
+        if (steps == null) {
+            steps = new StepList();
+            byType.put(action.getClass(), steps);
+        }
+        steps.add(step);
+
+        int at = slot(step) * 4;
+        if (areaFunction == null || !areaFunction.getArea(action, area)
+                || !(area[2] >= area[0] && area[3] >= area[1])) {
+            areas[at] = Float.NaN;
+            return;
+        }
+        System.arraycopy(area, 0, areas, at, 4);
+        if (isLarge(at)) {
+            large.add(step);
+            return;
+        }
+        for (long cy = cell(area[1]); cy <= cell(area[3]); cy++) {
+            for (long cx = cell(area[0]); cx <= cell(area[2]); cx++) {
+                Long key = cellKey(cx, cy);
+                StepList cell = cells.get(key);
+                if (cell == null) {
+                    cell = new StepList();
+                    cells.put(key, cell);
+                }
+                cell.add(step);
+            }
+        }
+    }
+
+    /**
+     * Removes the first or last step from the indexes.
+     *
+     * @param first True if the step is the first in the history, false if it is the last.
+     */
+    private void unindex(long step, boolean first) {
+        int slot = slot(step);
+        remove(byType.get(actions[slot].getClass()), step, first);
+        actions[slot] = null;
+
+        int at = slot * 4;
+        if (Float.isNaN(areas[at])) {
+            return;
+        }
+        if (isLarge(at)) {
+            remove(large, step, first);
+            return;
+        }
+        for (long cy = cell(areas[at + 1]); cy <= cell(areas[at + 3]); cy++) {
+            for (long cx = cell(areas[at]); cx <= cell(areas[at + 2]); cx++) {
+                Long key = cellKey(cx, cy);
+                StepList cell = cells.get(key);
+                remove(cell, step, first);
+                if (cell.isEmpty()) {
+                    // The canvas has no edge, so empty cells would pile up.
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    private static void remove(StepList steps, long step, boolean first) {
+        if (first) {
+            steps.removeFirst(step);
+        } else {
+            steps.removeLast(step);
+        }
+    }
+
+    /**
+     * Forgets the steps before a step.
+     */
+    private void forgetBefore(long step) {
+        for (; firstStep < step; firstStep++) {
+            unindex(firstStep, true);
+            modCount++;
+        }
+    }
+
+    /**
+     * Forgets the steps after a step.
+     */
+    private void forgetAfter(long step) {
+        for (; lastStep > step; lastStep--) {
+            unindex(lastStep, false);
+            modCount++;
+        }
+    }
+
+    /**
+     * Doubles the room for entries, keeping each step's entry at its slot.
+     */
+    private void grow() {
+        int length = actions.length * 2;
+        Object[] grownActions = new Object[length];
+        long[] grownTimes = new long[length];
+        float[] grownAreas = new float[length * 4];
+        for (long step = firstStep; step <= lastStep; step++) {
+            int from = slot(step), to = (int) step & (length - 1);
+            grownActions[to] = actions[from];
+            grownTimes[to] = times[from];
+            System.arraycopy(areas, from * 4, grownAreas, to * 4, 4);
+        }
+        actions = grownActions;
+        times = grownTimes;
+        areas = grownAreas;
+    }
+
+    private int slot(long step) {
+        return (int) step & (actions.length - 1);
+    }
+
+    private void checkStep(long step) {
+        if (step < firstStep || step > lastStep) {
+            throw new IllegalArgumentException("Step " + step + " not in history; history has "
+                    + firstStep + " to " + lastStep);
+        }
+    }
+
+    /**
+     * @param at    Position of an area in areas.
+     * @return True if the area spans more than MAX_CELLS cells, or reaches past the grid.
+     */
+    private boolean isLarge(int at) {
+        for (int i = 0; i < 4; i++) {
+            if (!inGrid(areas[at + i])) {
+                return true;
+            }
+        }
+        long columns = cell(areas[at + 2]) - cell(areas[at]) + 1;
+        long rows = cell(areas[at + 3]) - cell(areas[at + 1]) + 1;
+        return columns * rows > MAX_CELLS;
+    }
+
+    /**
+     * @return True if a coordinate is finite and its cell fits the int halves of a cell key.
+     */
+    private static boolean inGrid(float coordinate) {
+        float cell = coordinate / CELL_SIZE;
+        return cell > Integer.MIN_VALUE && cell < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Cell of a coordinate. Coordinates past the grid, and infinite ones, saturate to the first or
+     * last int; the loops over cells count in long so they still end.
+     */
+    private static long cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static Long cellKey(long cx, long cy) {
+        return cx << 32 | (cy & 0xFFFFFFFFL);
+    }
+
+    private static boolean intersects(float[] areas, int at, float left, float top, float right, float bottom) {
+        return areas[at] <= right && areas[at + 2] >= left && areas[at + 1] <= bottom && areas[at + 3] >= top;
+    }
+
+    /**
+     * Actions of a type, between two steps, optionally touching an area. Iterating picks the
+     * lists to merge as the history is then.
+     */
+    private final class Query implements Matches<A> {
+        private final Class<? extends A> type;
+        private final boolean inArea;
+        private final float left, top, right, bottom;
+        private final long from, to;
+
+        Query(Class<? extends A> type, boolean inArea, float left, float top, float right, float bottom,
+              long from, long to) {
+            this.type = type;
+            this.inArea = inArea;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Cursor<A> iterator() {
+            long start = Math.max(from, firstStep), end = Math.min(to, lastStep);
+            if (inArea) {
+                return new QueryCursor(this, areaLists(), start, end);
+            }
+            if (type != null) {
+                return new QueryCursor(this, typeLists(), start, end);
+            }
+            return new QueryCursor(this, null, start, end);
+        }
+
+        private StepList[] typeLists() {
+            List<StepList> lists = new ArrayList<>();
+            for (Map.Entry<Class<?>, StepList> entry : byType.entrySet()) {
+                if (type.isAssignableFrom(entry.getKey()) && !entry.getValue().isEmpty()) {
+                    lists.add(entry.getValue());
+                }
+            }
+            return lists.toArray(new StepList[0]);
+        }
+
+        private StepList[] areaLists() {
+            if (areaFunction == null) {
+                return new StepList[0];
+            }
+            List<StepList> lists = new ArrayList<>();
+            if (!large.isEmpty()) {
+                lists.add(large);
+            }
+            long minX = cell(left), minY = cell(top), maxX = cell(right), maxY = cell(bottom);
+            long columns = maxX - minX + 1, rows = maxY - minY + 1;
+            // Each side is checked first, as their product can overflow.
+            if (columns > cells.size() || rows > cells.size() || columns * rows > cells.size()) {
+                // Fewer cells have actions than the area covers.
+                for (Map.Entry<Long, StepList> entry : cells.entrySet()) {
+                    long key = entry.getKey();
+                    int cx = (int) (key >> 32), cy = (int) key;
+                    if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                        lists.add(entry.getValue());
+                    }
+                }
+            } else {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    for (long cx = minX; cx <= maxX; cx++) {
+                        StepList cell = cells.get(cellKey(cx, cy));
+                        if (cell != null) {
+                            lists.add(cell);
+                        }
+                    }
+                }
+            }
+            return lists.toArray(new StepList[0]);
+        }
+
+        boolean matches(long step) {
+            int slot = slot(step);
+            if (type != null && !type.isInstance(actions[slot])) {
+                return false;
+            }
+            return !inArea || intersects(areas, slot * 4, left, top, right, bottom);
+        }
+    }
+
+    /**
+     * Walks the steps of a query in order, testing each: every step in range if there are no
+     * lists, the steps of the list if there is one, otherwise the steps of all the lists. Merging
+     * several lists step by step would compare every list for every step, so their steps in range
+     * are marked in a bitmap instead, which also counts a step held by many lists once.
+     */
+    private final class QueryCursor implements Cursor<A> {
+        private final Query query;
+        private final StepList[] lists;
+        private final long to;
+        private final int expectedModCount = modCount;
+
+        /** Next step of the range, or next position in the only list. */
+        private long next;
+
+        /** Steps of several lists, as bits from base; words before word are spent. */
+        private long[] marked;
+        private long base;
+        private int word;
+
+        /** Step found by hasNext for next to return, if found. */
+        private long found;
+        private boolean hasFound;
+
+        private long step;
+        private boolean started;
+
+        QueryCursor(Query query, StepList[] lists, long from, long to) {
+            this.query = query;
+            this.lists = lists;
+            this.to = to;
+            if (lists == null) {
+                next = from;
+            } else if (lists.length == 1) {
+                next = lists[0].ceiling(from);
+            } else {
+                mark(from);
+            }
+        }
+
+        private void mark(long from) {
+            int[] starts = new int[lists.length];
+            long lowest = Long.MAX_VALUE, highest = Long.MIN_VALUE;
+            for (int i = 0; i < lists.length; i++) {
+                StepList list = lists[i];
+                starts[i] = list.ceiling(from);
+                int end = list.ceiling(to + 1);
+                if (starts[i] < end) {
+                    lowest = Math.min(lowest, list.get(starts[i]));
+                    highest = Math.max(highest, list.get(end - 1));
+                }
+            }
+            if (lowest > highest) {
+                marked = new long[0];
+                return;
+            }
+            marked = new long[(int) ((highest - lowest) >>> 6) + 1];
+            base = lowest;
+            for (int i = 0; i < lists.length; i++) {
+                StepList list = lists[i];
+                for (int p = starts[i]; p < list.size() && list.get(p) <= to; p++) {
+                    long bit = list.get(p) - base;
+                    marked[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            while (!hasFound) {
+                long candidate = nextCandidate();
+                if (candidate > to) {
+                    return false;
+                }
+                if (query.matches(candidate)) {
+                    found = candidate;
+                    hasFound = true;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public A next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasFound = false;
+            step = found;
+            started = true;
+            return (A) actions[slot(step)];
+        }
+
+        @Override
+        public long getStep() {
+            if (!started) {
+                throw new IllegalStateException("next() hasn't been called");
+            }
+            return step;
+        }
+
+        /**
+         * @return Next step which may match, or Long.MAX_VALUE if there is none.
+         */
+        private long nextCandidate() {
+            if (lists == null) {
+                return next <= to ? next++ : Long.MAX_VALUE;
+            }
+            if (marked == null) {
+                StepList list = lists[0];
+                return next < list.size() ? list.get((int) next++) : Long.MAX_VALUE;
+            }
+            for (; word < marked.length; word++) {
+                long bits = marked[word];
+                if (bits != 0) {
+                    marked[word] = bits & (bits - 1);
+                    return base + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", steps " + firstStep + " to " + lastStep + " at " + currentStep;
+    }
+}
@@ -0,0 +1,398 @@
+package cse340.undo.history;
+
+import java.util.Arrays;
+
+/**
+ * Keyframes of a linear history: frames showing what the history's actions produce at some of
+ * its steps, so any step can be shown by taking the nearest keyframe at or before it and
+ * replaying the few actions after it. Step s is the result of doing the actions at steps up to s.
+ * Steps are counted from wherever counting started, so they stay the same as the oldest actions
+ * are forgotten.
+ *
+ * Where keyframes are kept adapts to what the actions cost to replay. A keyframe is wanted once
+ * the actions since the last one would cost more than the replay budget, and after every barrier,
+ * an action which can't be replayed over a frame at all. When the frames kept take more memory
+ * than the memory budget, keyframes are thinned out where the replay they save is cheapest.
+ *
+ * Finding the keyframe for a step and checking the replay from it allocate nothing, so they can
+ * be done on every frame of a scrub. Frames are never looked inside; the owner renders them, and
+ * frees them when told they are dropped.
+ *
+ * @param <F>   Type of frame kept, such as a bitmap.
+ */
+public class KeyframeIndex<F> {
+    /**
+     * Told about frames the index no longer keeps.
+     *
+     * @param <F>   Type of frame kept.
+     */
+    public interface DropListener<F> {
+        /**
+         * @param frame Frame dropped.
+         */
+        void onDropped(F frame);
+    }
+
+    /**
+     * A frame and the step it shows.
+     *
+     * @param <F>   Type of frame kept.
+     */
+    public static final class Keyframe<F> {
+        public final long step;
+        public final F frame;
+
+        /** Memory taken by the frame. */
+        final long bytes;
+
+        Keyframe(long step, F frame, long bytes) {
+            this.step = step;
+            this.frame = frame;
+            this.bytes = bytes;
+        }
+    }
+
+    /** Replay cost after which another keyframe is wanted, and the memory frames may take. */
+    private final long replayBudget, byteBudget;
+
+    /** Told about frames dropped, or null. */
+    private DropListener<? super F> dropListener;
+
+    /** Keyframes in order of step. */
+    private Keyframe<F>[] keyframes = newKeyframes(16);
+    private int keyframeCount;
+
+    /** Memory taken by the frames kept. */
+    private long bytes;
+
+    /**
+     * Steps recorded, from origin to origin + recorded - 1. Entry i of costs and barriers is the
+     * total replay cost and number of barriers of the actions from origin up to step origin + i.
+     */
+    private long origin;
+    private int recorded = 1;
+    private long[] costs = new long[64];
+    private int[] barriers = new int[64];
+
+    /**
+     * Creates an empty index, counting steps from 0.
+     *
+     * @param replayBudget  Replay cost after which another keyframe is wanted, in the same unit
+     *                      as the costs recorded.
+     * @param byteBudget    Memory the frames may take, in bytes.
+     * @throws IllegalArgumentException if replayBudget is not positive or byteBudget is negative.
+     */
+    public KeyframeIndex(long replayBudget, long byteBudget) {
+        if (replayBudget <= 0 || byteBudget < 0) {
+            throw new IllegalArgumentException("Illegal budgets: " + replayBudget + ", " + byteBudget);
+        }
+        this.replayBudget = replayBudget;
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Sets who is told about frames the index drops.
+     *
+     * @param listener  Listener, or null for none.
+     */
+    public void setDropListener(DropListener<? super F> listener) {
+        dropListener = listener;
+    }
+
+    /**
+     * Starts over from a step, dropping every keyframe and every step recorded.
+     *
+     * @param step  Step to count from.
+     */
+    public void reset(long step) {
+        dropKeyframes(0);
+        origin = step;
+        recorded = 1;
+    }
+
+    /**
+     * Records the action taking the history from step - 1 to step. Anything recorded after
+     * step - 1 was a future which has now been replaced, so it is forgotten with its keyframes.
+     *
+     * @param step      Step the action leads to.
+     * @param cost      Cost of replaying the action over a frame of step - 1.
+     * @param barrier   True if the action can't be replayed over a frame.
+     * @throws IllegalArgumentException if step - 1 isn't recorded, or cost is negative.
+     */
+    public void record(long step, long cost, boolean barrier) {
+        checkRecorded(step - 1);
+        if (cost < 0) {
+            throw new IllegalArgumentException("Negative cost: " + cost);
+        }
+        int i = (int) (step - origin);
+        if (i < recorded) {
+            dropKeyframes(keyframeAfter(step - 1));
+        }
+        if (i == costs.length) {
+            costs = Arrays.copyOf(costs, i * 2);
+            barriers = Arrays.copyOf(barriers, i * 2);
+        }
+        costs[i] = costs[i - 1] + cost;
+        barriers[i] = barriers[i - 1] + (barrier ? 1 : 0);
+        recorded = i + 1;
+    }
+
+    /**
+     * @return True if the step has been recorded and not forgotten.
+     */
+    public boolean isRecorded(long step) {
+        return step >= origin && step - origin < recorded;
+    }
+
+    /**
+     * @return First step recorded, before which nothing can be shown.
+     */
+    public long getFirstStep() {
+        return origin;
+    }
+
+    /**
+     * @return Last step recorded.
+     */
+    public long getLastStep() {
+        return origin + recorded - 1;
+    }
+
+    /**
+     * Tells whether a keyframe of a step is worth keeping: there is no keyframe to replay from,
+     * a barrier is in the way, or the replay would cost more than the budget.
+     *
+     * @throws IllegalArgumentException if the step isn't recorded.
+     */
+    public boolean needsKeyframe(long step) {
+        checkRecorded(step);
+        Keyframe<F> floor = floor(step);
+        if (floor == null) {
+            return true;
+        }
+        return !canReplay(floor.step, step) || getCost(floor.step, step) >= replayBudget;
+    }
+
+    /**
+     * Keeps a frame as the keyframe of a step, replacing any it had, then thins out keyframes
+     * while the frames take more memory than the budget.
+     *
+     * @param step  Step the frame shows.
+     * @param frame Frame to keep.
+     * @param frameBytes    Memory the frame takes.
+     * @throws IllegalArgumentException if the step isn't recorded, or frame is null.
+     */
+    public void put(long step, F frame, long frameBytes) {
+        checkRecorded(step);
+        if (frame == null) {
+            throw new IllegalArgumentException("Null frame");
+        }
+        int at = search(step);
+        if (at >= 0) {
+            removeKeyframe(at);
+        } else {
+            at = -(at + 1);
+        }
+        if (keyframeCount == keyframes.length) {
+            keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+        }
+        System.arraycopy(keyframes, at, keyframes, at + 1, keyframeCount - at);
+        keyframes[at] = new Keyframe<>(step, frame, frameBytes);
+        keyframeCount++;
+        bytes += frameBytes;
+
+        while (bytes > byteBudget && thin()) {
+            // Keep thinning until the frames fit.
+        }
+    }
+
+    /**
+     * Finds the keyframe to show a step from.
+     *
+     * @return Keyframe at or before the step, or null if there is none.
+     */
+    public Keyframe<F> floor(long step) {
+        int at = search(step);
+        if (at >= 0) {
+            return keyframes[at];
+        }
+        int before = -(at + 1) - 1;
+        return before < 0 ? null : keyframes[before];
+    }
+
+    /**
+     * Tells whether a frame of one step can be brought up to a later step by replaying the actions
+     * in between.
+     *
+     * @return True if no action after from up to to is a barrier.
+     * @throws IllegalArgumentException if either step isn't recorded, or from is after to.
+     */
+    public boolean canReplay(long from, long to) {
+        checkRange(from, to);
+        return barriers[(int) (to - origin)] == barriers[(int) (from - origin)];
+    }
+
+    /**
+     * @return Total cost of replaying the actions after from up to to.
+     * @throws IllegalArgumentException if either step isn't recorded, or from is after to.
+     */
+    public long getCost(long from, long to) {
+        checkRange(from, to);
+        return costs[(int) (to - origin)] - costs[(int) (from - origin)];
+    }
+
+    /**
+     * Forgets the steps before a step, as when the history forgets its oldest actions. The
+     * keyframe that step would be shown from is kept, together with the steps after it.
+     *
+     * @param step  Earliest step which may still be shown.
+     * @throws IllegalArgumentException if the step isn't recorded.
+     */
+    public void forgetBefore(long step) {
+        if (step <= origin) {
+            return;
+        }
+        checkRecorded(step);
+        int base = search(step);
+        base = base >= 0 ? base : -(base + 1) - 1;
+        long newOrigin = base >= 0 ? keyframes[base].step : step;
+        for (int k = base - 1; k >= 0; k--) {
+            removeKeyframe(k);
+        }
+        int shift = (int) (newOrigin - origin);
+        if (shift > 0) {
+            recorded -= shift;
+            System.arraycopy(costs, shift, costs, 0, recorded);
+            System.arraycopy(barriers, shift, barriers, 0, recorded);
+            origin = newOrigin;
+        }
+    }
+
+    /**
+     * Drops every keyframe to free memory. The steps recorded are kept, so keyframes may be put
+     * again from the current step on.
+     *
+     * @return Memory the frames took, in bytes.
+     */
+    public long dropKeyframes() {
+        long freed = bytes;
+        dropKeyframes(0);
+        return freed;
+    }
+
+    /**
+     * @return Number of keyframes kept.
+     */
+    public int size() {
+        return keyframeCount;
+    }
+
+    /**
+     * @return Memory taken by the frames kept, in bytes.
+     */
+    public long getByteCount() {
+        return bytes;
+    }
+
+    /**
+     * Drops the keyframe whose loss makes the cheapest replay, never the first, which every
+     * later step is replayed from. The replay past a barrier can only start from the barrier's
+     * own keyframe, so those are dropped last.
+     *
+     * @return True if a keyframe was dropped.
+     */
+    private boolean thin() {
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (int k = 1; k < keyframeCount; k++) {
+            long before = keyframes[k - 1].step;
+            long after = k + 1 < keyframeCount ? keyframes[k + 1].step : getLastStep();
+            long merged = getCost(before, after);
+            if (!canReplay(before, keyframes[k].step)) {
+                merged = Long.MAX_VALUE / 2 + Math.min(merged, Long.MAX_VALUE / 4);
+            }
+            if (merged < bestCost) {
+                bestCost = merged;
+                best = k;
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        removeKeyframe(best);
+        return true;
+    }
+
+    /**
+     * @return Position of the first keyframe after a step.
+     */
+    private int keyframeAfter(long step) {
+        int at = search(step);
+        return at >= 0 ? at + 1 : -(at + 1);
+    }
+
+    /**
+     * Drops the keyframes from a position on.
+     */
+    private void dropKeyframes(int from) {
+        for (int k = keyframeCount - 1; k >= from; k--) {
+            removeKeyframe(k);
+        }
+    }
+
+    private void removeKeyframe(int k) {
+        Keyframe<F> removed = keyframes[k];
+        System.arraycopy(keyframes, k + 1, keyframes, k, keyframeCount - k - 1);
+        keyframes[--keyframeCount] = null;
+        bytes -= removed.bytes;
+        if (dropListener != null) {
+            dropListener.onDropped(removed.frame);
+        }
+    }
+
+    /**
+     * Binary search of the keyframes by step.
+     *
+     * @return Position of the keyframe of the step, or -(insertion point) - 1 if there is none.
+     */
+    private int search(long step) {
+        int low = 0, high = keyframeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midStep = keyframes[mid].step;
+            if (midStep < step) {
+                low = mid + 1;
+            } else if (midStep > step) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void checkRecorded(long step) {
+        if (!isRecorded(step)) {
+            throw new IllegalArgumentException("Step " + step + " not recorded; recorded "
+                    + origin + " to " + getLastStep());
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        checkRecorded(from);
+        checkRecorded(to);
+        if (from > to) {
+            throw new IllegalArgumentException("Illegal range: " + from + " to " + to);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <F> Keyframe<F>[] newKeyframes(int capacity) {
+        return (Keyframe<F>[]) new Keyframe<?>[capacity];
+    }
+
+    @Override
+    public String toString() {
+        return "Keyframes: " + keyframeCount + " (" + bytes + " bytes), steps " + origin + " to " + getLastStep();
+    }
+}
@@ -0,0 +1,95 @@
+package cse340.undo.history;
+
+import java.util.Arrays;
+
+/**
+ * Increasing list of history steps, added at the end and removed from either end, as a history
+ * forgets its oldest actions and those which could be redone. Backed by a ring buffer, so neither
+ * end costs more than the other and nothing is allocated once the list has grown to its working
+ * size.
+ */
+final class StepList {
+    /** Steps, from head; the capacity is always a power of 2. */
+    private long[] steps = new long[8];
+    private int head, size;
+
+    /**
+     * Appends a step, which must be after every step in the list.
+     */
+    void add(long step) {
+        if (size == steps.length) {
+            long[] grown = new long[steps.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = get(i);
+            }
+            steps = grown;
+            head = 0;
+        }
+        steps[(head + size) & (steps.length - 1)] = step;
+        size++;
+    }
+
+    /**
+     * Removes the first step, if it is the one given.
+     */
+    void removeFirst(long step) {
+        if (size > 0 && steps[head] == step) {
+            head = (head + 1) & (steps.length - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Removes the last step, if it is the one given.
+     */
+    void removeLast(long step) {
+        if (size > 0 && get(size - 1) == step) {
+            size--;
+        }
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Step at a position from the first.
+     */
+    long get(int i) {
+        return steps[(head + i) & (steps.length - 1)];
+    }
+
+    /**
+     * @return Position of the first step at or after a step, or size() if there is none.
+     */
+    int ceiling(long step) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) < step) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        long[] listed = new long[size];
+        for (int i = 0; i < size; i++) {
+            listed[i] = get(i);
+        }
+        return Arrays.toString(listed);
+    }
+}
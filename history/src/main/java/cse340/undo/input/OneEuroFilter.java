@@ -0,0 +1,100 @@
+package cse340.undo.input;
+
+/**
+ * Streaming one-euro filter for 2D touch samples (Casiez et al., CHI 2012). Each sample is
+ * smoothed by a low-pass filter whose cutoff rises with the touch's speed: slow, careful movement
+ * is smoothed heavily, which removes jitter, while fast movement is barely smoothed, which keeps
+ * the lag small.
+ *
+ * Only the previous sample's filtered position and speed are kept, so each sample costs the same
+ * fixed amount of work and nothing is allocated. Not thread-safe.
+ */
+public final class OneEuroFilter {
+    /** Cutoff frequency at zero speed, in Hz. Lower smooths slow movement more. */
+    private final float minCutoff;
+
+    /** How fast the cutoff rises with speed, in Hz per pixel per second. Higher lags less. */
+    private final float beta;
+
+    /** Cutoff frequency for smoothing the speed itself, in Hz. */
+    private final float speedCutoff;
+
+    private float x, y, speed;
+    private long time;
+    private boolean started;
+
+    /**
+     * Creates a filter.
+     *
+     * @param minCutoff     Cutoff frequency at zero speed, in Hz.
+     * @param beta          Increase in cutoff frequency per pixel per second of speed.
+     * @param speedCutoff   Cutoff frequency for the speed, in Hz.
+     * @throws IllegalArgumentException if either cutoff isn't positive, or beta is negative.
+     */
+    public OneEuroFilter(float minCutoff, float beta, float speedCutoff) {
+        if (!(minCutoff > 0) || !(speedCutoff > 0) || !(beta >= 0)) {
+            throw new IllegalArgumentException("Cutoffs must be positive and beta not negative");
+        }
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.speedCutoff = speedCutoff;
+    }
+
+    /**
+     * Forgets past samples, so the next sample starts a new stroke.
+     */
+    public void reset() {
+        started = false;
+        speed = 0;
+    }
+
+    /**
+     * Filters a sample. The result is read with getX() and getY().
+     *
+     * @param rawX      Horizontal coordinate of the sample.
+     * @param rawY      Vertical coordinate of the sample.
+     * @param timeMillis    Time of the sample, in milliseconds. Samples at the same time as the
+     *                      previous one are taken to be a millisecond apart.
+     */
+    public void filter(float rawX, float rawY, long timeMillis) {
+        if (!started) {
+            x = rawX;
+            y = rawY;
+            time = timeMillis;
+            started = true;
+            return;
+        }
+        float dt = Math.max(1, timeMillis - time) / 1000f;
+        time = timeMillis;
+
+        float rawSpeed = (float) Math.hypot(rawX - x, rawY - y) / dt;
+        speed += (rawSpeed - speed) * alpha(speedCutoff, dt);
+
+        float a = alpha(minCutoff + beta * speed, dt);
+        x += (rawX - x) * a;
+        y += (rawY - y) * a;
+    }
+
+    /**
+     * @return Filtered horizontal coordinate of the latest sample.
+     */
+    public float getX() {
+        return x;
+    }
+
+    /**
+     * @return Filtered vertical coordinate of the latest sample.
+     */
+    public float getY() {
+        return y;
+    }
+
+    /**
+     * @return Smoothing factor of an exponential low-pass filter with the given cutoff, for
+     *         samples dt seconds apart.
+     */
+    private static float alpha(float cutoff, float dt) {
+        float tau = 1 / (2 * (float) Math.PI * cutoff);
+        return 1 / (1 + tau / dt);
+    }
+}
@@ -0,0 +1,86 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for IndexedStackHistory's steps, and its area index with areas the grid can't hold.
+ */
+public class IndexedStackHistoryTest {
+    /** Actions are their own areas: left, top, right, bottom. */
+    private static IndexedStackHistory<float[]> newHistory() {
+        return new IndexedStackHistory<>(16, (action, area) -> {
+            System.arraycopy(action, 0, area, 0, 4);
+            return true;
+        }, () -> 0);
+    }
+
+    private static List<Long> steps(IndexedHistory.Matches<float[]> matches) {
+        List<Long> steps = new ArrayList<>();
+        IndexedHistory.Cursor<float[]> cursor = matches.iterator();
+        while (cursor.hasNext()) {
+            cursor.next();
+            steps.add(cursor.getStep());
+        }
+        return steps;
+    }
+
+    @Test(timeout = 1000)
+    public void infiniteAreaIsIndexedAndForgotten() {
+        IndexedStackHistory<float[]> history = newHistory();
+        history.addAction(new float[] {0, 0, Float.POSITIVE_INFINITY, 10});
+        history.addAction(new float[] {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY});
+        history.addAction(new float[] {-Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE});
+        history.addAction(new float[] {5, 5, 6, 6});
+
+        assertEquals(Arrays.asList(1L, 3L, 4L), steps(history.find(null, 0, 0, 10, 10, 0, Long.MAX_VALUE)));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), steps(history.find(null, Float.NEGATIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, 0, Long.MAX_VALUE)));
+
+        history.dropOldest(0);
+        assertEquals(Collections.emptyList(), steps(history.find(null, 0, 0, 10, 10, 0, Long.MAX_VALUE)));
+    }
+
+    @Test(timeout = 1000)
+    public void areaBeyondGridDoesNotHang() {
+        IndexedStackHistory<float[]> history = newHistory();
+        float far = 1e30f;
+        history.addAction(new float[] {far, far, far, far});
+        history.addAction(new float[] {-far, -far, -far, -far});
+
+        assertEquals(Arrays.asList(1L), steps(history.find(null, far, far, far, far, 0, Long.MAX_VALUE)));
+        assertEquals(Arrays.asList(2L), steps(history.find(null, -far, -far, -far, -far, 0, Long.MAX_VALUE)));
+
+        history.clear();
+        assertEquals(Collections.emptyList(), steps(history.find(null, -far, -far, far, far, 0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void addingAfterUndoReusesSteps() {
+        IndexedStackHistory<float[]> history = newHistory();
+        float[] first = {0, 0, 1, 1}, second = {2, 2, 3, 3}, third = {4, 4, 5, 5}, replacement = {6, 6, 7, 7};
+        history.addAction(first);
+        history.addAction(second);
+        history.addAction(third);
+        history.undo();
+        history.undo();
+        assertEquals(1, history.getCurrentStep());
+        assertEquals(3, history.getLastStep());
+
+        // The fourth action added takes the step of the second, and the undone ones are forgotten.
+        history.addAction(replacement);
+        assertEquals(2, history.getCurrentStep());
+        assertEquals(2, history.getLastStep());
+        assertSame(replacement, history.getAction(2));
+        assertEquals(Arrays.asList(1L, 2L), steps(history.find(null, 0, 0, 10, 10, 0, Long.MAX_VALUE)));
+        assertEquals(Collections.emptyList(), steps(history.find(null, 2, 2, 5, 5, 0, Long.MAX_VALUE)));
+    }
+}